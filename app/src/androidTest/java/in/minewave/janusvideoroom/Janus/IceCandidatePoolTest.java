@@ -0,0 +1,289 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaConstraints;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.RtcProfile;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Compares the default RtcProfile with the plain webrtc settings against a STUN stand-in on the
+ * device: the default should offer fewer candidates and, with the pool gathering during the
+ * simulated attach and join, have its server reflexive candidate sooner after the offer is set.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IceCandidatePoolTest {
+    // Roughly an attach plus a join on a nearby Janus.
+    private static final long SIGNALING_DELAY_MS = 500;
+    // Candidates arriving this long after the reflexive one are counted too.
+    private static final long SETTLE_MS = 1000;
+
+    private PeerConnectionFactory factory;
+    private StunStandIn stun;
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress address = siteAddress();
+        assumeNotNull(address);
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        factory = SharedPeerConnectionFactory.acquire(appContext, null);
+        stun = new StunStandIn(address);
+        stun.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (stun != null)
+            stun.close();
+        if (factory != null)
+            SharedPeerConnectionFactory.release(factory);
+    }
+
+    @Test
+    public void defaultProfileGathersFewerCandidatesSooner() throws Exception {
+        Gathering compatible = gather(RtcProfile.compatible());
+        Gathering tuned = gather(new RtcProfile());
+
+        assertTrue("no reflexive candidate", compatible.reflexiveMs >= 0 && tuned.reflexiveMs >= 0);
+        assertTrue("candidates " + tuned.candidates + " vs " + compatible.candidates,
+                tuned.candidates < compatible.candidates);
+        assertTrue("gathering " + tuned.reflexiveMs + " ms vs " + compatible.reflexiveMs + " ms",
+                tuned.reflexiveMs < compatible.reflexiveMs);
+    }
+
+    private static class Gathering {
+        long reflexiveMs = -1;
+        int candidates;
+    }
+
+    private Gathering gather(RtcProfile profile) throws Exception {
+        profile.iceServers = Collections.singletonList(PeerConnection.IceServer
+                .builder("stun:" + stun.address.getHostAddress() + ":" + stun.port())
+                .createIceServer());
+        final AtomicInteger candidates = new AtomicInteger();
+        final CountDownLatch reflexive = new CountDownLatch(1);
+        PeerConnection pc = factory.createPeerConnection(
+                profile.toRtcConfiguration(PeerConnection.SdpSemantics.PLAN_B),
+                new CandidateCounter(candidates, reflexive));
+        assertNotNull(pc);
+        try {
+            Thread.sleep(SIGNALING_DELAY_MS);
+
+            MediaConstraints constraints = new MediaConstraints();
+            constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "true"));
+            constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "true"));
+            SessionDescription offer = new Description(pc).create(constraints);
+            assertNotNull(offer);
+
+            long start = System.nanoTime();
+            pc.setLocalDescription(new Description(pc), offer);
+            Gathering result = new Gathering();
+            if (reflexive.await(10, TimeUnit.SECONDS))
+                result.reflexiveMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Thread.sleep(SETTLE_MS);
+            result.candidates = candidates.get();
+            return result;
+        } finally {
+            pc.dispose();
+        }
+    }
+
+    private static class CandidateCounter implements PeerConnection.Observer {
+        private final AtomicInteger candidates;
+        private final CountDownLatch reflexive;
+
+        CandidateCounter(AtomicInteger candidates, CountDownLatch reflexive) {
+            this.candidates = candidates;
+            this.reflexive = reflexive;
+        }
+
+        @Override
+        public void onIceCandidate(IceCandidate candidate) {
+            candidates.incrementAndGet();
+            if (candidate.sdp.contains(" typ srflx"))
+                reflexive.countDown();
+        }
+
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState state) {
+        }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState state) {
+        }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) {
+        }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState state) {
+        }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] candidates) {
+        }
+
+        @Override
+        public void onAddStream(MediaStream stream) {
+        }
+
+        @Override
+        public void onRemoveStream(MediaStream stream) {
+        }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {
+        }
+
+        @Override
+        public void onRenegotiationNeeded() {
+        }
+
+        @Override
+        public void onAddTrack(RtpReceiver receiver, MediaStream[] streams) {
+        }
+    }
+
+    // Waits for one createOffer or setLocalDescription to finish.
+    private static class Description implements SdpObserver {
+        private final PeerConnection pc;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile SessionDescription created;
+
+        Description(PeerConnection pc) {
+            this.pc = pc;
+        }
+
+        SessionDescription create(MediaConstraints constraints) throws InterruptedException {
+            pc.createOffer(this, constraints);
+            done.await(5, TimeUnit.SECONDS);
+            return created;
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sdp) {
+            created = sdp;
+            done.countDown();
+        }
+
+        @Override
+        public void onSetSuccess() {
+            done.countDown();
+        }
+
+        @Override
+        public void onCreateFailure(String error) {
+            done.countDown();
+        }
+
+        @Override
+        public void onSetFailure(String error) {
+            done.countDown();
+        }
+    }
+
+    // webrtc leaves loopback interfaces out, so the stand-in listens on a real one.
+    private static InetAddress siteAddress() throws SocketException {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = interfaces.nextElement();
+            if (!networkInterface.isUp() || networkInterface.isLoopback())
+                continue;
+            for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                if (address instanceof Inet4Address && address.isSiteLocalAddress())
+                    return address;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Answers STUN binding requests with a fixed documentation address, so the reflexive
+     * candidate differs from the host one and is not pruned.
+     */
+    private static class StunStandIn extends Thread {
+        private static final int MAGIC_COOKIE = 0x2112A442;
+        private static final byte[] MAPPED_ADDRESS = {(byte) 203, 0, 113, 7};
+
+        final InetAddress address;
+        private final DatagramSocket socket;
+
+        StunStandIn(InetAddress address) throws SocketException {
+            super("StunStandIn");
+            this.address = address;
+            socket = new DatagramSocket(0, address);
+            setDaemon(true);
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        void close() {
+            socket.close();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1500];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                while (true) {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    if (packet.getLength() < 20 || buffer[0] != 0 || buffer[1] != 1)
+                        continue;
+                    byte[] response = new byte[32];
+                    response[0] = 0x01;
+                    response[1] = 0x01;
+                    response[3] = 12;
+                    // Magic cookie and transaction id, as received.
+                    System.arraycopy(buffer, 4, response, 4, 16);
+                    // XOR-MAPPED-ADDRESS, IPv4.
+                    response[21] = 0x20;
+                    response[23] = 8;
+                    response[25] = 0x01;
+                    int port = packet.getPort() ^ (MAGIC_COOKIE >>> 16);
+                    response[26] = (byte) (port >> 8);
+                    response[27] = (byte) port;
+                    for (int i = 0; i < 4; i++)
+                        response[28 + i] = (byte) (MAPPED_ADDRESS[i] ^ (MAGIC_COOKIE >>> (24 - 8 * i)));
+                    socket.send(new DatagramPacket(response, response.length,
+                            packet.getAddress(), packet.getPort()));
+                }
+            } catch (Exception e) {
+                // Closed by tearDown.
+            }
+        }
+    }
+}
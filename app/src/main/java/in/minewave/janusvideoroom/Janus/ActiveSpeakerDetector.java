@@ -0,0 +1,115 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Decides who is speaking from periodic audio level samples (0..1, as reported in
+ * RTCStats "audioLevel"). Levels are smoothed per feed, and speaking starts and stops on two
+ * thresholds that must hold for a while, so a cough or a short pause does not flip the state.
+ * The dominant speaker is the loudest one speaking; it only changes after a minimum dwell
+ * time, or right away when the current one stops.
+ *
+ * Time is passed in by the caller, so the detector runs the same under test.
+ */
+class ActiveSpeakerDetector {
+    interface Listener {
+        void onSpeakingChanged(long feedId, boolean speaking);
+        void onDominantSpeakerChanged(long feedId);
+    }
+
+    static final double START_LEVEL = 0.05;
+    static final double STOP_LEVEL = 0.02;
+    static final long START_HOLD_MS = 300;
+    static final long STOP_HOLD_MS = 1500;
+    static final long DOMINANT_DWELL_MS = 2000;
+    // Once the dwell time is up, a challenger has to be this much louder to take over.
+    private static final double DOMINANT_MARGIN = 1.5;
+    private static final double SMOOTHING = 0.5;
+
+    private final Listener listener;
+    private final LongConcurrentMap<Speaker> speakers = new LongConcurrentMap<>();
+    private long dominant;
+    private long dominantSinceMs;
+    // Scratch for evaluate().
+    private long loudest;
+    private double loudestLevel;
+    private final LongConcurrentMap.Visitor<Speaker> findLoudest = (feedId, speaker) -> {
+        if (speaker.speaking && speaker.level > loudestLevel) {
+            loudest = feedId;
+            loudestLevel = speaker.level;
+        }
+    };
+
+    private static class Speaker {
+        double level;
+        boolean speaking;
+        long aboveSinceMs = -1;
+        long belowSinceMs = -1;
+    }
+
+    ActiveSpeakerDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void onAudioLevel(long feedId, double level, long nowMs) {
+        Speaker speaker = speakers.get(feedId);
+        if (speaker == null) {
+            speaker = new Speaker();
+            speakers.put(feedId, speaker);
+        }
+        speaker.level = speaker.level * (1 - SMOOTHING) + level * SMOOTHING;
+        if (speaker.level >= START_LEVEL) {
+            speaker.belowSinceMs = -1;
+            if (speaker.aboveSinceMs < 0)
+                speaker.aboveSinceMs = nowMs;
+            if (!speaker.speaking && nowMs - speaker.aboveSinceMs >= START_HOLD_MS) {
+                speaker.speaking = true;
+                listener.onSpeakingChanged(feedId, true);
+            }
+        } else if (speaker.level < STOP_LEVEL) {
+            speaker.aboveSinceMs = -1;
+            if (speaker.belowSinceMs < 0)
+                speaker.belowSinceMs = nowMs;
+            if (speaker.speaking && nowMs - speaker.belowSinceMs >= STOP_HOLD_MS) {
+                speaker.speaking = false;
+                listener.onSpeakingChanged(feedId, false);
+            }
+        }
+    }
+
+    // Called once per sampling round, after every feed's level was reported.
+    synchronized void evaluate(long nowMs) {
+        loudest = 0;
+        loudestLevel = 0;
+        speakers.forEach(findLoudest);
+        if (loudest == 0 || loudest == dominant)
+            return;
+        Speaker current = dominant == 0 ? null : speakers.get(dominant);
+        if (current == null || !current.speaking
+                || (nowMs - dominantSinceMs >= DOMINANT_DWELL_MS && loudestLevel > current.level * DOMINANT_MARGIN)) {
+            dominant = loudest;
+            dominantSinceMs = nowMs;
+            listener.onDominantSpeakerChanged(loudest);
+        }
+    }
+
+    synchronized void remove(long feedId) {
+        Speaker speaker = speakers.remove(feedId);
+        if (speaker != null && speaker.speaking)
+            listener.onSpeakingChanged(feedId, false);
+        if (feedId == dominant)
+            dominant = 0;
+    }
+
+    synchronized void clear() {
+        speakers.clear();
+        dominant = 0;
+    }
+
+    synchronized long dominantSpeaker() {
+        return dominant;
+    }
+
+    synchronized boolean isSpeaking(long feedId) {
+        Speaker speaker = speakers.get(feedId);
+        return speaker != null && speaker.speaking;
+    }
+}
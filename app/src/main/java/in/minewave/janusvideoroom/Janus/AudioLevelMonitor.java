@@ -0,0 +1,55 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+
+/*
+ * Samples the audio level of every remote feed from getStats and reports it to the channel's
+ * speaker detection. A per-feed subscription carries a single audio track; on a multistream
+ * subscription the track identifier is mapped back to its mid and feed.
+ */
+class AudioLevelMonitor {
+    private final LongConcurrentMap<JanusConnection> connections;
+    private final WebSocketChannel channel;
+    private final LongConcurrentMap.Visitor<JanusConnection> requestStats = (handleId, connection) -> {
+        if (connection.type != JanusConnection.ConnectionType.REMOTE || connection.peerConnection == null)
+            return;
+        connection.peerConnection.getStats(report -> collect(connection, report));
+    };
+
+    AudioLevelMonitor(LongConcurrentMap<JanusConnection> connections, WebSocketChannel channel) {
+        this.connections = connections;
+        this.channel = channel;
+    }
+
+    void poll() {
+        connections.forEach(requestStats);
+    }
+
+    // Runs on the webrtc signaling thread.
+    private void collect(JanusConnection connection, RTCStatsReport report) {
+        long nowMs = JanusTransactions.SYSTEM_TIME.nowMs();
+        for (RTCStats stats : report.getStatsMap().values()) {
+            // Remote audio levels are on "track" entries in this webrtc release, and on
+            // "inbound-rtp" in later ones.
+            String type = stats.getType();
+            if (!"track".equals(type) && !"inbound-rtp".equals(type))
+                continue;
+            Map<String, Object> members = stats.getMembers();
+            Object level = members.get("audioLevel");
+            if (!"audio".equals(members.get("kind")) || !(level instanceof Double)
+                    || Boolean.FALSE.equals(members.get("remoteSource")))
+                continue;
+            long feedId = channel.feedOfHandle(connection.handleId);
+            if (feedId == 0) {
+                Object trackId = members.get("trackIdentifier");
+                if (trackId instanceof String)
+                    feedId = connection.feedForTrack((String) trackId);
+            }
+            if (feedId != 0)
+                channel.onAudioLevel(feedId, (Double) level, nowMs);
+        }
+    }
+}
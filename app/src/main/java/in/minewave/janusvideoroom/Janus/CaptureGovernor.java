@@ -0,0 +1,153 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/*
+ * Moves the local capture along a ladder of formats, from the configured one down, as the
+ * policy asks after each publisher stats sample. Formats are applied with
+ * VideoSource.adaptOutputFormat, so the camera keeps running at its format and the source scales
+ * and drops frames before the encoder.
+ *
+ * The sample right after a step is skipped: its counters mix the two formats. Samples closer
+ * together than minIntervalMs, as when several rooms publish the same capture, count once.
+ */
+class CaptureGovernor {
+    private static final String TAG = "CaptureGovernor";
+    // Resolution and frame rate factors of each step, alternating so neither drops too far.
+    private static final double[] SCALES = {1, 0.75, 0.75, 0.5, 0.5, 0.375};
+    private static final double[] FPS_FACTORS = {1, 1, 2 / 3.0, 2 / 3.0, 0.5, 0.5};
+    private static final int MIN_HEIGHT = 180;
+    private static final int MIN_FPS = 10;
+
+    interface OutputFormat {
+        void adapt(int width, int height, int fps);
+    }
+
+    interface ThermalSource {
+        // PowerManager.THERMAL_STATUS_*, -1 when unknown.
+        int thermalStatus();
+    }
+
+    static final class Level {
+        final int width;
+        final int height;
+        final int fps;
+
+        Level(int width, int height, int fps) {
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + fps;
+        }
+    }
+
+    private final CapturePolicy policy;
+    private final OutputFormat output;
+    private final ThermalSource thermal;
+    private final FrameMetrics metrics;
+    private final Level[] levels;
+    private final long minIntervalMs;
+    private final CaptureLoad load = new CaptureLoad();
+    private int level;
+    private boolean settling;
+    private boolean baseline;
+    private long lastSampleMs;
+    private long lastCaptured;
+    private long lastDropped;
+
+    CaptureGovernor(CapturePolicy policy, OutputFormat output, ThermalSource thermal, FrameMetrics metrics,
+                    int width, int height, int fps, long minIntervalMs) {
+        this.policy = policy;
+        this.output = output;
+        this.thermal = thermal;
+        this.metrics = metrics;
+        this.levels = ladder(width, height, fps);
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    // The configured format first; steps that would go below MIN_HEIGHT or MIN_FPS are left out.
+    static Level[] ladder(int width, int height, int fps) {
+        ArrayList<Level> ladder = new ArrayList<>();
+        for (int i = 0; i < SCALES.length; i++) {
+            int scaledHeight = even(height * SCALES[i]);
+            int scaledFps = (int) Math.round(fps * FPS_FACTORS[i]);
+            if (i > 0 && (Math.min(scaledHeight, even(width * SCALES[i])) < MIN_HEIGHT || scaledFps < MIN_FPS))
+                break;
+            ladder.add(new Level(even(width * SCALES[i]), scaledHeight, scaledFps));
+        }
+        return ladder.toArray(new Level[0]);
+    }
+
+    private static int even(double size) {
+        return ((int) Math.round(size)) & ~1;
+    }
+
+    synchronized int level() {
+        return level;
+    }
+
+    synchronized Level format() {
+        return levels[level];
+    }
+
+    synchronized int levels() {
+        return levels.length;
+    }
+
+    void onPublisherStats(ConnectionStats stats) {
+        onSample(stats, metrics.framesCaptured(), metrics.framesDroppedBeforeEncoder());
+    }
+
+    // framesCaptured and framesDropped are running totals.
+    synchronized void onSample(ConnectionStats stats, long framesCaptured, long framesDropped) {
+        if (baseline && stats.timestampMs - lastSampleMs < minIntervalMs)
+            return;
+        long elapsedMs = stats.timestampMs - lastSampleMs;
+        long captured = framesCaptured - lastCaptured;
+        long dropped = framesDropped - lastDropped;
+        boolean evaluate = baseline && !settling && elapsedMs > 0;
+        baseline = true;
+        settling = false;
+        lastSampleMs = stats.timestampMs;
+        lastCaptured = framesCaptured;
+        lastDropped = framesDropped;
+        if (!evaluate)
+            return;
+
+        Level current = levels[level];
+        // The source drops whatever the capturer delivers above the level's frame rate.
+        double expectedDrops = Math.max(0, captured - current.fps * elapsedMs / 1000.0);
+        load.timestampMs = stats.timestampMs;
+        load.level = level;
+        load.levels = levels.length;
+        load.targetFps = current.fps;
+        load.encodedFps = stats.framesPerSecond;
+        load.encodeMsPerFrame = stats.encodeMsPerFrame;
+        load.qualityLimitation = stats.qualityLimitation;
+        load.dropRate = captured > 0 ? Math.max(0, dropped - expectedDrops) / captured : 0;
+        load.thermalStatus = thermal.thermalStatus();
+
+        int next = level;
+        switch (policy.decide(load)) {
+            case CapturePolicy.DOWN:
+                next = Math.min(level + 1, levels.length - 1);
+                break;
+            case CapturePolicy.UP:
+                next = Math.max(level - 1, 0);
+                break;
+        }
+        if (next == level)
+            return;
+        Log.d(TAG, load + " -> " + levels[next]);
+        level = next;
+        settling = true;
+        Level format = levels[next];
+        output.adapt(format.width, format.height, format.fps);
+    }
+}
@@ -0,0 +1,34 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * What a CapturePolicy sees of the publisher over one stats interval. Level 0 is the configured
+ * capture format, levels - 1 the lowest step.
+ */
+public class CaptureLoad {
+    public long timestampMs;
+    public int level;
+    public int levels;
+    // Frame rate of the current level.
+    public int targetFps;
+    public double encodedFps;
+    // 0 when the encoder does not report it.
+    public double encodeMsPerFrame;
+    // See ConnectionStats.qualityLimitation.
+    public String qualityLimitation = "";
+    // Captured frames the source dropped beyond those the level's frame rate drops, 0 to 1.
+    public double dropRate;
+    // PowerManager.THERMAL_STATUS_*, -1 where the OS does not report it.
+    public int thermalStatus = -1;
+
+    // Encode time as a share of the time between two frames at the target rate.
+    public double encodeLoad() {
+        return targetFps <= 0 ? 0 : encodeMsPerFrame * targetFps / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "level " + level + "/" + levels + " @" + targetFps + " fps: encoded " + Math.round(encodedFps)
+                + " fps, encode " + Math.round(encodeLoad() * 100) + "%, limited by " + qualityLimitation
+                + ", dropped " + Math.round(dropRate * 100) + "%, thermal " + thermalStatus;
+    }
+}
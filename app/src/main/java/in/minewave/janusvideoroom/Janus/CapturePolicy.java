@@ -0,0 +1,14 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Decides, once per publisher stats sample, whether the capture should step down the quality
+ * ladder, back up, or stay. Implementations may keep state between samples; they are called
+ * from one thread at a time.
+ */
+public interface CapturePolicy {
+    int DOWN = -1;
+    int KEEP = 0;
+    int UP = 1;
+
+    int decide(CaptureLoad load);
+}
@@ -0,0 +1,97 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Outcome of PeerConnectionClient.startAsync. The callback runs exactly once, on a background
+ * thread, or immediately when the startup is already done.
+ */
+public class ClientStartup {
+    public interface Callback {
+        // The publisher joined the room with capture running and its offer is on the way.
+        void onReady(PeerConnectionClient client, StartupTimings timings);
+        // The client has been closed already.
+        void onFailed(Exception e, StartupTimings timings);
+    }
+
+    public final StartupTimings timings = new StartupTimings();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private boolean done;
+    private PeerConnectionClient client;
+    private Exception failure;
+    private Callback callback;
+
+    ClientStartup() {
+    }
+
+    public void then(Callback callback) {
+        boolean runNow;
+        synchronized (this) {
+            this.callback = callback;
+            runNow = done;
+        }
+        if (runNow)
+            deliver();
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    // Returns false on timeout. Not on the UI thread.
+    public boolean await(long timeoutMs) throws InterruptedException {
+        return completed.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Gives up on a startup still in progress and closes the client.
+    public void cancel() {
+        PeerConnectionClient toClose;
+        synchronized (this) {
+            if (done)
+                return;
+            toClose = client;
+        }
+        if (toClose != null)
+            toClose.close();
+        fail(new InterruptedException("Startup cancelled"));
+    }
+
+    synchronized void attach(PeerConnectionClient client) {
+        this.client = client;
+    }
+
+    boolean succeed() {
+        return complete(null);
+    }
+
+    boolean fail(Exception e) {
+        return complete(e);
+    }
+
+    private boolean complete(Exception e) {
+        synchronized (this) {
+            if (done)
+                return false;
+            done = true;
+            failure = e;
+        }
+        completed.countDown();
+        deliver();
+        return true;
+    }
+
+    private void deliver() {
+        Callback current;
+        synchronized (this) {
+            current = callback;
+            callback = null;
+        }
+        if (current == null)
+            return;
+        if (failure == null)
+            current.onReady(client, timings);
+        else
+            current.onFailed(failure, timings);
+    }
+}
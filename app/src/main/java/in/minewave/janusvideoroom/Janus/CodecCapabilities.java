@@ -0,0 +1,188 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * The video encoders and decoders of this device as CodecProber found them, with what each can
+ * do at most. Hardware means what webrtc would actually use: DefaultVideoEncoderFactory only
+ * trusts some vendors' encoders, and hardware decoders other than the platform's own.
+ */
+public final class CodecCapabilities {
+    static final int HD_WIDTH = 1280;
+    static final int HD_HEIGHT = 720;
+    static final int HD_FPS = 30;
+
+    // The codecs webrtc negotiates, in the order they are preferred when the configured one has
+    // no hardware encoder.
+    private static final String[] VIDEO_CODECS = {"H264", "VP8", "VP9"};
+
+    public static final class Codec {
+        public final String name;
+        public final String mimeType;
+        public final boolean encoder;
+        public final boolean hardware;
+        public final int maxWidth;
+        public final int maxHeight;
+        // Frame rate at 720p, measured where the device publishes it; 0 when 720p is unsupported.
+        public final int hdFps;
+        public final int maxInstances;
+        public final boolean highProfile;
+
+        public Codec(String name, String mimeType, boolean encoder, boolean hardware, int maxWidth,
+                     int maxHeight, int hdFps, int maxInstances, boolean highProfile) {
+            this.name = name;
+            this.mimeType = mimeType;
+            this.encoder = encoder;
+            this.hardware = hardware;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.hdFps = hdFps;
+            this.maxInstances = maxInstances;
+            this.highProfile = highProfile;
+        }
+
+        @Override
+        public String toString() {
+            return (encoder ? "encoder " : "decoder ") + name + " " + mimeType + (hardware ? " hw " : " sw ")
+                    + maxWidth + "x" + maxHeight + " " + hdFps + "fps@720p x" + maxInstances;
+        }
+    }
+
+    public final List<Codec> codecs;
+    private final int cores;
+
+    public CodecCapabilities(List<Codec> codecs, int cores) {
+        this.codecs = Collections.unmodifiableList(new ArrayList<>(codecs));
+        this.cores = cores;
+    }
+
+    static String mimeType(String codec) {
+        if (codec == null)
+            return null;
+        switch (codec.toUpperCase(Locale.US)) {
+            case "H264":
+                return "video/avc";
+            case "VP8":
+                return "video/x-vnd.on2.vp8";
+            case "VP9":
+                return "video/x-vnd.on2.vp9";
+            default:
+                return null;
+        }
+    }
+
+    public boolean hasHardwareEncoder(String codec) {
+        return best(mimeType(codec), true, true) != null;
+    }
+
+    public boolean hasHardwareDecoder(String codec) {
+        return best(mimeType(codec), false, true) != null;
+    }
+
+    public boolean hasHighProfileH264Encoder() {
+        Codec encoder = best("video/avc", true, true);
+        return encoder != null && encoder.highProfile;
+    }
+
+    // The configured codec when it has a hardware encoder here, else the first that does. With
+    // no hardware encoder at all the configured codec stays.
+    public String preferredVideoCodec(String configured) {
+        if (configured == null || hasHardwareEncoder(configured))
+            return configured;
+        for (String codec : VIDEO_CODECS) {
+            if (hasHardwareEncoder(codec))
+                return codec;
+        }
+        return configured;
+    }
+
+    // How many 720p30 streams of the codec the device can decode at once, at least one.
+    public int maxConcurrentHdDecodes(String codec) {
+        Codec decoder = best(mimeType(codec), false, true);
+        if (decoder == null)
+            decoder = best(mimeType(codec), false, false);
+        if (decoder == null || decoder.hdFps <= 0)
+            return 1;
+        int streams = decoder.hdFps / HD_FPS;
+        // Software decoders share the cores with everything else.
+        if (!decoder.hardware)
+            streams = Math.min(streams, cores / 2);
+        if (decoder.maxInstances > 0)
+            streams = Math.min(streams, decoder.maxInstances);
+        return Math.max(1, streams);
+    }
+
+    // Of the codecs of that type, hardware ones only if asked, the one that does the most at 720p.
+    private Codec best(String mimeType, boolean encoder, boolean hardware) {
+        if (mimeType == null)
+            return null;
+        Codec best = null;
+        for (Codec codec : codecs) {
+            if (codec.encoder != encoder || !codec.mimeType.equalsIgnoreCase(mimeType))
+                continue;
+            if (hardware && !codec.hardware)
+                continue;
+            if (best == null || codec.hdFps > best.hdFps)
+                best = codec;
+        }
+        return best;
+    }
+
+    String toJson() {
+        try {
+            JSONArray array = new JSONArray();
+            for (Codec codec : codecs) {
+                array.put(new JSONObject()
+                        .put("name", codec.name)
+                        .put("mime", codec.mimeType)
+                        .put("encoder", codec.encoder)
+                        .put("hardware", codec.hardware)
+                        .put("maxWidth", codec.maxWidth)
+                        .put("maxHeight", codec.maxHeight)
+                        .put("hdFps", codec.hdFps)
+                        .put("maxInstances", codec.maxInstances)
+                        .put("highProfile", codec.highProfile));
+            }
+            return new JSONObject().put("cores", cores).put("codecs", array).toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // null when the JSON is not what toJson wrote.
+    static CodecCapabilities fromJson(String json) {
+        try {
+            JSONObject object = new JSONObject(json);
+            JSONArray array = object.getJSONArray("codecs");
+            ArrayList<Codec> codecs = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject codec = array.getJSONObject(i);
+                codecs.add(new Codec(codec.getString("name"), codec.getString("mime"),
+                        codec.getBoolean("encoder"), codec.getBoolean("hardware"),
+                        codec.getInt("maxWidth"), codec.getInt("maxHeight"), codec.getInt("hdFps"),
+                        codec.getInt("maxInstances"), codec.getBoolean("highProfile")));
+            }
+            return new CodecCapabilities(codecs, object.getInt("cores"));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Codec codec : codecs) {
+            if (sb.length() > 0)
+                sb.append('\n');
+            sb.append(codec);
+        }
+        return sb.toString();
+    }
+}
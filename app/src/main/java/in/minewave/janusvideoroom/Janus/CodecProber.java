@@ -0,0 +1,167 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+
+import java.util.ArrayList;
+
+/*
+ * Lists the video codecs of the device once and keeps the result in shared preferences, keyed
+ * by device model and OS build: walking MediaCodecList takes tens to hundreds of milliseconds
+ * and only an OS update changes the answer. Bump PROBE_VERSION when the probe itself changes.
+ *
+ * Which codecs count as hardware follows webrtc 1.0.30039: HardwareVideoEncoderFactory uses
+ * Qualcomm encoders, Exynos ones for H264 from Lollipop, VP8 from M and VP9 from N, and Intel
+ * VP8; HardwareVideoDecoderFactory any decoder that is not one of the platform's software ones.
+ */
+public final class CodecProber {
+    private static final String TAG = "CodecProber";
+    private static final String PREFERENCES = "codec_capabilities";
+    private static final int PROBE_VERSION = 2;
+    private static final String[] MIME_TYPES = {"video/avc", "video/x-vnd.on2.vp8", "video/x-vnd.on2.vp9"};
+    private static final String[] SOFTWARE_PREFIXES = {"OMX.google.", "OMX.SEC.", "c2.android"};
+    // webrtc never uses the hardware H264 encoder of these.
+    private static final String[] H264_HW_EXCEPTION_MODELS = {"SAMSUNG-SGH-I337", "Nexus 7", "Nexus 4"};
+
+    private static CodecCapabilities capabilities;
+
+    private CodecProber() {
+    }
+
+    /*
+     * Cached after the first call; blocks on the probe when nothing is persisted yet. The first
+     * acquire of SharedPeerConnectionFactory calls this, on whatever thread acquires it.
+     */
+    public static synchronized CodecCapabilities capabilities(Context context) {
+        if (capabilities != null)
+            return capabilities;
+        SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        String key = cacheKey();
+        if (key.equals(preferences.getString("key", null)))
+            capabilities = CodecCapabilities.fromJson(preferences.getString("capabilities", ""));
+        if (capabilities == null) {
+            long startMs = SystemClock.elapsedRealtime();
+            capabilities = probe();
+            Log.d(TAG, "Probed codecs in " + (SystemClock.elapsedRealtime() - startMs) + " ms:\n" + capabilities);
+            preferences.edit()
+                    .putString("key", key)
+                    .putString("capabilities", capabilities.toJson())
+                    .apply();
+        }
+        return capabilities;
+    }
+
+    // Runs the probe on a thread of its own unless its result is already loaded, e.g. from
+    // Application.onCreate so a later acquire on the UI thread finds it ready.
+    public static void prefetch(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        synchronized (CodecProber.class) {
+            if (capabilities != null)
+                return;
+        }
+        new Thread(() -> capabilities(applicationContext), "CodecProber").start();
+    }
+
+    private static String cacheKey() {
+        return PROBE_VERSION + "/" + Build.MANUFACTURER + "/" + Build.MODEL + "/" + Build.FINGERPRINT;
+    }
+
+    static CodecCapabilities probe() {
+        ArrayList<CodecCapabilities.Codec> codecs = new ArrayList<>();
+        MediaCodecInfo[] infos;
+        try {
+            infos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Listing codecs failed: " + e.getMessage());
+            infos = new MediaCodecInfo[0];
+        }
+        for (MediaCodecInfo info : infos) {
+            for (String type : info.getSupportedTypes()) {
+                String mimeType = supportedMimeType(type);
+                if (mimeType == null)
+                    continue;
+                try {
+                    codecs.add(codec(info, mimeType));
+                } catch (RuntimeException e) {
+                    // Some vendors' codecs throw on getCapabilitiesForType.
+                    Log.w(TAG, "Skipping " + info.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        return new CodecCapabilities(codecs, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static String supportedMimeType(String type) {
+        for (String mimeType : MIME_TYPES) {
+            if (mimeType.equalsIgnoreCase(type))
+                return mimeType;
+        }
+        return null;
+    }
+
+    private static CodecCapabilities.Codec codec(MediaCodecInfo info, String mimeType) {
+        MediaCodecInfo.CodecCapabilities capabilities = info.getCapabilitiesForType(mimeType);
+        MediaCodecInfo.VideoCapabilities video = capabilities.getVideoCapabilities();
+        int hdFps = 0;
+        if (video.isSizeSupported(CodecCapabilities.HD_WIDTH, CodecCapabilities.HD_HEIGHT)) {
+            Range<Double> rates = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                try {
+                    rates = video.getAchievableFrameRatesFor(CodecCapabilities.HD_WIDTH, CodecCapabilities.HD_HEIGHT);
+                } catch (IllegalArgumentException e) {
+                    rates = null;
+                }
+            }
+            // Measured rates are sustained ones; without them only the declared limit is known.
+            hdFps = rates != null ? (int) Math.floor(rates.getLower())
+                    : (int) Math.floor(video.getSupportedFrameRatesFor(
+                    CodecCapabilities.HD_WIDTH, CodecCapabilities.HD_HEIGHT).getUpper());
+        }
+        int maxInstances = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? capabilities.getMaxSupportedInstances() : 0;
+        boolean highProfile = false;
+        for (MediaCodecInfo.CodecProfileLevel level : capabilities.profileLevels) {
+            if (level.profile == MediaCodecInfo.CodecProfileLevel.AVCProfileHigh)
+                highProfile = true;
+        }
+        boolean encoder = info.isEncoder();
+        return new CodecCapabilities.Codec(info.getName(), mimeType, encoder,
+                encoder ? usableHardwareEncoder(info.getName(), mimeType) : usableHardwareDecoder(info.getName()),
+                video.getSupportedWidths().getUpper(), video.getSupportedHeights().getUpper(),
+                hdFps, maxInstances, mimeType.equals("video/avc") && highProfile);
+    }
+
+    private static boolean usableHardwareEncoder(String name, String mimeType) {
+        boolean qcom = name.startsWith("OMX.qcom.");
+        boolean exynos = name.startsWith("OMX.Exynos.");
+        switch (mimeType) {
+            case "video/avc":
+                for (String model : H264_HW_EXCEPTION_MODELS) {
+                    if (model.equals(Build.MODEL))
+                        return false;
+                }
+                return qcom || (exynos && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+            case "video/x-vnd.on2.vp8":
+                return qcom || name.startsWith("OMX.Intel.")
+                        || (exynos && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+            case "video/x-vnd.on2.vp9":
+                return qcom || (exynos && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean usableHardwareDecoder(String name) {
+        for (String prefix : SOFTWARE_PREFIXES) {
+            if (name.startsWith(prefix))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * One stats sample of a connection: of the publisher, of a per-feed subscription, or of one
+ * feed on the multistream subscription. Rates cover the interval since the previous sample;
+ * send rates for the publisher, receive rates otherwise. Values a connection does not report,
+ * e.g. jitter before the first packet, are 0.
+ */
+public class ConnectionStats {
+    public long handleId;
+    // 0 when the feed of a multistream m-line is not known yet.
+    public long feedId;
+    public boolean publisher;
+    public long timestampMs;
+    public long audioBitrateBps;
+    public long videoBitrateBps;
+    // Packets lost and frames dropped count the interval too; framesDecoded is the running total.
+    public long packetsLost;
+    // Lost over expected packets in the interval, 0 to 1.
+    public double lossRate;
+    public double rttMs;
+    public double jitterMs;
+    // Frames decoded per second, or encoded for the publisher.
+    public double framesPerSecond;
+    public long framesDecoded;
+    public long framesDropped;
+    // Publisher only: mean encode time of a captured frame over the interval, all simulcast
+    // layers together, and what webrtc says limits the resolution or frame rate sent, "none",
+    // "cpu", "bandwidth" or "other" ("" unreported).
+    public double encodeMsPerFrame;
+    public String qualityLimitation = "";
+
+    @Override
+    public String toString() {
+        return (publisher ? "publisher " : "feed " + feedId + " ") + "handle " + handleId
+                + ": audio " + audioBitrateBps / 1000 + " kbps, video " + videoBitrateBps / 1000
+                + " kbps, loss " + Math.round(lossRate * 1000) / 10.0 + "%, rtt " + Math.round(rttMs)
+                + " ms, jitter " + Math.round(jitterMs) + " ms, " + Math.round(framesPerSecond)
+                + " fps, dropped " + framesDropped
+                + (publisher ? ", encode " + Math.round(encodeMsPerFrame * 10) / 10.0 + " ms, limited by "
+                + qualityLimitation : "");
+    }
+}
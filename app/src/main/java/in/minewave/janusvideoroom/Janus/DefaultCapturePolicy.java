@@ -0,0 +1,62 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Steps down after downAfter overloaded samples in a row and back up after upAfter healthy ones.
+ * Overloaded and healthy have thresholds far apart, and anything in between resets both counts,
+ * so a capture near its limit stays where it is rather than flapping.
+ *
+ * Overloaded: webrtc reports a CPU limitation, the encoder takes more than 80% of the frame
+ * interval, more than 10% of the frames are dropped before the encoder, or the device is at
+ * least severely hot, which steps down at once. Healthy: no CPU limitation, encode under 40%,
+ * drops under 2% and the device at most lightly warm.
+ */
+public class DefaultCapturePolicy implements CapturePolicy {
+    static final int THERMAL_LIGHT = 1;
+    static final int THERMAL_SEVERE = 3;
+
+    private static final double OVERLOADED_ENCODE = 0.8;
+    private static final double HEALTHY_ENCODE = 0.4;
+    private static final double OVERLOADED_DROPS = 0.1;
+    private static final double HEALTHY_DROPS = 0.02;
+
+    private final int downAfter;
+    private final int upAfter;
+    private int overloaded;
+    private int healthy;
+
+    public DefaultCapturePolicy() {
+        this(2, 6);
+    }
+
+    public DefaultCapturePolicy(int downAfter, int upAfter) {
+        this.downAfter = Math.max(1, downAfter);
+        this.upAfter = Math.max(1, upAfter);
+    }
+
+    @Override
+    public int decide(CaptureLoad load) {
+        if (load.thermalStatus >= THERMAL_SEVERE) {
+            healthy = 0;
+            overloaded = 0;
+            return DOWN;
+        }
+        boolean cpuLimited = "cpu".equals(load.qualityLimitation);
+        double encodeLoad = load.encodeLoad();
+        if (cpuLimited || encodeLoad > OVERLOADED_ENCODE || load.dropRate > OVERLOADED_DROPS) {
+            healthy = 0;
+            if (++overloaded < downAfter)
+                return KEEP;
+            overloaded = 0;
+            return DOWN;
+        }
+        overloaded = 0;
+        if (encodeLoad < HEALTHY_ENCODE && load.dropRate < HEALTHY_DROPS && load.thermalStatus <= THERMAL_LIGHT) {
+            if (++healthy < upAfter)
+                return KEEP;
+            healthy = 0;
+            return UP;
+        }
+        healthy = 0;
+        return KEEP;
+    }
+}
@@ -0,0 +1,168 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Frame-level view of the local and remote video pipelines:
+ *  - capture fps and frames captured, counted where the capturer hands frames to the source;
+ *  - frames dropped before the encoder, the captured frames the source never passed on to its
+ *    track, usually to meet the requested resolution and frame rate;
+ *  - time from the publisher's join to the first captured frame;
+ *  - per remote feed, time from its announcement to its first frame reaching a sink.
+ * -1 stands for a milestone not reached yet.
+ */
+public class FrameMetrics {
+    private static final long FPS_WINDOW_NS = 1000000000L;
+
+    private final JanusTransactions.TimeSource time;
+    private final LongConcurrentMap<Feed> feeds = new LongConcurrentMap<>();
+    private final AtomicLong framesCaptured = new AtomicLong();
+    private final AtomicLong framesDelivered = new AtomicLong();
+    private volatile FrameMetricsListener listener;
+    private long joinedMs = -1;
+    private long firstCaptureMs = -1;
+    private boolean captureReported;
+    // Capture thread only.
+    private long windowStartNs = -1;
+    private int windowFrames;
+    private volatile double captureFps;
+
+    private static class Feed {
+        final long discoveredMs;
+        volatile long firstFrameMs = -1;
+
+        Feed(long discoveredMs) {
+            this.discoveredMs = discoveredMs;
+        }
+    }
+
+    FrameMetrics(JanusTransactions.TimeSource time) {
+        this.time = time;
+    }
+
+    public void setListener(FrameMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    public double captureFps() {
+        return captureFps;
+    }
+
+    public long framesCaptured() {
+        return framesCaptured.get();
+    }
+
+    public long framesDroppedBeforeEncoder() {
+        return Math.max(0, framesCaptured.get() - framesDelivered.get());
+    }
+
+    public synchronized long joinToFirstFrameMs() {
+        if (joinedMs < 0 || firstCaptureMs < 0)
+            return -1;
+        return Math.max(0, firstCaptureMs - joinedMs);
+    }
+
+    public long timeToFirstFrameMs(long feedId) {
+        Feed feed = feeds.get(feedId);
+        if (feed == null || feed.firstFrameMs < 0)
+            return -1;
+        return feed.firstFrameMs - feed.discoveredMs;
+    }
+
+    CapturerObserver wrap(CapturerObserver observer) {
+        return new InstrumentedCapturerObserver(observer, this);
+    }
+
+    // Counts what the source passes on; add it to the local track.
+    VideoSink deliveredFrames() {
+        return new InstrumentedVideoSink(null, this, 0);
+    }
+
+    VideoSink wrapRemote(long feedId, VideoSink sink) {
+        return feedId == 0 || sink == null ? sink : new InstrumentedVideoSink(sink, this, feedId);
+    }
+
+    // Hands out instrumented sinks and gives the original ones back on release.
+    RemoteVideoSinks wrap(final RemoteVideoSinks sinks) {
+        return new RemoteVideoSinks() {
+            @Override
+            public VideoSink acquire(long feedId) {
+                return wrapRemote(feedId, sinks.acquire(feedId));
+            }
+
+            @Override
+            public void release(long feedId, VideoSink sink) {
+                sinks.release(feedId, sink instanceof InstrumentedVideoSink
+                        ? ((InstrumentedVideoSink) sink).delegate : sink);
+            }
+        };
+    }
+
+    void onPublisherJoined() {
+        synchronized (this) {
+            if (joinedMs >= 0)
+                return;
+            joinedMs = time.nowMs();
+        }
+        reportCapture();
+    }
+
+    void onFeedDiscovered(long feedId) {
+        feeds.putIfAbsent(feedId, new Feed(time.nowMs()));
+    }
+
+    void onFeedLeft(long feedId) {
+        feeds.remove(feedId);
+    }
+
+    void onFrameCaptured(long timestampNs) {
+        framesCaptured.incrementAndGet();
+        if (windowStartNs < 0 || timestampNs < windowStartNs) {
+            windowStartNs = timestampNs;
+            windowFrames = 0;
+            synchronized (this) {
+                if (firstCaptureMs < 0)
+                    firstCaptureMs = time.nowMs();
+            }
+            reportCapture();
+        }
+        windowFrames++;
+        long elapsedNs = timestampNs - windowStartNs;
+        if (elapsedNs >= FPS_WINDOW_NS) {
+            captureFps = (windowFrames - 1) * 1e9 / elapsedNs;
+            windowStartNs = timestampNs;
+            windowFrames = 1;
+        }
+    }
+
+    void onFrameDelivered() {
+        framesDelivered.incrementAndGet();
+    }
+
+    void onFirstRemoteFrame(long feedId) {
+        Feed feed = feeds.get(feedId);
+        if (feed == null || feed.firstFrameMs >= 0)
+            return;
+        feed.firstFrameMs = time.nowMs();
+        FrameMetricsListener current = listener;
+        if (current != null)
+            current.onFirstRemoteFrame(feedId, feed.firstFrameMs - feed.discoveredMs);
+    }
+
+    // Reports join to first frame once both have happened, whichever came last.
+    private void reportCapture() {
+        long elapsedMs;
+        synchronized (this) {
+            if (captureReported || joinedMs < 0 || firstCaptureMs < 0)
+                return;
+            captureReported = true;
+            elapsedMs = Math.max(0, firstCaptureMs - joinedMs);
+        }
+        FrameMetricsListener current = listener;
+        if (current != null)
+            current.onFirstCapturedFrame(elapsedMs);
+    }
+}
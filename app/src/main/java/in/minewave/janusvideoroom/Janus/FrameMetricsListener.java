@@ -0,0 +1,12 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Startup milestones of local and remote video. Called on capture and decoder threads; post to
+ * the UI thread before touching views.
+ */
+public interface FrameMetricsListener {
+    // From the announcement of a remote feed to its first decoded frame reaching a sink.
+    void onFirstRemoteFrame(long feedId, long elapsedMs);
+    // From the publisher's join to the first captured frame; 0 when capture was already running.
+    void onFirstCapturedFrame(long elapsedMs);
+}
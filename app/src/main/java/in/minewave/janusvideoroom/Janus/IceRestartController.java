@@ -0,0 +1,114 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.PeerConnection;
+
+interface IceRestartSteps {
+    // Starts an ICE restart on the handle's PeerConnection.
+    void restart(long handleId);
+    // Calls IceRestartController.check(handleId) after the delay.
+    void scheduleCheck(long handleId, long delayMs);
+    void onRecovered(long handleId, long elapsedMs, int restarts);
+}
+
+/*
+ * Brings a PeerConnection back after the network changed under it. A connection that stays
+ * DISCONNECTED past a short grace period, or goes FAILED, gets an ICE restart, and another one
+ * whenever a restart does not reconnect in time. Recovery is timed from the first lost state to
+ * the next CONNECTED, restarts included.
+ *
+ * Not thread safe: WebSocketChannel calls it from the signaling thread only.
+ */
+class IceRestartController {
+    // DISCONNECTED often heals by itself, e.g. after a short radio fade.
+    static final long DISCONNECTED_GRACE_MS = 2000;
+    static final long RESTART_TIMEOUT_MS = 10000;
+    static final int MAX_RESTARTS = 5;
+
+    private final IceRestartSteps steps;
+    private final JanusTransactions.TimeSource time;
+    private final LongConcurrentMap<Recovery> recovering = new LongConcurrentMap<>();
+
+    private static class Recovery {
+        final long sinceMs;
+        long restartedAtMs = -1;
+        int restarts;
+
+        Recovery(long sinceMs) {
+            this.sinceMs = sinceMs;
+        }
+    }
+
+    IceRestartController(IceRestartSteps steps, JanusTransactions.TimeSource time) {
+        this.steps = steps;
+        this.time = time;
+    }
+
+    void onStateChange(long handleId, PeerConnection.IceConnectionState state) {
+        long nowMs = time.nowMs();
+        Recovery recovery = recovering.get(handleId);
+        switch (state) {
+            case CONNECTED:
+            case COMPLETED:
+                if (recovery != null) {
+                    recovering.remove(handleId);
+                    steps.onRecovered(handleId, nowMs - recovery.sinceMs, recovery.restarts);
+                }
+                break;
+            case DISCONNECTED:
+                if (recovery == null) {
+                    recovering.put(handleId, new Recovery(nowMs));
+                    steps.scheduleCheck(handleId, DISCONNECTED_GRACE_MS);
+                }
+                break;
+            case FAILED:
+                if (recovery == null) {
+                    recovery = new Recovery(nowMs);
+                    recovering.put(handleId, recovery);
+                }
+                // With a restart under way the timeout check decides about the next one.
+                if (recovery.restartedAtMs < 0)
+                    restart(handleId, recovery, nowMs);
+                break;
+            case CLOSED:
+                recovering.remove(handleId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Stale checks, scheduled for a state that has moved on since, do nothing.
+    void check(long handleId) {
+        Recovery recovery = recovering.get(handleId);
+        if (recovery == null)
+            return;
+        long nowMs = time.nowMs();
+        if (recovery.restartedAtMs < 0) {
+            if (nowMs - recovery.sinceMs >= DISCONNECTED_GRACE_MS)
+                restart(handleId, recovery, nowMs);
+        } else if (nowMs - recovery.restartedAtMs >= RESTART_TIMEOUT_MS) {
+            restart(handleId, recovery, nowMs);
+        }
+    }
+
+    boolean isRecovering(long handleId) {
+        return recovering.containsKey(handleId);
+    }
+
+    void remove(long handleId) {
+        recovering.remove(handleId);
+    }
+
+    void clear() {
+        recovering.clear();
+    }
+
+    private void restart(long handleId, Recovery recovery, long nowMs) {
+        if (recovery.restarts >= MAX_RESTARTS)
+            return;
+        recovery.restarts++;
+        recovery.restartedAtMs = nowMs;
+        steps.restart(handleId);
+        steps.scheduleCheck(handleId, RESTART_TIMEOUT_MS);
+    }
+}
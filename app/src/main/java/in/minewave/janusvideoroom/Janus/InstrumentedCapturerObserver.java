@@ -0,0 +1,34 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoFrame;
+
+/*
+ * Sits between a capturer and its VideoSource and counts the frames captured, before the
+ * source may drop some to meet the requested format.
+ */
+class InstrumentedCapturerObserver implements CapturerObserver {
+    private final CapturerObserver delegate;
+    private final FrameMetrics metrics;
+
+    InstrumentedCapturerObserver(CapturerObserver delegate, FrameMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        delegate.onCapturerStarted(success);
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        delegate.onCapturerStopped();
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        metrics.onFrameCaptured(frame.getTimestampNs());
+        delegate.onFrameCaptured(frame);
+    }
+}
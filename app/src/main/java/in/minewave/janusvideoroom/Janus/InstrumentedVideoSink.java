@@ -0,0 +1,34 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+/*
+ * Passes frames on to the wrapped sink, if any, and tells FrameMetrics about them: the first
+ * frame of a remote feed, or every frame the local source lets through to its track.
+ */
+class InstrumentedVideoSink implements VideoSink {
+    final VideoSink delegate;
+    private final FrameMetrics metrics;
+    private final long feedId;
+    private volatile boolean first = true;
+
+    // feedId 0 counts local frames after the source's adaptation.
+    InstrumentedVideoSink(VideoSink delegate, FrameMetrics metrics, long feedId) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.feedId = feedId;
+    }
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        if (feedId == 0) {
+            metrics.onFrameDelivered();
+        } else if (first) {
+            first = false;
+            metrics.onFirstRemoteFrame(feedId);
+        }
+        if (delegate != null)
+            delegate.onFrame(frame);
+    }
+}
@@ -1,17 +1,121 @@
 package in.minewave.janusvideoroom.Janus;
 
 import org.webrtc.PeerConnection;
+import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
-import java.math.BigInteger;
+import java.util.HashMap;
 
 public class JanusConnection {
     public enum ConnectionType {
         REMOTE,
         LOCAL
     };
-    public BigInteger handleId;
+    public long handleId;
     public PeerConnection peerConnection;
     public SDPObserver sdpObserver;
     public ConnectionType type;
+
+    // Multistream subscriptions only: which feed each m-line carries and where its video goes.
+    private final HashMap<String, MidBinding> mids = new HashMap<>();
+    // Track id to mid, to tell which feed a stats entry reports on.
+    private final HashMap<String, String> trackMids = new HashMap<>();
+    // Set once a publisher connection holds a reference on the shared capture. Pre-gathering
+    // creates the connection on attach, before it has one.
+    private boolean holdsLocalMedia;
+
+    private static class MidBinding {
+        long feedId;
+        VideoTrack track;
+        VideoSink sink;
+    }
+
+    public synchronized long feedForMid(String mid) {
+        MidBinding binding = mids.get(mid);
+        return binding == null ? 0 : binding.feedId;
+    }
+
+    /*
+     * Applies the stream list of an "attached" or "updated" event. A video m-line that now
+     * carries another feed, or none, has its sink released; one already receiving gets the new
+     * feed's sink right away since no new track will be signaled for it.
+     */
+    synchronized void updateStreams(JanusEvent.Stream[] streams, RemoteVideoSinks sinks) {
+        for (JanusEvent.Stream stream : streams) {
+            long feedId = stream.active ? stream.feedId : 0;
+            MidBinding binding = mids.get(stream.mid);
+            if (binding == null) {
+                if (feedId == 0)
+                    continue;
+                binding = new MidBinding();
+                mids.put(stream.mid, binding);
+            } else if (binding.feedId == feedId) {
+                continue;
+            }
+            unbind(binding, sinks);
+            binding.feedId = feedId;
+            if (feedId != 0 && binding.track != null)
+                bind(binding, sinks);
+        }
+    }
+
+    synchronized void onVideoTrack(String mid, VideoTrack track, RemoteVideoSinks sinks) {
+        MidBinding binding = mids.get(mid);
+        if (binding == null) {
+            binding = new MidBinding();
+            mids.put(mid, binding);
+        }
+        unbind(binding, sinks);
+        trackMids.put(track.id(), mid);
+        binding.track = track;
+        if (binding.feedId != 0)
+            bind(binding, sinks);
+    }
+
+    synchronized void onAudioTrack(String mid, String trackId) {
+        trackMids.put(trackId, mid);
+    }
+
+    synchronized long feedForTrack(String trackId) {
+        String mid = trackMids.get(trackId);
+        return mid == null ? 0 : feedForMid(mid);
+    }
+
+    // True when the caller is to acquire the capture, once per connection.
+    synchronized boolean markLocalMedia() {
+        if (holdsLocalMedia)
+            return false;
+        holdsLocalMedia = true;
+        return true;
+    }
+
+    // True when the caller is to release the capture reference this connection held.
+    synchronized boolean clearLocalMedia() {
+        boolean held = holdsLocalMedia;
+        holdsLocalMedia = false;
+        return held;
+    }
+
+    synchronized void releaseSinks(RemoteVideoSinks sinks) {
+        for (MidBinding binding : mids.values())
+            unbind(binding, sinks);
+        mids.clear();
+    }
+
+    private static void bind(MidBinding binding, RemoteVideoSinks sinks) {
+        binding.sink = sinks.acquire(binding.feedId);
+        if (binding.sink != null) {
+            binding.track.setEnabled(true);
+            binding.track.addSink(binding.sink);
+        }
+    }
+
+    private static void unbind(MidBinding binding, RemoteVideoSinks sinks) {
+        if (binding.sink == null)
+            return;
+        if (binding.track != null)
+            binding.track.removeSink(binding.sink);
+        sinks.release(binding.feedId, binding.sink);
+        binding.sink = null;
+    }
 }
@@ -0,0 +1,135 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Typed view of what a decoded Janus frame means to the client. A single videoroom event can
+ * carry several of these at once, e.g. "joined" together with the current publishers list.
+ */
+public abstract class JanusEvent {
+
+    public static class Joined extends JanusEvent {
+        public final long room;
+        public final long feedId;
+        public final long privateId;
+
+        Joined(long room, long feedId, long privateId) {
+            this.room = room;
+            this.feedId = feedId;
+            this.privateId = privateId;
+        }
+    }
+
+    public static class Publisher {
+        public final long feedId;
+        public final String display;
+
+        Publisher(long feedId, String display) {
+            this.feedId = feedId;
+            this.display = display;
+        }
+    }
+
+    public static class Publishers extends JanusEvent {
+        public final Publisher[] publishers;
+
+        Publishers(Publisher[] publishers) {
+            this.publishers = publishers;
+        }
+    }
+
+    /* One m-line of a multistream subscription; feedId is 0 once the feed is gone. */
+    public static class Stream {
+        public final String mid;
+        public final String type;
+        public final long feedId;
+        public final boolean active;
+
+        Stream(String mid, String type, long feedId, boolean active) {
+            this.mid = mid;
+            this.type = type;
+            this.feedId = feedId;
+            this.active = active;
+        }
+    }
+
+    public static class Streams extends JanusEvent {
+        public final Stream[] streams;
+
+        Streams(Stream[] streams) {
+            this.streams = streams;
+        }
+    }
+
+    public static class Leaving extends JanusEvent {
+        public final long feedId;
+
+        Leaving(long feedId) {
+            this.feedId = feedId;
+        }
+    }
+
+    public static class Detached extends JanusEvent {
+    }
+
+    public static class Success extends JanusEvent {
+        public final long dataId;
+
+        Success(long dataId) {
+            this.dataId = dataId;
+        }
+    }
+
+    public static class Error extends JanusEvent {
+        public final int code;
+        public final String reason;
+
+        Error(int code, String reason) {
+            this.code = code;
+            this.reason = reason;
+        }
+    }
+
+    /*
+     * Remote session description. Only the span of the frame holding it is remembered at
+     * decode time; type and sdp are unescaped the first time a consumer asks for them.
+     */
+    public static class Jsep extends JanusEvent {
+        private final String frame;
+        private final int start;
+        private final int end;
+        private String type;
+        private String sdp;
+
+        Jsep(String frame, int start, int end) {
+            this.frame = frame;
+            this.start = start;
+            this.end = end;
+        }
+
+        public synchronized String type() {
+            materialize();
+            return type;
+        }
+
+        public synchronized String sdp() {
+            materialize();
+            return sdp;
+        }
+
+        private void materialize() {
+            if (type != null)
+                return;
+            JsonScanner scanner = new JsonScanner(frame, start, end);
+            scanner.beginObject();
+            while (scanner.nextField()) {
+                if (scanner.isKey("type"))
+                    type = scanner.readString();
+                else if (scanner.isKey("sdp"))
+                    sdp = scanner.readString();
+                else
+                    scanner.skipValue();
+            }
+            if (type == null)
+                type = "";
+        }
+    }
+}
@@ -1,20 +1,17 @@
 package in.minewave.janusvideoroom.Janus;
 
-import org.json.JSONObject;
-
-import java.math.BigInteger;
-
 interface OnJoined {
     void onJoined(JanusHandle jh);
 }
 
 interface OnRemoteJsep {
-    void onRemoteJsep(JanusHandle jh, JSONObject jsep);
+    void onRemoteJsep(JanusHandle jh, JanusEvent.Jsep jsep);
 }
 
 public class JanusHandle {
-    public BigInteger handleId;
-    public BigInteger feedId;
+    public long handleId;
+    public long feedId;
+    public boolean publisher;
     public String display;
     public OnJoined onJoined;
     public OnRemoteJsep onRemoteJsep;
@@ -0,0 +1,19 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Janus session, handle and feed ids are unsigned 64 bit integers. The decoder keeps them in
+ * a long with the same bit pattern and only convert when writing them back out.
+ */
+final class JanusIds {
+    private JanusIds() {
+    }
+
+    static void appendUnsigned(StringBuilder sb, long id) {
+        if (id >= 0) {
+            sb.append(id);
+            return;
+        }
+        long quotient = (id >>> 1) / 5;
+        sb.append(quotient).append(id - quotient * 10);
+    }
+}
@@ -0,0 +1,50 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Routing fields of one inbound Janus frame plus the typed events it carries. Produced by
+ * JanusMessageDecoder.
+ */
+public class JanusMessage {
+    public enum Kind {
+        SUCCESS("success"),
+        ERROR("error"),
+        ACK("ack"),
+        EVENT("event"),
+        DETACHED("detached"),
+        WEBRTCUP("webrtcup"),
+        MEDIA("media"),
+        HANGUP("hangup"),
+        SLOWLINK("slowlink"),
+        TIMEOUT("timeout"),
+        UNKNOWN("");
+
+        final String janus;
+
+        Kind(String janus) {
+            this.janus = janus;
+        }
+    }
+
+    public Kind kind = Kind.UNKNOWN;
+    public long transaction;
+    public long sessionId;
+    public long sender;
+    public final List<JanusEvent> events = new ArrayList<>(2);
+
+    public boolean isTransaction() {
+        return kind == Kind.SUCCESS || kind == Kind.ERROR || kind == Kind.ACK;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends JanusEvent> T event(Class<T> type) {
+        for (int i = 0, size = events.size(); i < size; i++) {
+            JanusEvent event = events.get(i);
+            if (type.isInstance(event))
+                return (T) event;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,218 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayList;
+
+/*
+ * Decodes inbound Janus frames into JanusMessage. Only the routing fields (janus, transaction,
+ * sender, plugindata.data.videoroom and the few values the videoroom flow needs) are read; the
+ * jsep body is skipped and handed out as a lazy JanusEvent.Jsep.
+ */
+class JanusMessageDecoder {
+    private static final JanusMessage.Kind[] KIND_VALUES = JanusMessage.Kind.values();
+    private static final String[] KINDS;
+    private static final String[] VIDEOROOM = {"joined", "event"};
+    private static final int VIDEOROOM_JOINED = 0;
+
+    static {
+        KINDS = new String[KIND_VALUES.length];
+        for (int i = 0; i < KIND_VALUES.length; i++)
+            KINDS[i] = KIND_VALUES[i].janus;
+    }
+
+    JanusMessage decode(String frame) {
+        JanusMessage message = new JanusMessage();
+        Fields fields = new Fields();
+        JsonScanner scanner = new JsonScanner(frame);
+        scanner.beginObject();
+        while (scanner.nextField()) {
+            if (scanner.isKey("janus")) {
+                int kind = scanner.readEnum(KINDS);
+                message.kind = kind < 0 ? JanusMessage.Kind.UNKNOWN : KIND_VALUES[kind];
+            } else if (scanner.isKey("transaction")) {
+                message.transaction = scanner.readTransaction();
+            } else if (scanner.isKey("session_id")) {
+                message.sessionId = scanner.readLong();
+            } else if (scanner.isKey("sender")) {
+                message.sender = scanner.readLong();
+            } else if (scanner.isKey("data")) {
+                readData(scanner, fields);
+            } else if (scanner.isKey("error")) {
+                readError(scanner, fields);
+            } else if (scanner.isKey("plugindata")) {
+                readPluginData(scanner, fields);
+            } else if (scanner.isKey("jsep") && !scanner.isNull()) {
+                fields.jsepStart = scanner.position();
+                scanner.skipValue();
+                fields.jsepEnd = scanner.position();
+            } else {
+                scanner.skipValue();
+            }
+        }
+        fields.emit(frame, message);
+        return message;
+    }
+
+    private static void readData(JsonScanner scanner, Fields fields) {
+        if (scanner.peek() != '{') {
+            scanner.skipValue();
+            return;
+        }
+        scanner.beginObject();
+        while (scanner.nextField()) {
+            if (scanner.isKey("id"))
+                fields.dataId = scanner.readLong();
+            else
+                scanner.skipValue();
+        }
+    }
+
+    private static void readError(JsonScanner scanner, Fields fields) {
+        if (scanner.peek() != '{') {
+            fields.errorReason = scanner.readString();
+            return;
+        }
+        scanner.beginObject();
+        while (scanner.nextField()) {
+            if (scanner.isKey("code"))
+                fields.errorCode = (int) scanner.readLong();
+            else if (scanner.isKey("reason"))
+                fields.errorReason = scanner.readString();
+            else
+                scanner.skipValue();
+        }
+    }
+
+    private static void readPluginData(JsonScanner scanner, Fields fields) {
+        scanner.beginObject();
+        while (scanner.nextField()) {
+            if (scanner.isKey("data"))
+                readVideoRoom(scanner, fields);
+            else
+                scanner.skipValue();
+        }
+    }
+
+    private static void readVideoRoom(JsonScanner scanner, Fields fields) {
+        scanner.beginObject();
+        while (scanner.nextField()) {
+            if (scanner.isKey("videoroom")) {
+                fields.videoroom = scanner.readEnum(VIDEOROOM);
+            } else if (scanner.isKey("room")) {
+                fields.room = scanner.readLong();
+            } else if (scanner.isKey("id")) {
+                fields.feedId = scanner.readLong();
+            } else if (scanner.isKey("private_id")) {
+                fields.privateId = scanner.readLong();
+            } else if (scanner.isKey("leaving")) {
+                fields.leaving = scanner.readLong();
+            } else if (scanner.isKey("publishers")) {
+                fields.publishers = readPublishers(scanner);
+            } else if (scanner.isKey("streams")) {
+                fields.streams = readStreams(scanner);
+            } else if (scanner.isKey("error_code")) {
+                fields.pluginErrorCode = (int) scanner.readLong();
+            } else if (scanner.isKey("error")) {
+                fields.pluginErrorReason = scanner.readString();
+            } else {
+                scanner.skipValue();
+            }
+        }
+    }
+
+    private static ArrayList<JanusEvent.Publisher> readPublishers(JsonScanner scanner) {
+        ArrayList<JanusEvent.Publisher> publishers = new ArrayList<>();
+        scanner.beginArray();
+        for (boolean first = true; scanner.nextElement(first); first = false) {
+            long id = 0;
+            String display = null;
+            scanner.beginObject();
+            while (scanner.nextField()) {
+                if (scanner.isKey("id"))
+                    id = scanner.readLong();
+                else if (scanner.isKey("display"))
+                    display = scanner.readString();
+                else
+                    scanner.skipValue();
+            }
+            if (id != 0)
+                publishers.add(new JanusEvent.Publisher(id, display));
+        }
+        return publishers;
+    }
+
+    // Subscriber stream list of a multistream "attached" or "updated" event.
+    private static ArrayList<JanusEvent.Stream> readStreams(JsonScanner scanner) {
+        ArrayList<JanusEvent.Stream> streams = new ArrayList<>();
+        scanner.beginArray();
+        for (boolean first = true; scanner.nextElement(first); first = false) {
+            String mid = null;
+            String type = null;
+            long feedId = 0;
+            boolean active = true;
+            scanner.beginObject();
+            while (scanner.nextField()) {
+                if (scanner.isKey("mid"))
+                    mid = scanner.readString();
+                else if (scanner.isKey("type"))
+                    type = scanner.readString();
+                else if (scanner.isKey("feed_id"))
+                    feedId = scanner.readLong();
+                else if (scanner.isKey("active"))
+                    active = scanner.readBoolean();
+                else
+                    scanner.skipValue();
+            }
+            if (mid != null)
+                streams.add(new JanusEvent.Stream(mid, type, feedId, active));
+        }
+        return streams;
+    }
+
+    // Scratch state for one frame; turned into events once the whole frame has been read.
+    private static class Fields {
+        long dataId;
+        int errorCode;
+        String errorReason;
+        int videoroom = -1;
+        long room;
+        long feedId;
+        long privateId;
+        long leaving;
+        ArrayList<JanusEvent.Publisher> publishers;
+        ArrayList<JanusEvent.Stream> streams;
+        int pluginErrorCode;
+        String pluginErrorReason;
+        int jsepStart = -1;
+        int jsepEnd;
+
+        void emit(String frame, JanusMessage message) {
+            switch (message.kind) {
+                case SUCCESS:
+                    message.events.add(new JanusEvent.Success(dataId));
+                    break;
+                case ERROR:
+                    message.events.add(new JanusEvent.Error(errorCode, errorReason));
+                    break;
+                case DETACHED:
+                    message.events.add(new JanusEvent.Detached());
+                    break;
+                default:
+                    break;
+            }
+            if (videoroom == VIDEOROOM_JOINED)
+                message.events.add(new JanusEvent.Joined(room, feedId, privateId));
+            if (publishers != null && !publishers.isEmpty())
+                message.events.add(new JanusEvent.Publishers(
+                        publishers.toArray(new JanusEvent.Publisher[publishers.size()])));
+            if (leaving != 0)
+                message.events.add(new JanusEvent.Leaving(leaving));
+            if (pluginErrorCode != 0)
+                message.events.add(new JanusEvent.Error(pluginErrorCode, pluginErrorReason));
+            if (streams != null)
+                message.events.add(new JanusEvent.Streams(
+                        streams.toArray(new JanusEvent.Stream[streams.size()])));
+            if (jsepStart >= 0)
+                message.events.add(new JanusEvent.Jsep(frame, jsepStart, jsepEnd));
+        }
+    }
+}
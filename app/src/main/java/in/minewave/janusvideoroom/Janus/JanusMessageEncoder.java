@@ -0,0 +1,329 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Writes outbound Janus requests straight into a reused buffer from constant JSON fragments,
+ * instead of building nested JSONObjects per request. The only allocation per message is the
+ * final String handed to the websocket. Calls are serialized on the instance.
+ */
+class JanusMessageEncoder {
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final String CREATE = "{\"janus\":\"create\"";
+    private static final String ATTACH = "{\"janus\":\"attach\",\"plugin\":\"";
+    private static final String KEEPALIVE = "{\"janus\":\"keepalive\"";
+    private static final String CLAIM = "{\"janus\":\"claim\"";
+    private static final String DETACH = "{\"janus\":\"detach\"";
+    private static final String TRICKLE = "{\"janus\":\"trickle\"";
+    private static final String MESSAGE = "{\"janus\":\"message\"";
+    private static final String TRANSACTION = ",\"transaction\":\"";
+    private static final String SESSION_ID = ",\"session_id\":";
+    private static final String HANDLE_ID = ",\"handle_id\":";
+    private static final String CANDIDATE = ",\"candidate\":{\"candidate\":\"";
+    private static final String SDP_MID = "\",\"sdpMid\":\"";
+    private static final String SDP_MLINE_INDEX = "\",\"sdpMLineIndex\":";
+    private static final String CANDIDATE_COMPLETED = ",\"candidate\":{\"completed\":true}";
+    private static final String CANDIDATES = ",\"candidates\":[";
+    private static final String CANDIDATES_ENTRY = "{\"candidate\":\"";
+    private static final String CANDIDATES_COMPLETED = "{\"completed\":true}";
+    private static final String BODY_JOIN_PUBLISHER = ",\"body\":{\"request\":\"join\",\"ptype\":\"publisher\",\"room\":";
+    private static final String BODY_JOIN_SUBSCRIBER = ",\"body\":{\"request\":\"join\",\"ptype\":\"listener\",\"room\":";
+    private static final String BODY_JOIN_STREAMS = ",\"body\":{\"request\":\"join\",\"ptype\":\"subscriber\",\"room\":";
+    private static final String BODY_SUBSCRIBE = ",\"body\":{\"request\":\"subscribe\"";
+    private static final String BODY_UNSUBSCRIBE = ",\"body\":{\"request\":\"unsubscribe\"";
+    private static final String STREAMS = ",\"streams\":[";
+    private static final String STREAMS_FEED = "{\"feed\":";
+    private static final String BODY_CONFIGURE = ",\"body\":{\"request\":\"configure\"";
+    private static final String BODY_START = ",\"body\":{\"request\":\"start\",\"room\":";
+    private static final String JSEP_TYPE = ",\"jsep\":{\"type\":\"";
+    private static final String JSEP_SDP = "\",\"sdp\":\"";
+
+    private StringBuilder sb = new StringBuilder(512);
+
+    synchronized String create(long transaction) {
+        begin(CREATE);
+        transaction(transaction);
+        return finish();
+    }
+
+    synchronized String attach(long transaction, long sessionId, String plugin) {
+        begin(ATTACH);
+        sb.append(plugin).append('"');
+        transaction(transaction);
+        session(sessionId);
+        return finish();
+    }
+
+    synchronized String keepAlive(long transaction, long sessionId) {
+        begin(KEEPALIVE);
+        transaction(transaction);
+        session(sessionId);
+        return finish();
+    }
+
+    // Moves an existing session, with its handles, to this websocket connection.
+    synchronized String claim(long transaction, long sessionId) {
+        begin(CLAIM);
+        transaction(transaction);
+        session(sessionId);
+        return finish();
+    }
+
+    synchronized String detach(long transaction, long sessionId, long handleId) {
+        begin(DETACH);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        return finish();
+    }
+
+    synchronized String trickle(long transaction, long sessionId, long handleId,
+                                String candidate, String sdpMid, int sdpMLineIndex) {
+        begin(TRICKLE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(CANDIDATE);
+        appendEscaped(candidate);
+        sb.append(SDP_MID);
+        appendEscaped(sdpMid);
+        sb.append(SDP_MLINE_INDEX).append(sdpMLineIndex).append('}');
+        return finish();
+    }
+
+    /*
+     * Several candidates in one trickle request. When completed is set, the end-of-candidates
+     * marker goes last in the same array.
+     */
+    synchronized String trickleCandidates(long transaction, long sessionId, long handleId,
+                                          String[] candidates, String[] sdpMids, int[] sdpMLineIndexes,
+                                          int count, boolean completed) {
+        begin(TRICKLE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(CANDIDATES);
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(CANDIDATES_ENTRY);
+            appendEscaped(candidates[i]);
+            sb.append(SDP_MID);
+            appendEscaped(sdpMids[i]);
+            sb.append(SDP_MLINE_INDEX).append(sdpMLineIndexes[i]).append('}');
+        }
+        if (completed) {
+            if (count > 0)
+                sb.append(',');
+            sb.append(CANDIDATES_COMPLETED);
+        }
+        sb.append(']');
+        return finish();
+    }
+
+    synchronized String trickleCompleted(long transaction, long sessionId, long handleId) {
+        begin(TRICKLE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(CANDIDATE_COMPLETED);
+        return finish();
+    }
+
+    synchronized String joinPublisher(long transaction, long sessionId, long handleId,
+                                      long room, String display) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_JOIN_PUBLISHER).append(room).append(",\"display\":\"");
+        appendEscaped(display);
+        sb.append("\"}");
+        return finish();
+    }
+
+    synchronized String joinSubscriber(long transaction, long sessionId, long handleId,
+                                       long room, long feedId) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_JOIN_SUBSCRIBER).append(room).append(",\"feed\":");
+        JanusIds.appendUnsigned(sb, feedId);
+        sb.append('}');
+        return finish();
+    }
+
+    // Multistream subscriber join asking for every stream of the first count feeds.
+    synchronized String joinSubscriberStreams(long transaction, long sessionId, long handleId,
+                                              long room, long[] feedIds, int count) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_JOIN_STREAMS).append(room);
+        streams(feedIds, count);
+        sb.append('}');
+        return finish();
+    }
+
+    synchronized String subscribe(long transaction, long sessionId, long handleId,
+                                  long[] feedIds, int count) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_SUBSCRIBE);
+        streams(feedIds, count);
+        sb.append('}');
+        return finish();
+    }
+
+    synchronized String unsubscribe(long transaction, long sessionId, long handleId,
+                                    long[] feedIds, int count) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_UNSUBSCRIBE);
+        streams(feedIds, count);
+        sb.append('}');
+        return finish();
+    }
+
+    synchronized String configure(long transaction, long sessionId, long handleId,
+                                  boolean audio, boolean video, String jsepType, String sdp) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_CONFIGURE)
+                .append(",\"audio\":").append(audio)
+                .append(",\"video\":").append(video).append('}');
+        jsep(jsepType, sdp);
+        return finish();
+    }
+
+    // Subscriber substream selection. mid picks the stream of a multistream subscription; null
+    // addresses the handle's only video. A negative substream leaves the layers as they are.
+    synchronized String configureSubstream(long transaction, long sessionId, long handleId, String mid,
+                                           int substream, int temporal, boolean video) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_CONFIGURE);
+        if (mid != null) {
+            sb.append(STREAMS).append("{\"mid\":\"");
+            appendEscaped(mid);
+            sb.append('"');
+        }
+        if (substream >= 0) {
+            sb.append(",\"substream\":").append(substream)
+                    .append(",\"temporal\":").append(temporal);
+        }
+        sb.append(mid != null ? ",\"send\":" : ",\"video\":").append(video);
+        if (mid != null)
+            sb.append("}]");
+        sb.append('}');
+        return finish();
+    }
+
+    // Asks Janus for a fresh offer with new ICE credentials on a subscriber handle.
+    synchronized String configureRestart(long transaction, long sessionId, long handleId) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_CONFIGURE).append(",\"restart\":true}");
+        return finish();
+    }
+
+    synchronized String start(long transaction, long sessionId, long handleId,
+                              long room, String jsepType, String sdp) {
+        begin(MESSAGE);
+        transaction(transaction);
+        session(sessionId);
+        handle(handleId);
+        sb.append(BODY_START).append(room).append('}');
+        jsep(jsepType, sdp);
+        return finish();
+    }
+
+    private void begin(String template) {
+        sb.setLength(0);
+        sb.append(template);
+    }
+
+    private void transaction(long transaction) {
+        sb.append(TRANSACTION);
+        TransactionIdGenerator.append(sb, transaction);
+        sb.append('"');
+    }
+
+    private void session(long sessionId) {
+        sb.append(SESSION_ID);
+        JanusIds.appendUnsigned(sb, sessionId);
+    }
+
+    private void handle(long handleId) {
+        sb.append(HANDLE_ID);
+        JanusIds.appendUnsigned(sb, handleId);
+    }
+
+    private void streams(long[] feedIds, int count) {
+        sb.append(STREAMS);
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(STREAMS_FEED);
+            JanusIds.appendUnsigned(sb, feedIds[i]);
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+
+    private void jsep(String type, String sdp) {
+        if (sdp == null)
+            return;
+        sb.append(JSEP_TYPE);
+        appendEscaped(type);
+        sb.append(JSEP_SDP);
+        appendEscaped(sdp);
+        sb.append("\"}");
+    }
+
+    private String finish() {
+        sb.append('}');
+        String message = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY)
+            sb = new StringBuilder(512);
+        return message;
+    }
+
+    // JSON string escaping; unescaped runs are copied in bulk.
+    private void appendEscaped(String value) {
+        if (value == null)
+            return;
+        int run = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\')
+                continue;
+            sb.append(value, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    sb.append("\\u00");
+                    sb.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            }
+        }
+        sb.append(value, run, value.length());
+    }
+}
@@ -1,15 +1,26 @@
 package in.minewave.janusvideoroom.Janus;
 
-
-import org.json.JSONObject;
-
-import java.math.BigInteger;
-
 public interface JanusRTCInterface {
 
-    void onPublisherJoined(BigInteger handleId);
-    void onPublisherRemoteJsep(BigInteger handleId, JSONObject jsep);
-    void subscriberHandleRemoteJsep(BigInteger handleId, JSONObject jsep);
-    void onLeaving(BigInteger handleId);
+    // Runs before the join, on the handle's executor; may create the PeerConnection early.
+    void onHandleAttached(long handleId, boolean publisher);
+    void onPublisherJoined(long handleId);
+    void onPublisherRemoteJsep(long handleId, JanusEvent.Jsep jsep);
+    void subscriberHandleRemoteJsep(long handleId, JanusEvent.Jsep jsep);
+    void onLeaving(long handleId);
+    // A remote feed was announced in, or left, the room.
+    void onFeedDiscovered(long feedId);
+    void onFeedLeft(long feedId);
+    // Multistream subscriber only: the mid to feed mapping, delivered before the offer it belongs to.
+    void onSubscriberStreams(long handleId, JanusEvent.Stream[] streams);
+    // Every feed announced since the last settle has finished subscribing or failed.
+    void onSubscribersSettled(int feeds, long elapsedMs);
+    // The websocket came back after a drop. sessionKept is false when Janus had already dropped
+    // the session and the room was joined again from scratch.
+    void onReconnected(long elapsedMs, boolean sessionKept);
+    // Publisher handles only: create an offer with new ICE credentials.
+    void onIceRestartNeeded(long handleId);
+    // ICE connected again elapsedMs after the connection was first lost.
+    void onMediaRecovered(long handleId, long elapsedMs, int restarts);
 
 }
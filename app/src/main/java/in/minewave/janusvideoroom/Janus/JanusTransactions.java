@@ -1,55 +1,328 @@
 package in.minewave.janusvideoroom.Janus;
 
-import android.util.Log;
-import org.json.JSONObject;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 interface TransactionCallbackSuccess {
-    void success(JSONObject jo);
+    void success(JanusMessage message);
 }
 
 interface TransactionCallbackError {
-    void error(JSONObject jo);
+    void error(JanusEvent.Error error);
 }
 
-
+/*
+ * Pending Janus requests keyed by transaction id. Every request gets a TransactionFuture that
+ * completes on the reply its type expects, fails on a Janus or plugin error, and fails with
+ * ERROR_TIMEOUT once its deadline passes so the caller can retry instead of waiting forever.
+ *
+ * Expiry is driven by sweep(), which the owner calls periodically; time comes from the
+ * TimeSource so the table behaves deterministically under test.
+ */
 public class JanusTransactions {
-    private ConcurrentHashMap<String, JanusTransaction> transactions = new ConcurrentHashMap<>();
-    public static boolean isTransaction(JSONObject jsonObject) {
-        String response_type = jsonObject.optString("janus");
-        return response_type.equals("success") ||
-                response_type.equals("error") ||
-                response_type.equals("ack");
+    public static final int ERROR_TIMEOUT = -1;
+    public static final int ERROR_TABLE_FULL = -2;
+    public static final int ERROR_CANCELLED = -3;
+    public static final int DEFAULT_MAX_PENDING = 256;
+
+    enum Completion {
+        // Completed by "success", e.g. create/attach/detach.
+        SUCCESS,
+        // Completed by the "ack" Janus sends for requests that expect no other reply.
+        ACK,
+        // Acked first; completed by the plugin "event" carrying the same transaction.
+        EVENT
+    }
+
+    public enum RequestType {
+        CREATE(Completion.SUCCESS, 10000),
+        ATTACH(Completion.SUCCESS, 10000),
+        JOIN(Completion.EVENT, 15000),
+        CONFIGURE(Completion.EVENT, 15000),
+        START(Completion.EVENT, 15000),
+        SUBSCRIBE(Completion.EVENT, 15000),
+        UNSUBSCRIBE(Completion.EVENT, 15000),
+        TRICKLE(Completion.ACK, 10000),
+        DETACH(Completion.SUCCESS, 10000),
+        KEEPALIVE(Completion.ACK, 10000),
+        CLAIM(Completion.SUCCESS, 10000);
+
+        final Completion completion;
+        final long timeoutMs;
+
+        RequestType(Completion completion, long timeoutMs) {
+            this.completion = completion;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    public interface TimeSource {
+        long nowMs();
     }
 
-    public void processTransaction(JSONObject jsonObject) {
-        String response_type = jsonObject.optString("janus");
-        if (response_type.equals("success")) {
-            String transaction = jsonObject.optString("transaction");
-            JanusTransaction jt = transactions.get(transaction);
-            if (jt.success != null) {
-                jt.success.success(jsonObject);
+    static final TimeSource SYSTEM_TIME = () -> System.nanoTime() / 1000000;
+    private static final RequestType[] TYPES = RequestType.values();
+
+    private final LongConcurrentMap<TransactionFuture> transactions = new LongConcurrentMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final TimeSource time;
+    private final int maxPending;
+    private final AtomicLongArray completedCount = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray completedTotalMs = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray completedMaxMs = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray failedCount = new AtomicLongArray(TYPES.length);
+    private final SignalingLatency latency = new SignalingLatency();
+
+    public JanusTransactions() {
+        this(SYSTEM_TIME, DEFAULT_MAX_PENDING);
+    }
+
+    public JanusTransactions(TimeSource time, int maxPending) {
+        this.time = time;
+        this.maxPending = maxPending;
+    }
+
+    /*
+     * Registers a request before it is sent. When the table is full even after dropping expired
+     * entries, the returned future has already failed with ERROR_TABLE_FULL.
+     */
+    public TransactionFuture register(RequestType type, long tid) {
+        long now = time.nowMs();
+        TransactionFuture future = new TransactionFuture(type, tid, now);
+        if (pending.get() >= maxPending) {
+            sweep(now);
+            if (pending.get() >= maxPending) {
+                fail(future, ERROR_TABLE_FULL, "Too many pending transactions");
+                return future;
             }
-            transactions.remove(transaction);
-        } else if (response_type.equals("error")) {
-            String transaction = jsonObject.optString("transaction");
-            JanusTransaction jt = transactions.get(transaction);
-            if (jt.error != null) {
-                jt.error.error(jsonObject);
+        }
+        pending.incrementAndGet();
+        transactions.put(tid, future);
+        return future;
+    }
+
+    // The request is being handed to the websocket; ends its QUEUED stage. Called before the
+    // send, so a reply can never beat it, and again when a failed send is retried.
+    public void markSent(long tid) {
+        TransactionFuture future = transactions.get(tid);
+        if (future != null)
+            future.sentMs = time.nowMs();
+    }
+
+    public boolean processTransaction(JanusMessage message) {
+        return processTransaction(message, time.nowMs());
+    }
+
+    /*
+     * Feeds an inbound message to the table. Returns true when the message was only a reply
+     * and needs no further routing; plugin events that complete a request still return false.
+     * receivedMs is when the websocket delivered the message, for the DISPATCH stage.
+     */
+    public boolean processTransaction(JanusMessage message, long receivedMs) {
+        long tid = message.transaction;
+        switch (message.kind) {
+            case SUCCESS: {
+                TransactionFuture future = tid == 0 ? null : take(tid);
+                if (future != null)
+                    complete(future, message, receivedMs);
+                return true;
+            }
+            case ERROR: {
+                TransactionFuture future = tid == 0 ? null : take(tid);
+                if (future != null) {
+                    JanusEvent.Error error = message.event(JanusEvent.Error.class);
+                    fail(future, error.code, error.reason);
+                }
+                return true;
             }
-            transactions.remove(transaction);
-        } else if (response_type.equals("ack")) {
-            Log.d("JanusTransaction", "Just an ack");
+            case ACK: {
+                TransactionFuture future = tid == 0 ? null : transactions.get(tid);
+                if (future == null)
+                    return true;
+                if (future.type.completion == Completion.ACK) {
+                    if (take(tid, future))
+                        complete(future, message, receivedMs);
+                } else {
+                    // The plugin has the request; give it a fresh timeout for its event.
+                    future.deadlineMs = time.nowMs() + future.type.timeoutMs;
+                }
+                return true;
+            }
+            case EVENT: {
+                if (tid == 0)
+                    return false;
+                TransactionFuture future = transactions.get(tid);
+                if (future == null || future.type.completion != Completion.EVENT || !take(tid, future))
+                    return false;
+                JanusEvent.Error error = message.event(JanusEvent.Error.class);
+                if (error != null)
+                    fail(future, error.code, error.reason);
+                else
+                    complete(future, message, receivedMs);
+                return false;
+            }
+            default:
+                return false;
         }
     }
 
-    public void addTransaction(JanusTransaction transaction) {
-        transactions.put(transaction.tid, transaction);
+    /* Fails every entry whose deadline has passed. Returns how many were expired. */
+    public int sweep(final long nowMs) {
+        final ArrayList<TransactionFuture> expired = new ArrayList<>();
+        transactions.forEach((tid, future) -> {
+            if (future.deadlineMs <= nowMs && take(tid, future))
+                expired.add(future);
+        });
+        for (int i = 0, size = expired.size(); i < size; i++)
+            fail(expired.get(i), ERROR_TIMEOUT, "No reply to " + expired.get(i).type + " in time");
+        return expired.size();
+    }
+
+    public int sweep() {
+        return sweep(time.nowMs());
     }
 
-    public class JanusTransaction {
-        public String tid;
-        public TransactionCallbackSuccess success;
-        public TransactionCallbackError error;
+    /* Fails every pending request, e.g. when the transport is gone. */
+    public void cancelAll(String reason) {
+        for (TransactionFuture future : transactions.values()) {
+            if (take(future.tid, future))
+                fail(future, ERROR_CANCELLED, reason);
+        }
+    }
+
+    public boolean isPending(long tid) {
+        return transactions.containsKey(tid);
+    }
+
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    private TransactionFuture take(long tid) {
+        TransactionFuture future = transactions.remove(tid);
+        if (future != null)
+            pending.decrementAndGet();
+        return future;
+    }
+
+    private boolean take(long tid, TransactionFuture future) {
+        if (!transactions.remove(tid, future))
+            return false;
+        pending.decrementAndGet();
+        return true;
+    }
+
+    public long completedCount(RequestType type) {
+        return completedCount.get(type.ordinal());
+    }
+
+    public long failedCount(RequestType type) {
+        return failedCount.get(type.ordinal());
+    }
+
+    public long averageLatencyMs(RequestType type) {
+        long count = completedCount.get(type.ordinal());
+        return count == 0 ? 0 : completedTotalMs.get(type.ordinal()) / count;
+    }
+
+    public long maxLatencyMs(RequestType type) {
+        return completedMaxMs.get(type.ordinal());
+    }
+
+    public SignalingLatency latency() {
+        return latency;
+    }
+
+    private void complete(TransactionFuture future, JanusMessage message, long receivedMs) {
+        int index = future.type.ordinal();
+        long now = time.nowMs();
+        // A request completed without markSent, as in tests, counts as sent right away.
+        long sentMs = future.sentMs < 0 ? future.startMs : Math.min(future.sentMs, receivedMs);
+        this.latency.record(future.type, sentMs - future.startMs, receivedMs - sentMs, now - receivedMs);
+        long latency = now - future.startMs;
+        completedCount.incrementAndGet(index);
+        completedTotalMs.addAndGet(index, latency);
+        long max;
+        while (latency > (max = completedMaxMs.get(index)) && !completedMaxMs.compareAndSet(index, max, latency)) {
+        }
+        future.complete(message, null);
+    }
+
+    private void fail(TransactionFuture future, int code, String reason) {
+        failedCount.incrementAndGet(future.type.ordinal());
+        future.complete(null, new JanusEvent.Error(code, reason));
+    }
+
+    /*
+     * Outcome of one request. Callbacks registered with then() run exactly once, on the thread
+     * that completes the future, or immediately when it is already done.
+     */
+    public static class TransactionFuture {
+        public final RequestType type;
+        public final long tid;
+        final long startMs;
+        volatile long sentMs = -1;
+        volatile long deadlineMs;
+        private boolean done;
+        private JanusMessage result;
+        private JanusEvent.Error failure;
+        private TransactionCallbackSuccess success;
+        private TransactionCallbackError error;
+
+        TransactionFuture(RequestType type, long tid, long nowMs) {
+            this.type = type;
+            this.tid = tid;
+            this.startMs = nowMs;
+            this.deadlineMs = nowMs + type.timeoutMs;
+        }
+
+        public TransactionFuture then(TransactionCallbackSuccess success, TransactionCallbackError error) {
+            boolean runNow;
+            synchronized (this) {
+                this.success = success;
+                this.error = error;
+                runNow = done;
+            }
+            if (runNow)
+                deliver();
+            return this;
+        }
+
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        public synchronized boolean isFailed() {
+            return done && failure != null;
+        }
+
+        void complete(JanusMessage result, JanusEvent.Error failure) {
+            synchronized (this) {
+                if (done)
+                    return;
+                done = true;
+                this.result = result;
+                this.failure = failure;
+            }
+            deliver();
+        }
+
+        private void deliver() {
+            TransactionCallbackSuccess onSuccess;
+            TransactionCallbackError onError;
+            synchronized (this) {
+                onSuccess = success;
+                onError = error;
+                success = null;
+                error = null;
+            }
+            if (failure == null) {
+                if (onSuccess != null)
+                    onSuccess.success(result);
+            } else if (onError != null) {
+                onError.error(failure);
+            }
+        }
     }
 }
@@ -0,0 +1,316 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Forward-only cursor over a JSON text. It walks objects field by field without building a
+ * DOM, so callers can pull out the few values they route on and skip everything else. Keys
+ * are compared in place; strings are only allocated when a caller reads one.
+ */
+class JsonScanner {
+    private final String json;
+    private final int end;
+    private int pos;
+    private int keyStart;
+    private int keyEnd;
+
+    JsonScanner(String json) {
+        this(json, 0, json.length());
+    }
+
+    JsonScanner(String json, int start, int end) {
+        this.json = json;
+        this.pos = start;
+        this.end = end;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    char peek() {
+        skipWhitespace();
+        if (pos >= end)
+            throw error("Unexpected end of input");
+        return json.charAt(pos);
+    }
+
+    void beginObject() {
+        expect('{');
+        keyStart = -1;
+    }
+
+    void beginArray() {
+        expect('[');
+    }
+
+    /* Advances to the next key of the current object. Returns false on the closing brace. */
+    boolean nextField() {
+        char c = peek();
+        if (keyStart >= 0 || c == ',') {
+            if (c == '}') {
+                pos++;
+                keyStart = -1;
+                return false;
+            }
+            expect(',');
+            c = peek();
+        }
+        if (c == '}') {
+            pos++;
+            keyStart = -1;
+            return false;
+        }
+        expect('"');
+        keyStart = pos;
+        pos = json.indexOf('"', pos);
+        while (pos > 0 && json.charAt(pos - 1) == '\\')
+            pos = json.indexOf('"', pos + 1);
+        if (pos < 0 || pos >= end)
+            throw error("Unterminated key");
+        keyEnd = pos++;
+        expect(':');
+        return true;
+    }
+
+    /* Advances to the next element of the current array. Returns false on the closing bracket. */
+    boolean nextElement(boolean first) {
+        char c = peek();
+        if (c == ']') {
+            pos++;
+            return false;
+        }
+        if (!first)
+            expect(',');
+        return true;
+    }
+
+    boolean isKey(String key) {
+        int length = keyEnd - keyStart;
+        return length == key.length() && json.regionMatches(keyStart, key, 0, length);
+    }
+
+    boolean isNull() {
+        if (peek() == 'n' && json.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    String readString() {
+        if (isNull())
+            return null;
+        expect('"');
+        int start = pos;
+        int i = start;
+        while (i < end) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                pos = i + 1;
+                return json.substring(start, i);
+            }
+            if (c == '\\')
+                return readEscapedString(start);
+            i++;
+        }
+        throw error("Unterminated string");
+    }
+
+    /*
+     * Matches a string value against a table of candidates without allocating. Returns the
+     * index of the match or -1 when the value is not in the table.
+     */
+    int readEnum(String[] candidates) {
+        if (peek() != '"') {
+            skipValue();
+            return -1;
+        }
+        pos++;
+        int start = pos;
+        int close = json.indexOf('"', start);
+        if (close < 0 || close >= end)
+            throw error("Unterminated string");
+        pos = close + 1;
+        int length = close - start;
+        for (int i = 0; i < candidates.length; i++) {
+            String candidate = candidates[i];
+            if (candidate.length() == length && json.regionMatches(start, candidate, 0, length))
+                return i;
+        }
+        return -1;
+    }
+
+    /* Reads a transaction id written by TransactionIdGenerator; 0 when it is something else. */
+    long readTransaction() {
+        if (peek() != '"') {
+            skipValue();
+            return 0;
+        }
+        int start = pos + 1;
+        skipString();
+        return TransactionIdGenerator.parse(json, start, pos - 1);
+    }
+
+    /*
+     * Reads an integer that may be quoted, as Janus does for string ids. Values above
+     * Long.MAX_VALUE wrap around so unsigned 64 bit ids keep their bit pattern. Returns 0 when
+     * the value is not a number.
+     */
+    long readLong() {
+        char c = peek();
+        int start = pos;
+        boolean quoted = c == '"';
+        if (quoted)
+            pos++;
+        boolean negative = false;
+        if (pos < end && json.charAt(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (pos < end) {
+            c = json.charAt(pos);
+            if (c < '0' || c > '9')
+                break;
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+        if (quoted) {
+            if (digits == 0 || pos >= end || json.charAt(pos) != '"') {
+                pos = start;
+                skipValue();
+                return 0;
+            }
+            pos++;
+        } else if (digits == 0) {
+            pos = start;
+            skipValue();
+            return 0;
+        } else {
+            skipNumberTail();
+        }
+        return negative ? -value : value;
+    }
+
+    boolean readBoolean() {
+        char c = peek();
+        if (c == 't' && json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        skipValue();
+        return false;
+    }
+
+    void skipValue() {
+        char c = peek();
+        switch (c) {
+            case '"':
+                skipString();
+                break;
+            case '{':
+            case '[':
+                skipContainer();
+                break;
+            default:
+                while (pos < end) {
+                    c = json.charAt(pos);
+                    if (c == ',' || c == '}' || c == ']' || c <= ' ')
+                        break;
+                    pos++;
+                }
+        }
+    }
+
+    private void skipString() {
+        pos++;
+        while (pos < end) {
+            char c = json.charAt(pos++);
+            if (c == '\\')
+                pos++;
+            else if (c == '"')
+                return;
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        while (pos < end) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                skipString();
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0)
+                    return;
+            }
+        }
+        throw error("Unterminated container");
+    }
+
+    private void skipNumberTail() {
+        while (pos < end) {
+            char c = json.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9'))
+                pos++;
+            else
+                break;
+        }
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = json.charAt(i++);
+            if (c == '"') {
+                pos = i;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= end)
+                break;
+            char e = json.charAt(i++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 > end)
+                        throw error("Bad unicode escape");
+                    sb.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(e);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && json.charAt(pos) <= ' ')
+            pos++;
+    }
+
+    private void expect(char c) {
+        if (peek() != c)
+            throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at " + pos);
+    }
+}
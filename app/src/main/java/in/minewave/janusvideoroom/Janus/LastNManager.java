@@ -0,0 +1,109 @@
+package in.minewave.janusvideoroom.Janus;
+
+interface VideoGate {
+    void setVideoAllowed(long feedId, boolean allowed);
+}
+
+/*
+ * Keeps video on for the N feeds that spoke most recently and audio only for the rest. Feeds are
+ * ordered by when they last started speaking; feeds that never spoke follow in subscription
+ * order. Switching a feed between video and audio only reuses its subscription (a configure
+ * on the same handle or mid), so a busy conversation costs requests, not renegotiations.
+ *
+ * An N of 0 or less leaves video on for everyone and only forwards the speaker hooks.
+ */
+class LastNManager implements ActiveSpeakerDetector.Listener {
+    private final int n;
+    private final VideoGate gate;
+    private volatile SpeakerListener listener;
+    private long[] order = new long[16];
+    private int count;
+
+    LastNManager(int n, VideoGate gate) {
+        this.n = n;
+        this.gate = gate;
+    }
+
+    void setListener(SpeakerListener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void onFeedAdded(long feedId) {
+        if (indexOf(feedId) >= 0)
+            return;
+        if (count == order.length) {
+            long[] grown = new long[count * 2];
+            System.arraycopy(order, 0, grown, 0, count);
+            order = grown;
+        }
+        order[count++] = feedId;
+        if (n > 0 && count > n)
+            gate.setVideoAllowed(feedId, false);
+        else
+            notifyVideoFeeds();
+    }
+
+    synchronized void onFeedRemoved(long feedId) {
+        int index = indexOf(feedId);
+        if (index < 0)
+            return;
+        System.arraycopy(order, index + 1, order, index, count - index - 1);
+        count--;
+        if (n > 0 && index < n) {
+            // The next in line moves up into the video set.
+            if (count >= n)
+                gate.setVideoAllowed(order[n - 1], true);
+            notifyVideoFeeds();
+        }
+    }
+
+    @Override
+    public synchronized void onSpeakingChanged(long feedId, boolean speaking) {
+        if (!speaking)
+            return;
+        int index = indexOf(feedId);
+        if (index <= 0)
+            return;
+        System.arraycopy(order, 0, order, 1, index);
+        order[0] = feedId;
+        if (n > 0 && index >= n) {
+            gate.setVideoAllowed(feedId, true);
+            gate.setVideoAllowed(order[n], false);
+            notifyVideoFeeds();
+        } else if (n <= 0 || index < n) {
+            notifyVideoFeeds();
+        }
+    }
+
+    @Override
+    public void onDominantSpeakerChanged(long feedId) {
+        SpeakerListener current = listener;
+        if (current != null)
+            current.onDominantSpeakerChanged(feedId);
+    }
+
+    synchronized void clear() {
+        count = 0;
+    }
+
+    synchronized long[] videoFeeds() {
+        int size = n > 0 ? Math.min(n, count) : count;
+        long[] feeds = new long[size];
+        System.arraycopy(order, 0, feeds, 0, size);
+        return feeds;
+    }
+
+    private int indexOf(long feedId) {
+        for (int i = 0; i < count; i++) {
+            if (order[i] == feedId)
+                return i;
+        }
+        return -1;
+    }
+
+    private void notifyVideoFeeds() {
+        SpeakerListener current = listener;
+        if (current != null)
+            current.onVideoFeedsChanged(videoFeeds());
+    }
+}
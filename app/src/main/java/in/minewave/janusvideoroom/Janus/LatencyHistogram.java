@@ -0,0 +1,125 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Millisecond latencies in a fixed set of log-linear buckets: one per millisecond below 16 ms,
+ * then eight per power of two up to MAX_MS, so a reported percentile is within 1/8 of the
+ * recorded value. Longer latencies land in the last bucket; max keeps the exact value.
+ * Recording takes no lock and allocates nothing.
+ */
+public class LatencyHistogram {
+    public static final long MAX_MS = 1 << 17;
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = LINEAR + (17 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public static class Snapshot {
+        public final long count;
+        public final long meanMs;
+        public final long p50Ms;
+        public final long p90Ms;
+        public final long p99Ms;
+        public final long maxMs;
+
+        Snapshot(long count, long meanMs, long p50Ms, long p90Ms, long p99Ms, long maxMs) {
+            this.count = count;
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+    }
+
+    public void record(long latencyMs) {
+        if (latencyMs < 0)
+            latencyMs = 0;
+        counts.incrementAndGet(bucketOf(latencyMs));
+        count.incrementAndGet();
+        totalMs.addAndGet(latencyMs);
+        long max;
+        while (latencyMs > (max = maxMs.get()) && !maxMs.compareAndSet(max, latencyMs)) {
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    // The upper bound of the bucket holding the given fraction of samples, 0 when empty.
+    public long percentileMs(double fraction) {
+        long[] copy = new long[BUCKETS];
+        return percentile(copy, copyCounts(copy), fraction);
+    }
+
+    /*
+     * Percentiles from one pass over the buckets. Samples recorded meanwhile may be counted in
+     * some figures and not in others.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = copyCounts(copy);
+        long n = count.get();
+        long max = maxMs.get();
+        return new Snapshot(total, n == 0 ? 0 : totalMs.get() / n,
+                Math.min(max, percentile(copy, total, 0.5)),
+                Math.min(max, percentile(copy, total, 0.9)),
+                Math.min(max, percentile(copy, total, 0.99)), max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        totalMs.set(0);
+        maxMs.set(0);
+    }
+
+    private long copyCounts(long[] copy) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return total;
+    }
+
+    private static long percentile(long[] counts, long total, double fraction) {
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank))
+                return upperBoundOf(i);
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    static int bucketOf(long ms) {
+        if (ms < LINEAR)
+            return (int) ms;
+        if (ms >= MAX_MS)
+            return BUCKETS - 1;
+        int exponent = 63 - Long.numberOfLeadingZeros(ms);
+        int sub = (int) (ms >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,199 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayList;
+
+/*
+ * Concurrent map keyed by a primitive long, for Janus handle, feed and transaction ids. Lookups
+ * take no lock and box nothing. The keys are split over segments; each segment is an
+ * open-addressed table that writers replace copy-on-write under the segment lock, and readers
+ * probe whatever table they last saw. The tables stay small, because they hold one room's
+ * handles or the requests in flight, so copying on write costs less than the node and key
+ * objects a ConcurrentHashMap would allocate.
+ *
+ * Key 0 is reserved as the empty marker; Janus never hands out id 0.
+ */
+public class LongConcurrentMap<V> {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int MIN_CAPACITY = 4;
+
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private final Segment<V>[] segments;
+
+    public LongConcurrentMap() {
+        segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Segment<V>[] newSegments(int count) {
+        return (Segment<V>[]) new Segment<?>[count];
+    }
+
+    public V get(long key) {
+        long hash = mix(key);
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].table.get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        checkKey(key);
+        long hash = mix(key);
+        return segmentFor(hash).put(key, hash, value, false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        checkKey(key);
+        long hash = mix(key);
+        return segmentFor(hash).put(key, hash, value, true);
+    }
+
+    public V remove(long key) {
+        long hash = mix(key);
+        return segmentFor(hash).remove(key, hash, null);
+    }
+
+    /* Removes the entry only while it still maps to value. */
+    public boolean remove(long key, V value) {
+        long hash = mix(key);
+        return segmentFor(hash).remove(key, hash, value) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments)
+            size += segment.table.size;
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments)
+            segment.clear();
+    }
+
+    /* Visits a snapshot of every segment; entries added meanwhile may or may not be seen. */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<V> visitor) {
+        for (Segment<V> segment : segments) {
+            Table table = segment.table;
+            for (int i = 0; i < table.keys.length; i++) {
+                if (table.keys[i] != 0)
+                    visitor.visit(table.keys[i], (V) table.values[i]);
+            }
+        }
+    }
+
+    public ArrayList<V> values() {
+        final ArrayList<V> values = new ArrayList<>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0)
+            throw new IllegalArgumentException("Key 0 is reserved");
+    }
+
+    // Finalizer of MurmurHash3; spreads sequential ids over segments and slots.
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Immutable once published.
+    private static final class Table {
+        static final Table EMPTY = new Table(MIN_CAPACITY, 0);
+
+        final long[] keys;
+        final Object[] values;
+        final int size;
+
+        Table(int capacity, int size) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        <V> V get(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key)
+                    return (V) values[i];
+                if (k == 0)
+                    return null;
+            }
+        }
+
+        void insert(long key, long hash, Object value) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (keys[i] != 0 && keys[i] != key)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+
+    private static final class Segment<V> {
+        volatile Table table = Table.EMPTY;
+
+        synchronized V put(long key, long hash, V value, boolean onlyIfAbsent) {
+            Table current = table;
+            V previous = current.get(key, hash);
+            if (previous != null && onlyIfAbsent)
+                return previous;
+            table = rebuild(current, previous == null ? current.size + 1 : current.size, 0, key, hash, value);
+            return previous;
+        }
+
+        synchronized V remove(long key, long hash, V expected) {
+            Table current = table;
+            V previous = current.get(key, hash);
+            if (previous == null || (expected != null && previous != expected))
+                return null;
+            table = current.size == 1 ? Table.EMPTY : rebuild(current, current.size - 1, key, 0, 0, null);
+            return previous;
+        }
+
+        synchronized void clear() {
+            table = Table.EMPTY;
+        }
+
+        // Copies current without skipKey, then adds addKey when it is not 0.
+        private static Table rebuild(Table current, int size, long skipKey, long addKey, long addHash, Object addValue) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < size * 2)
+                capacity <<= 1;
+            Table next = new Table(capacity, size);
+            for (int i = 0; i < current.keys.length; i++) {
+                long k = current.keys[i];
+                if (k != 0 && k != skipKey && k != addKey)
+                    next.insert(k, mix(k), current.values[i]);
+            }
+            if (addKey != 0)
+                next.insert(addKey, addHash, addValue);
+            return next;
+        }
+    }
+}
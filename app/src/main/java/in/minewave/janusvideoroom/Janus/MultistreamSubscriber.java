@@ -0,0 +1,281 @@
+package in.minewave.janusvideoroom.Janus;
+
+interface MultistreamSteps {
+    // Sends the attach; the result comes back through onAttached or onAttachFailed.
+    void attach();
+    // Each request ends with onRequestDone or onRequestFailed.
+    void join(JanusHandle handle, long[] feedIds, int count);
+    void subscribe(JanusHandle handle, long[] feedIds, int count);
+    void unsubscribe(JanusHandle handle, long[] feedIds, int count);
+    void onSubscribed(long feedId);
+    void onSettled(int feeds, long elapsedMs);
+}
+
+/*
+ * Receives every remote feed over one multistream subscriber handle, and so over one
+ * PeerConnection. Feeds announced or gone while a renegotiation is in flight are collected and
+ * go out together in the next subscribe or unsubscribe request. Only one request, together
+ * with the offer and answer it triggers, is in flight at a time.
+ *
+ * Not thread safe: WebSocketChannel calls it from the signaling thread only.
+ */
+class MultistreamSubscriber {
+    enum State {
+        PENDING,
+        REQUESTED,
+        SUBSCRIBED
+    }
+
+    private enum Request {
+        NONE,
+        JOIN,
+        SUBSCRIBE,
+        UNSUBSCRIBE
+    }
+
+    static class Feed {
+        final long feedId;
+        final String display;
+        State state = State.PENDING;
+
+        Feed(long feedId, String display) {
+            this.feedId = feedId;
+            this.display = display;
+        }
+    }
+
+    private final LongConcurrentMap<Feed> feeds = new LongConcurrentMap<>();
+    private final LongConcurrentMap<String> videoMids = new LongConcurrentMap<>();
+    private final MultistreamSteps steps;
+    private final JanusTransactions.TimeSource time;
+    private long[] pendingAdd = new long[8];
+    private int pendingAddCount;
+    private long[] pendingRemove = new long[8];
+    private int pendingRemoveCount;
+    private long[] inFlight = new long[8];
+    private int inFlightCount;
+    private JanusHandle handle;
+    private boolean attaching;
+    private boolean joined;
+    private Request request = Request.NONE;
+    private boolean awaitingAnswer;
+    private long burstStartMs = -1;
+    private int burstFeeds;
+
+    MultistreamSubscriber(MultistreamSteps steps, JanusTransactions.TimeSource time) {
+        this.steps = steps;
+        this.time = time;
+    }
+
+    // Returns false when the feed is already known.
+    boolean offer(long feedId, String display) {
+        if (feeds.containsKey(feedId))
+            return false;
+        feeds.put(feedId, new Feed(feedId, display));
+        if (burstStartMs < 0) {
+            burstStartMs = time.nowMs();
+            burstFeeds = 0;
+        }
+        burstFeeds++;
+        pendingAdd = add(pendingAdd, pendingAddCount++, feedId);
+        pump();
+        return true;
+    }
+
+    void remove(long feedId) {
+        videoMids.remove(feedId);
+        Feed feed = feeds.remove(feedId);
+        if (feed == null)
+            return;
+        if (feed.state == State.PENDING) {
+            pendingAddCount = drop(pendingAdd, pendingAddCount, feedId);
+        } else {
+            pendingRemove = add(pendingRemove, pendingRemoveCount++, feedId);
+        }
+        pump();
+    }
+
+    void onAttached(JanusHandle handle) {
+        this.handle = handle;
+        attaching = false;
+        pump();
+    }
+
+    // Gives up on everything announced so far; a later publishers event starts over.
+    void onAttachFailed() {
+        attaching = false;
+        for (int i = 0; i < pendingAddCount; i++)
+            feeds.remove(pendingAdd[i]);
+        pendingAddCount = 0;
+        pump();
+    }
+
+    // The plugin answered the request; when it carried an offer the answer's start is next.
+    void onRequestDone(boolean offerFollows) {
+        if (request == Request.NONE)
+            return;
+        if (offerFollows)
+            awaitingAnswer = true;
+        else
+            finishRequest(true);
+    }
+
+    void onRequestFailed() {
+        if (request == Request.NONE)
+            return;
+        if (request == Request.JOIN)
+            joined = false;
+        finishRequest(false);
+    }
+
+    // The "started" reply to our answer. Offers Janus pushes on its own end here too and are ignored.
+    void onStarted(boolean ok) {
+        if (request == Request.NONE || !awaitingAnswer)
+            return;
+        finishRequest(ok);
+    }
+
+    // Remembers which m-line carries each feed's video, for per-stream configure requests.
+    void updateStreams(JanusEvent.Stream[] streams) {
+        for (JanusEvent.Stream stream : streams) {
+            if (stream.feedId != 0 && stream.active && "video".equals(stream.type))
+                videoMids.put(stream.feedId, stream.mid);
+        }
+    }
+
+    String videoMidOf(long feedId) {
+        return videoMids.get(feedId);
+    }
+
+    // Forgets everything, e.g. when the Janus session is gone along with the handle.
+    void clear() {
+        feeds.clear();
+        videoMids.clear();
+        pendingAddCount = 0;
+        pendingRemoveCount = 0;
+        inFlightCount = 0;
+        handle = null;
+        attaching = false;
+        joined = false;
+        request = Request.NONE;
+        awaitingAnswer = false;
+        burstStartMs = -1;
+    }
+
+    boolean isHandle(long handleId) {
+        return handle != null && handle.handleId == handleId;
+    }
+
+    JanusHandle handle() {
+        return handle;
+    }
+
+    State stateOf(long feedId) {
+        Feed feed = feeds.get(feedId);
+        return feed == null ? null : feed.state;
+    }
+
+    String displayOf(long feedId) {
+        Feed feed = feeds.get(feedId);
+        return feed == null ? null : feed.display;
+    }
+
+    private void finishRequest(boolean ok) {
+        if (request != Request.UNSUBSCRIBE) {
+            for (int i = 0; i < inFlightCount; i++) {
+                Feed feed = feeds.get(inFlight[i]);
+                if (feed == null || feed.state != State.REQUESTED)
+                    continue;
+                if (ok) {
+                    feed.state = State.SUBSCRIBED;
+                    steps.onSubscribed(feed.feedId);
+                } else {
+                    feeds.remove(feed.feedId);
+                }
+            }
+        }
+        inFlightCount = 0;
+        request = Request.NONE;
+        awaitingAnswer = false;
+        pump();
+    }
+
+    private void pump() {
+        if (request != Request.NONE || attaching)
+            return;
+        if (handle == null) {
+            if (pendingAddCount > 0) {
+                attaching = true;
+                steps.attach();
+                return;
+            }
+        } else if (!joined) {
+            if (pendingAddCount > 0) {
+                joined = true;
+                send(Request.JOIN);
+                return;
+            }
+        } else if (pendingRemoveCount > 0) {
+            send(Request.UNSUBSCRIBE);
+            return;
+        } else if (pendingAddCount > 0) {
+            send(Request.SUBSCRIBE);
+            return;
+        }
+        if (burstStartMs >= 0) {
+            long elapsed = time.nowMs() - burstStartMs;
+            burstStartMs = -1;
+            steps.onSettled(burstFeeds, elapsed);
+        }
+    }
+
+    private void send(Request next) {
+        long[] source = next == Request.UNSUBSCRIBE ? pendingRemove : pendingAdd;
+        int count = next == Request.UNSUBSCRIBE ? pendingRemoveCount : pendingAddCount;
+        if (inFlight.length < count)
+            inFlight = new long[source.length];
+        System.arraycopy(source, 0, inFlight, 0, count);
+        inFlightCount = count;
+        if (next == Request.UNSUBSCRIBE) {
+            pendingRemoveCount = 0;
+        } else {
+            pendingAddCount = 0;
+            for (int i = 0; i < count; i++)
+                feeds.get(inFlight[i]).state = State.REQUESTED;
+        }
+        request = next;
+        switch (next) {
+            case JOIN:
+                steps.join(handle, inFlight, count);
+                break;
+            case SUBSCRIBE:
+                steps.subscribe(handle, inFlight, count);
+                break;
+            case UNSUBSCRIBE:
+                steps.unsubscribe(handle, inFlight, count);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static long[] add(long[] ids, int count, long id) {
+        if (count == ids.length) {
+            long[] grown = new long[count * 2];
+            System.arraycopy(ids, 0, grown, 0, count);
+            ids = grown;
+        }
+        ids[count] = id;
+        return ids;
+    }
+
+    private static int drop(long[] ids, int count, long id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                System.arraycopy(ids, i + 1, ids, i, count - i - 1);
+                return count - 1;
+            }
+        }
+        return count;
+    }
+}
@@ -7,28 +7,25 @@ import android.media.projection.MediaProjection;
 import android.util.Log;
 
 import java.io.InvalidObjectException;
-import java.math.BigInteger;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
-import org.json.JSONObject;
 import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
 import org.webrtc.Camera2Capturer;
 import org.webrtc.Camera2Enumerator;
 import org.webrtc.CameraEnumerator;
 import org.webrtc.CapturerObserver;
-import org.webrtc.DefaultVideoEncoderFactory;
 import org.webrtc.EglBase;
-import org.webrtc.Logging;
 import org.webrtc.MediaConstraints;
 import org.webrtc.MediaStream;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
-import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpTransceiver;
 import org.webrtc.ScreenCapturerAndroid;
 import org.webrtc.SessionDescription;
 import org.webrtc.SurfaceTextureHelper;
@@ -39,8 +36,10 @@ import org.webrtc.VideoTrack;
 
 import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
 import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionScreenShareParameters;
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.RtcProfile;
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.SimulcastLayer;
 
-public class PeerConnectionClient implements JanusRTCInterface {
+public class PeerConnectionClient {
   public static final String VIDEO_TRACK_ID = "ARDAMSv0";
   public static final String AUDIO_TRACK_ID = "ARDAMSa0";
   private static final String TAG = "PCRTCClient";
@@ -50,153 +49,527 @@ public class PeerConnectionClient implements JanusRTCInterface {
   private static final String AUDIO_NOISE_SUPPRESSION_CONSTRAINT = "googNoiseSuppression";
 
   final private Context context;
-  final private PeerConnectionFactory factory;
-  final private WebSocketChannel _webSocketChannel;
-  final private ConcurrentHashMap<BigInteger, JanusConnection> peerConnectionMap;
+  private volatile PeerConnectionFactory factory;
+  // Open once the factory was acquired, or failed to be; startAsync builds it in parallel.
+  final private CountDownLatch factoryReady = new CountDownLatch(1);
+  private volatile ClientStartup startup;
+  final private LongConcurrentMap<Room> rooms;
   final private VideoSink localRender;
   final private VideoSink viewRenderer;
+  private volatile RemoteVideoSinks remoteVideoSinks;
+  final private FrameMetrics frameMetrics = new FrameMetrics(JanusTransactions.SYSTEM_TIME);
 
   final private EglBase.Context renderEGLContext;
   private boolean videoCapturerStopped;
-  private boolean isError;
-
-  private MediaConstraints sdpMediaConstraints;
+  private volatile boolean isError;
+
+  final private MediaConstraints sdpMediaConstraints;
+  final private MediaConstraints iceRestartConstraints;
+  // Built once from the profile; createPeerConnection copies what it needs.
+  final private PeerConnection.RTCConfiguration planBConfiguration;
+  final private PeerConnection.RTCConfiguration unifiedPlanConfiguration;
+  final private boolean preGather;
+  // Set along with the factory, once the codecs are known.
+  private volatile SdpProcessor sdpProcessor;
+  // 0 until then.
+  private volatile int hdDecodeLimit;
   public PeerConnectionParameters peerConnectionParameters;
-  private MediaStream mediaStream;
-  private VideoCapturer videoCapturer;
 
+  // Capture is shared by the publishers of every room and runs while at least one is joined.
+  private VideoCapturer videoCapturer;
+  private VideoSource videoSource;
+  private AudioSource audioSource;
+  private VideoTrack localVideoTrack;
+  private AudioTrack localAudioTrack;
+  private int localMediaUsers;
+  // Set while capture runs with adaptCapture.
+  private volatile CaptureGovernor captureGovernor;
+  // The reference startAsync holds on the capture until the publisher has its own.
+  private boolean warmMediaHeld;
+  private volatile boolean closed;
+
+  // Blocks until the websocket is connected. Prefer startAsync on the UI thread: the first
+  // client on a device also probes the codecs here, up to a few hundred milliseconds, unless
+  // CodecProber.prefetch ran earlier.
   public PeerConnectionClient(final Context context,
                                final EglBase.Context renderEGLContext,
                                final PeerConnectionParameters peerConnectionParameters,
                                final VideoSink localRender,
                                final VideoSink viewRenderer) throws InterruptedException, InvalidObjectException, URISyntaxException {
+    this(context, renderEGLContext, peerConnectionParameters, localRender, viewRenderer, (ClientStartup) null);
     try {
-      peerConnectionMap = new ConcurrentHashMap<>();
-      this.peerConnectionParameters = peerConnectionParameters;
-      videoCapturerStopped = false;
-      isError = false;
-      mediaStream = null;
-      videoCapturer = null;
-      this.localRender = localRender;
-      this.viewRenderer = viewRenderer;
-      this.context = context;
-      this.renderEGLContext = renderEGLContext;
+      factory = SharedPeerConnectionFactory.acquire(context, renderEGLContext);
+      applyCodecCapabilities();
+      factoryReady.countDown();
+      joinRoom(peerConnectionParameters.roomId);
+    }
+    catch (Exception e) {
+      close();
+      throw e;
+    }
+  }
 
-      Log.d(TAG, "Capturing format: " + peerConnectionParameters.videoWidth +
-              "x" + peerConnectionParameters.videoHeight + "@" + peerConnectionParameters.videoFps);
+  private PeerConnectionClient(final Context context,
+                               final EglBase.Context renderEGLContext,
+                               final PeerConnectionParameters peerConnectionParameters,
+                               final VideoSink localRender,
+                               final VideoSink viewRenderer,
+                               final ClientStartup startup) {
+    this.startup = startup;
+    rooms = new LongConcurrentMap<>();
+    this.peerConnectionParameters = peerConnectionParameters;
+    videoCapturerStopped = false;
+    isError = false;
+    videoCapturer = null;
+    this.localRender = localRender;
+    this.viewRenderer = viewRenderer;
+    this.remoteVideoSinks = frameMetrics.wrap(new RemoteVideoSinks() {
+      @Override
+      public VideoSink acquire(long feedId) {
+        return viewRenderer;
+      }
 
-      isError = false;
+      @Override
+      public void release(long feedId, VideoSink sink) {
+      }
+    });
+    this.context = context;
+    this.renderEGLContext = renderEGLContext;
 
-      PeerConnectionFactory.InitializationOptions factory_init_options = PeerConnectionFactory.InitializationOptions
-              .builder(context)
-              .setInjectableLogger(((s, severity, s1) -> {
-                Log.d("internal", s1);
-              }), Logging.Severity.LS_INFO)
-              .createInitializationOptions();
+    // Create SDP constraints.
+    sdpMediaConstraints = new MediaConstraints();
+    sdpMediaConstraints.mandatory.add(
+            new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "true"));
+    sdpMediaConstraints.mandatory.add(
+            new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "true"));
+    iceRestartConstraints = new MediaConstraints();
+    iceRestartConstraints.mandatory.addAll(sdpMediaConstraints.mandatory);
+    iceRestartConstraints.mandatory.add(
+            new MediaConstraints.KeyValuePair("IceRestart", "true"));
 
-      PeerConnectionFactory.initialize(factory_init_options);
+    RtcProfile profile = peerConnectionParameters.rtcProfile != null
+            ? peerConnectionParameters.rtcProfile : new RtcProfile();
+    planBConfiguration = profile.toRtcConfiguration(PeerConnection.SdpSemantics.PLAN_B);
+    unifiedPlanConfiguration = profile.toRtcConfiguration(PeerConnection.SdpSemantics.UNIFIED_PLAN);
+    preGather = profile.iceCandidatePoolSize > 0;
 
+    Log.d(TAG, "Capturing format: " + peerConnectionParameters.videoWidth +
+            "x" + peerConnectionParameters.videoHeight + "@" + peerConnectionParameters.videoFps);
 
-      factory = PeerConnectionFactory
-              .builder()
-              .setVideoDecoderFactory(new DefaultVideoDecoderFactory(renderEGLContext))
-              .setVideoEncoderFactory(new DefaultVideoEncoderFactory(renderEGLContext, true, true))
-              .createPeerConnectionFactory();
+    isError = false;
+  }
 
-      _webSocketChannel = WebSocketChannel.createWebSockeChannel(peerConnectionParameters.activity,
-              this,
-              peerConnectionParameters.janusWebSocketURL);
+  /*
+   * Starts a client without blocking the caller. The websocket connect and the Janus create,
+   * attach and join run on the signaling threads while a startup thread acquires the factory
+   * and starts capture, so the publisher has its tracks ready by the time it joins. The
+   * returned startup completes on the first offer, with a timing breakdown of each phase.
+   */
+  public static ClientStartup startAsync(final Context context,
+                                         final EglBase.Context renderEGLContext,
+                                         final PeerConnectionParameters peerConnectionParameters,
+                                         final VideoSink localRender,
+                                         final VideoSink viewRenderer) {
+    final ClientStartup startup = new ClientStartup();
+    final PeerConnectionClient client = new PeerConnectionClient(context, renderEGLContext,
+            peerConnectionParameters, localRender, viewRenderer, startup);
+    startup.attach(client);
+    try {
+      client.connectRoom(peerConnectionParameters.roomId, startup.timings);
+    } catch (URISyntaxException e) {
+      client.startupFailed(e);
+      return startup;
     }
-    catch (Exception e) {
-      close();
+    new Thread(() -> client.warmUp(startup), "ClientStartup").start();
+    return startup;
+  }
+
+  // Runs on the startup thread.
+  private void warmUp(ClientStartup startup) {
+    try {
+      startup.timings.begin(StartupTimings.Phase.FACTORY);
+      PeerConnectionFactory acquired = SharedPeerConnectionFactory.acquire(context, renderEGLContext);
+      synchronized (this) {
+        if (closed) {
+          SharedPeerConnectionFactory.release(acquired);
+          return;
+        }
+        factory = acquired;
+      }
+      applyCodecCapabilities();
+      startup.timings.end(StartupTimings.Phase.FACTORY);
+    } catch (RuntimeException e) {
+      startupFailed(e);
+      return;
+    } finally {
+      factoryReady.countDown();
+    }
+    startup.timings.begin(StartupTimings.Phase.CAPTURE);
+    synchronized (this) {
+      // Skipped when the publisher got there first.
+      if (this.startup == null || closed)
+        return;
+      acquireLocalMedia();
+      warmMediaHeld = true;
+    }
+    startup.timings.end(StartupTimings.Phase.CAPTURE);
+    try {
+      if (!startup.await(peerConnectionParameters.startupTimeoutMs))
+        startupFailed(new InvalidObjectException("Janus room not joined in time"));
+    } catch (InterruptedException e) {
+      startupFailed(e);
+    }
+  }
+
+  private void startupFailed(Exception e) {
+    Log.e(TAG, "Startup failed: " + e.getMessage());
+    ClientStartup current = startup;
+    startup = null;
+    close();
+    if (current != null)
+      current.fail(e);
+  }
+
+  // Called once the first publisher sent its offer.
+  private void startupDone() {
+    ClientStartup current = startup;
+    if (current == null)
+      return;
+    startup = null;
+    current.timings.end(StartupTimings.Phase.READY);
+    Log.d(TAG, "Startup: " + current.timings);
+    synchronized (this) {
+      if (warmMediaHeld) {
+        warmMediaHeld = false;
+        releaseLocalMedia();
+      }
+    }
+    current.succeed();
+  }
+
+  // The factory probed the codecs already, so this only reads the cached capabilities.
+  private void applyCodecCapabilities() {
+    CodecCapabilities capabilities = CodecProber.capabilities(context);
+    String videoCodec = peerConnectionParameters.videoCodec;
+    if (peerConnectionParameters.preferHardwareVideoCodec)
+      videoCodec = capabilities.preferredVideoCodec(videoCodec);
+    if (videoCodec != null && !videoCodec.equalsIgnoreCase(peerConnectionParameters.videoCodec))
+      Log.d(TAG, "No hardware " + peerConnectionParameters.videoCodec + " encoder, publishing " + videoCodec);
+    sdpProcessor = new SdpProcessor(videoCodec, peerConnectionParameters.audioCodec,
+            peerConnectionParameters.audioStartBitrate, peerConnectionParameters.stripUnusedCodecs,
+            peerConnectionParameters.stripHeaderExtensions);
+    int maxHdDecodes = peerConnectionParameters.maxHdDecodes;
+    hdDecodeLimit = maxHdDecodes != 0 ? maxHdDecodes : capabilities.maxConcurrentHdDecodes(videoCodec);
+    // Rooms connected before this get the limit now, later ones in startMonitors.
+    for (Room room : rooms.values()) {
+      if (room.channel != null)
+        room.channel.setMaxHdDecodes(hdDecodeLimit);
+    }
+  }
+
+  private boolean awaitFactory() {
+    try {
+      factoryReady.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return factory != null;
+  }
+
+  /*
+   * Joins another room on the same Janus server, publishing the same capture. Each room has
+   * its own session and websocket; remote feeds of every room go to the same sinks.
+   */
+  public void joinRoom(long roomId) throws InterruptedException, InvalidObjectException, URISyntaxException {
+    if (rooms.containsKey(roomId))
+      return;
+    Room room = new Room(roomId);
+    rooms.put(roomId, room);
+    try {
+      // Janus callbacks arrive on the signaling threads, never on the UI thread. Nothing they
+      // touch needs the UI thread: renderers are VideoSinks and accept frames from any thread.
+      room.channel = WebSocketChannel.createWebSockeChannel(room, peerConnectionParameters, roomId);
+    } catch (Exception e) {
+      rooms.remove(roomId);
       throw e;
     }
+    startMonitors(room);
   }
 
-  public PeerConnection createRemotePeerConnection(BigInteger handleId) {
-    return createPeerConnection(handleId, JanusConnection.ConnectionType.REMOTE);
+  private void connectRoom(long roomId, StartupTimings timings) throws URISyntaxException {
+    Room room = new Room(roomId);
+    rooms.put(roomId, room);
+    room.channel = WebSocketChannel.connectWebSocketChannel(room, peerConnectionParameters, roomId, timings);
+    startMonitors(room);
   }
 
+  private void startMonitors(Room room) {
+    if (hdDecodeLimit != 0)
+      room.channel.setMaxHdDecodes(hdDecodeLimit);
+    room.channel.startSpeakerDetection(new AudioLevelMonitor(room.connections, room.channel));
+    room.stats = new StatsCollector(room.connections, room.channel,
+            peerConnectionParameters.statsHistorySize, peerConnectionParameters.collectStats);
+    room.stats.setCaptureGovernor(captureGovernor);
+    room.channel.startStatsCollection(room.stats);
+  }
+
+  public void leaveRoom(long roomId) {
+    Room room = rooms.remove(roomId);
+    if (room != null)
+      room.close();
+  }
+
+  private PeerConnection createPeerConnection(Room room, long handleId, JanusConnection.ConnectionType type) {
+    Log.d(TAG, "Create peer connection.");
+    if (!awaitFactory())
+      return null;
+    PeerConnection.RTCConfiguration rtcConfig = planBConfiguration;
+    JanusConnection janusConnection = new JanusConnection();
+    PeerConnectionObserver pcObserver;
+    if (type == JanusConnection.ConnectionType.LOCAL && peerConnectionParameters.simulcastLayers != null) {
+      rtcConfig = unifiedPlanConfiguration;
+    }
+    if (type == JanusConnection.ConnectionType.REMOTE && peerConnectionParameters.multistream) {
+      // One subscriber connection carries every feed; tracks are routed by mid.
+      rtcConfig = unifiedPlanConfiguration;
+      pcObserver = new PeerConnectionObserver(null, room.channel, handleId, janusConnection, remoteVideoSinks);
+    } else {
+      VideoSink renderer = type == JanusConnection.ConnectionType.REMOTE
+              ? frameMetrics.wrapRemote(room.channel.feedOfHandle(handleId), viewRenderer) : viewRenderer;
+      pcObserver = new PeerConnectionObserver(renderer, room.channel, handleId);
+    }
+    PeerConnection peerConnection = factory.createPeerConnection(rtcConfig, pcObserver);
+    if (peerConnection == null)
+      throw new NullPointerException("peer connection is null");
+
+    janusConnection.handleId = handleId;
+    janusConnection.sdpObserver = new SDPObserver(room.channel, peerConnection, handleId, type, sdpProcessor);
+    janusConnection.peerConnection = peerConnection;
+    janusConnection.type = type;
+
+    room.connections.put(handleId, janusConnection);
 
-  public void createLocalPeerConnection( final BigInteger handleId) {
+    Log.d(TAG, "Peer connection created.");
+    return peerConnection;
+  }
+
+  private void createLocalPeerConnection(Room room, final long handleId) {
     if (peerConnectionParameters == null) {
       Log.e(TAG, "Creating peer connection without initializing factory.");
       return;
     }
 
-    // Create SDP constraints.
-    sdpMediaConstraints = new MediaConstraints();
-    sdpMediaConstraints.mandatory.add(
-            new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "true"));
-    sdpMediaConstraints.mandatory.add(
-            new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "true"));
-
-    PeerConnection peerConnection = createPeerConnection(handleId, JanusConnection.ConnectionType.LOCAL);
-
-    mediaStream = factory.createLocalMediaStream("ARDAMS");
-    VideoSource videoSource = factory.createVideoSource(false);
+    // Usually created on attach already, to gather candidates during the join.
+    JanusConnection existing = room.connections.get(handleId);
+    PeerConnection peerConnection = existing != null ? existing.peerConnection
+            : createPeerConnection(room, handleId, JanusConnection.ConnectionType.LOCAL);
+    JanusConnection connection = room.connections.get(handleId);
+    if (peerConnection == null || connection == null)
+      return;
+    if (connection.markLocalMedia())
+      acquireLocalMedia();
+
+    MediaStream mediaStream = factory.createLocalMediaStream("ARDAMS");
+    mediaStream.addTrack(localVideoTrack);
+    mediaStream.addTrack(localAudioTrack);
+    if (peerConnectionParameters.simulcastLayers != null) {
+      // Simulcast needs Unified Plan and one send encoding per layer.
+      List<String> streamIds = Collections.singletonList(mediaStream.getId());
+      List<RtpParameters.Encoding> encodings = new ArrayList<>();
+      for (SimulcastLayer layer : peerConnectionParameters.simulcastLayers) {
+        RtpParameters.Encoding encoding = new RtpParameters.Encoding(layer.rid, true, layer.scaleResolutionDownBy);
+        encoding.maxBitrateBps = layer.maxBitrateBps;
+        encodings.add(encoding);
+      }
+      peerConnection.addTransceiver(localVideoTrack, new RtpTransceiver.RtpTransceiverInit(
+              RtpTransceiver.RtpTransceiverDirection.SEND_ONLY, streamIds, encodings));
+      peerConnection.addTrack(localAudioTrack, streamIds);
+    } else {
+      peerConnection.addStream(mediaStream);
+    }
+  }
 
+  // The first publisher starts capture; later ones, in other rooms, add the same tracks.
+  private synchronized void acquireLocalMedia() {
+    if (localMediaUsers++ > 0 || !awaitFactory())
+      return;
+    // A screencast source tells the encoder to keep detail rather than motion.
+    boolean screencast = peerConnectionParameters.capturerType == PeerConnectionParameters.VideoCapturerType.SCREEN_SHARE;
+    videoSource = factory.createVideoSource(screencast);
     try {
       switch (peerConnectionParameters.capturerType) {
         case CAMERA_FRONT:
-          videoCapturer = createCamera2Capturer(videoSource.getCapturerObserver());
+          videoCapturer = createCamera2Capturer(frameMetrics.wrap(videoSource.getCapturerObserver()));
           break;
         case SCREEN_SHARE:
-          videoCapturer = createScreenCapturer(videoSource.getCapturerObserver(),
-                  ((PeerConnectionScreenShareParameters)peerConnectionParameters).permission_data,
-                  ((PeerConnectionScreenShareParameters)peerConnectionParameters).permission_result_code);
+          PeerConnectionScreenShareParameters screenShare = (PeerConnectionScreenShareParameters) peerConnectionParameters;
+          CapturerObserver observer = frameMetrics.wrap(videoSource.getCapturerObserver());
+          // Ahead of the metrics, so suppressed frames count as never captured.
+          if (screenShare.suppressStaticFrames)
+            observer = new StaticFrameFilter(observer, screenShare.refreshIntervalMs);
+          videoCapturer = createScreenCapturer(observer, screenShare.permission_data,
+                  screenShare.permission_result_code);
       }
       videoCapturerStopped = false;
     } catch (InvalidObjectException e) {
       Log.e(TAG, e.getMessage());
       e.printStackTrace();
     }
-    mediaStream.addTrack(createVideoTrack(videoSource));
-    mediaStream.addTrack(createAudioTrack(peerConnectionParameters.noAudioProcessing));
-    peerConnection.addStream(mediaStream);
+    localVideoTrack = createVideoTrack(videoSource);
+    localAudioTrack = createAudioTrack(peerConnectionParameters.noAudioProcessing);
+    if (peerConnectionParameters.adaptCapture)
+      startCaptureGovernor();
   }
 
-  private PeerConnection createPeerConnection(BigInteger handleId, JanusConnection.ConnectionType type) {
-    Log.d(TAG, "Create peer connection.");
-    PeerConnection.IceServer iceServer = PeerConnection.IceServer
-            .builder("stun:stun.l.google.com:19302")
-            .createIceServer();
+  private void startCaptureGovernor() {
+    final VideoSource source = videoSource;
+    CapturePolicy policy = peerConnectionParameters.capturePolicy != null
+            ? peerConnectionParameters.capturePolicy : new DefaultCapturePolicy();
+    captureGovernor = new CaptureGovernor(policy, (width, height, fps) -> {
+      synchronized (this) {
+        if (videoSource == source)
+          source.adaptOutputFormat(width, height, fps);
+      }
+    }, new ThermalStatus(context), frameMetrics, peerConnectionParameters.videoWidth,
+            peerConnectionParameters.videoHeight, peerConnectionParameters.videoFps,
+            peerConnectionParameters.statsIntervalMs * 3L / 4);
+    setCaptureGovernor(captureGovernor);
+  }
 
-    List<PeerConnection.IceServer> iceServers = new ArrayList<>();
-    iceServers.add(iceServer);
-    PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
-    rtcConfig.iceTransportsType = PeerConnection.IceTransportsType.ALL;
-    rtcConfig.enableDtlsSrtp = true;
+  // Rooms connected later pick it up in startMonitors.
+  private void setCaptureGovernor(CaptureGovernor governor) {
+    for (Room room : rooms.values()) {
+      if (room.stats != null)
+        room.stats.setCaptureGovernor(governor);
+    }
+  }
 
+  private synchronized void releaseLocalMedia() {
+    if (localMediaUsers == 0 || --localMediaUsers > 0)
+      return;
+    disposeLocalMedia();
+  }
 
-    PeerConnectionObserver pcObserver = new PeerConnectionObserver(viewRenderer, _webSocketChannel, handleId);
-    PeerConnection peerConnection = factory.createPeerConnection(rtcConfig, pcObserver);
-    if (peerConnection == null)
-      throw new NullPointerException("peer connection is null");
+  private synchronized void disposeLocalMedia() {
+    localMediaUsers = 0;
+    if (captureGovernor != null) {
+      captureGovernor = null;
+      setCaptureGovernor(null);
+    }
+    stopCapture();
+    if (localVideoTrack != null) {
+      localVideoTrack.dispose();
+      localVideoTrack = null;
+    }
+    if (localAudioTrack != null) {
+      localAudioTrack.dispose();
+      localAudioTrack = null;
+    }
+    if (videoSource != null) {
+      videoSource.dispose();
+      videoSource = null;
+    }
+    if (audioSource != null) {
+      audioSource.dispose();
+      audioSource = null;
+    }
+  }
 
-    JanusConnection janusConnection = new JanusConnection();
-    janusConnection.handleId = handleId;
-    janusConnection.sdpObserver = new SDPObserver(_webSocketChannel, peerConnection, handleId, type);
-    janusConnection.peerConnection = peerConnection;
-    janusConnection.type = type;
+  // Size a remote feed is drawn at, or 0x0 when it is off-screen. With adaptiveSubstreams the
+  // subscription switches to the simulcast layer that fits.
+  public void setFeedRenderSize(long roomId, long feedId, int width, int height) {
+    Room room = rooms.get(roomId);
+    if (room != null)
+      room.channel.setFeedRenderSize(feedId, width, height);
+  }
 
-    peerConnectionMap.put(handleId, janusConnection);
+  public void setFeedRenderSize(long feedId, int width, int height) {
+    setFeedRenderSize(peerConnectionParameters.roomId, feedId, width, height);
+  }
 
-    Log.d(TAG, "Peer connection created.");
-    return peerConnection;
+  // Routes each remote feed to its own sink; by default every feed goes to viewRenderer.
+  // Only multistream subscriptions consult it, and only those created after the call.
+  public void setRemoteVideoSinks(RemoteVideoSinks sinks) {
+    remoteVideoSinks = frameMetrics.wrap(sinks);
+  }
+
+  // Follows the dominant speaker and, with PeerConnectionParameters.lastN, which feeds get video.
+  public void setSpeakerListener(long roomId, SpeakerListener listener) {
+    Room room = rooms.get(roomId);
+    if (room != null)
+      room.channel.setSpeakerListener(listener);
+  }
+
+  public void setSpeakerListener(SpeakerListener listener) {
+    setSpeakerListener(peerConnectionParameters.roomId, listener);
+  }
+
+  // Starts getStats rounds every statsIntervalMs; null stops them unless collectStats is set.
+  public void setStatsListener(long roomId, StatsListener listener) {
+    Room room = rooms.get(roomId);
+    if (room != null)
+      room.stats.setListener(listener);
+  }
+
+  public void setStatsListener(StatsListener listener) {
+    setStatsListener(peerConnectionParameters.roomId, listener);
+  }
+
+  // The newest sample of every connection in the room; empty while stats are not collected.
+  public ConnectionStats[] getStats(long roomId) {
+    Room room = rooms.get(roomId);
+    return room == null ? new ConnectionStats[0] : room.stats.snapshot();
+  }
+
+  public ConnectionStats[] getStats() {
+    return getStats(peerConnectionParameters.roomId);
+  }
+
+  // Capture rate, frames dropped before the encoder and time to first frame, local and remote.
+  public FrameMetrics getFrameMetrics() {
+    return frameMetrics;
+  }
+
+  // Round-trip histograms of the room's Janus requests; toJson() exports them.
+  public SignalingLatency getSignalingLatency(long roomId) {
+    Room room = rooms.get(roomId);
+    return room == null ? null : room.channel.signalingLatency();
+  }
+
+  public SignalingLatency getSignalingLatency() {
+    return getSignalingLatency(peerConnectionParameters.roomId);
+  }
+
+  // Up to statsHistorySize samples of one connection, oldest first. feedId picks the feed on
+  // a multistream subscription, and is the handle's own feed otherwise.
+  public ConnectionStats[] getStatsHistory(long roomId, long handleId, long feedId) {
+    Room room = rooms.get(roomId);
+    return room == null ? new ConnectionStats[0] : room.stats.history(handleId, feedId);
   }
 
   public void close() {
     Log.d(TAG, "Closing peer connection.");
+    synchronized (this) {
+      closed = true;
+      warmMediaHeld = false;
+    }
 
-    if (peerConnectionMap != null) {
-      for (Map.Entry<BigInteger, JanusConnection> entry: peerConnectionMap.entrySet()) {
-        if (entry.getValue().peerConnection != null) {
-          entry.getValue().peerConnection.dispose();
-        }
-      }
+    if (rooms != null) {
+      for (Room room : rooms.values())
+        room.close();
+      rooms.clear();
     }
 
+    disposeLocalMedia();
+
+    Log.d(TAG, "Releasing peer connection factory.");
+    SharedPeerConnectionFactory.release(factory);
+    factory = null;
+    Log.d(TAG, "Closing peer connection done.");
+  }
+
+
+  private void stopCapture() {
     Log.d(TAG, "Stopping capture.");
     if (videoCapturer != null) {
       try {
@@ -208,36 +581,6 @@ public class PeerConnectionClient implements JanusRTCInterface {
       videoCapturer.dispose();
       videoCapturer = null;
     }
-
-    Log.d(TAG, "Closing peer connection factory.");
-    if (factory != null)
-      factory.dispose();
-    Log.d(TAG, "Closing peer connection done.");
-    if (_webSocketChannel != null)
-      _webSocketChannel.close();
-  }
-
-
-  public void setRemoteDescription(final BigInteger handleId, final SessionDescription sdp) {
-    PeerConnection peerConnection = peerConnectionMap.get(handleId).peerConnection;
-    if (peerConnection == null || isError) {
-      return;
-    }
-    SDPObserver sdpObserver = peerConnectionMap.get(handleId).sdpObserver;
-
-    peerConnection.setRemoteDescription(sdpObserver, sdp);
-  }
-
-  public void subscriberHandleRemoteJsep(final BigInteger handleId, final SessionDescription sdp) {
-      PeerConnection peerConnection = createRemotePeerConnection(handleId);
-      SDPObserver sdpObserver = peerConnectionMap.get(handleId).sdpObserver;
-      if (peerConnection == null || isError) {
-        return;
-      }
-      JanusConnection connection = peerConnectionMap.get(handleId);
-      peerConnection.setRemoteDescription(sdpObserver, sdp);
-      Log.d(TAG, "PC create ANSWER");
-      peerConnection.createAnswer(connection.sdpObserver, sdpMediaConstraints);
   }
 
   private AudioTrack createAudioTrack(boolean disable_audio_processing) {
@@ -255,7 +598,7 @@ public class PeerConnectionClient implements JanusRTCInterface {
       audioConstraints.mandatory.add(
               new MediaConstraints.KeyValuePair(AUDIO_NOISE_SUPPRESSION_CONSTRAINT, "false"));
     }
-    AudioSource audioSource = factory.createAudioSource(audioConstraints);
+    audioSource = factory.createAudioSource(audioConstraints);
     AudioTrack localAudioTrack = factory.createAudioTrack(AUDIO_TRACK_ID, audioSource);
     localAudioTrack.setEnabled(true);
     return localAudioTrack;
@@ -266,42 +609,158 @@ public class PeerConnectionClient implements JanusRTCInterface {
     localVideoTrack.setEnabled(true);
     if (localRender != null)
       localVideoTrack.addSink(localRender);
+    localVideoTrack.addSink(frameMetrics.deliveredFrames());
     return localVideoTrack;
   }
 
+  /*
+   * One joined room: its signaling channel and the PeerConnections of its handles. Handle ids
+   * are only unique within one Janus server, so each room keeps its own map.
+   */
+  private class Room implements JanusRTCInterface {
+    final long roomId;
+    final LongConcurrentMap<JanusConnection> connections = new LongConcurrentMap<>();
+    volatile WebSocketChannel channel;
+    volatile StatsCollector stats;
+
+    Room(long roomId) {
+      this.roomId = roomId;
+    }
 
-  // interface JanusRTCInterface
-  @Override
-  public void onPublisherJoined(final BigInteger handleId) {
-    createLocalPeerConnection(handleId);
-    JanusConnection connection = peerConnectionMap.get(handleId);
-    PeerConnection peerConnection = connection.peerConnection;
-    if (peerConnection != null && !isError) {
-      Log.d(TAG, "PC Create OFFER");
-      peerConnection.createOffer(connection.sdpObserver, sdpMediaConstraints);
+    void close() {
+      for (JanusConnection connection : connections.values()) {
+        connection.releaseSinks(remoteVideoSinks);
+        if (connection.peerConnection != null)
+          connection.peerConnection.dispose();
+        if (connection.clearLocalMedia())
+          releaseLocalMedia();
+      }
+      connections.clear();
+      if (channel != null)
+        channel.close();
     }
-  }
 
-  @Override
-  public void onPublisherRemoteJsep(final BigInteger handleId, final JSONObject jsep) {
-    SessionDescription.Type type = SessionDescription.Type.fromCanonicalForm(jsep.optString("type"));
-    String sdp = jsep.optString("sdp");
-    SessionDescription sessionDescription = new SessionDescription(type, sdp);
-    setRemoteDescription(handleId, sessionDescription);
-  }
+    private PeerConnection createRemotePeerConnection(long handleId) {
+      return createPeerConnection(this, handleId, JanusConnection.ConnectionType.REMOTE);
+    }
 
-  @Override
-  public void subscriberHandleRemoteJsep(final BigInteger handleId, final JSONObject jsep) {
-    SessionDescription.Type type = SessionDescription.Type.fromCanonicalForm(jsep.optString("type"));
-    String sdp = jsep.optString("sdp");
-    SessionDescription sessionDescription = new SessionDescription(type, sdp);
-    subscriberHandleRemoteJsep(handleId, sessionDescription);
-  }
+    private void setRemoteDescription(final long handleId, final SessionDescription sdp) {
+      JanusConnection connection = connections.get(handleId);
+      if (connection == null || connection.peerConnection == null || isError) {
+        return;
+      }
+      connection.peerConnection.setRemoteDescription(connection.sdpObserver, sdp);
+    }
+
+    private void subscriberHandleRemoteJsep(final long handleId, final SessionDescription sdp) {
+      // A multistream subscriber renegotiates on the connection it already has.
+      JanusConnection connection = connections.get(handleId);
+      PeerConnection peerConnection = connection != null ? connection.peerConnection : createRemotePeerConnection(handleId);
+      if (peerConnection == null || isError) {
+        return;
+      }
+      connection = connections.get(handleId);
+      peerConnection.setRemoteDescription(connection.sdpObserver, sdp);
+      Log.d(TAG, "PC create ANSWER");
+      peerConnection.createAnswer(connection.sdpObserver, sdpMediaConstraints);
+    }
+
+    // interface JanusRTCInterface
+    @Override
+    public void onHandleAttached(long handleId, boolean publisher) {
+      if (!preGather || connections.containsKey(handleId))
+        return;
+      createPeerConnection(this, handleId, publisher
+              ? JanusConnection.ConnectionType.LOCAL : JanusConnection.ConnectionType.REMOTE);
+    }
+
+    @Override
+    public void onFeedDiscovered(long feedId) {
+      frameMetrics.onFeedDiscovered(feedId);
+    }
+
+    @Override
+    public void onFeedLeft(long feedId) {
+      frameMetrics.onFeedLeft(feedId);
+    }
+
+    @Override
+    public void onPublisherJoined(final long handleId) {
+      frameMetrics.onPublisherJoined();
+      createLocalPeerConnection(this, handleId);
+      JanusConnection connection = connections.get(handleId);
+      if (connection == null)
+        return;
+      PeerConnection peerConnection = connection.peerConnection;
+      if (peerConnection != null && !isError) {
+        Log.d(TAG, "PC Create OFFER");
+        peerConnection.createOffer(connection.sdpObserver, sdpMediaConstraints);
+        startupDone();
+      }
+    }
 
-  @Override
-  public void onLeaving(BigInteger handleId) {
+    @Override
+    public void onPublisherRemoteJsep(final long handleId, final JanusEvent.Jsep jsep) {
+      SessionDescription.Type type = SessionDescription.Type.fromCanonicalForm(jsep.type());
+      SessionDescription sessionDescription = new SessionDescription(type, jsep.sdp());
+      setRemoteDescription(handleId, sessionDescription);
+    }
+
+    @Override
+    public void subscriberHandleRemoteJsep(final long handleId, final JanusEvent.Jsep jsep) {
+      SessionDescription.Type type = SessionDescription.Type.fromCanonicalForm(jsep.type());
+      SessionDescription sessionDescription = new SessionDescription(type, jsep.sdp());
+      subscriberHandleRemoteJsep(handleId, sessionDescription);
+    }
+
+    @Override
+    public void onSubscriberStreams(long handleId, JanusEvent.Stream[] streams) {
+      JanusConnection connection = connections.get(handleId);
+      if (connection == null) {
+        createRemotePeerConnection(handleId);
+        connection = connections.get(handleId);
+      }
+      if (connection != null)
+        connection.updateStreams(streams, remoteVideoSinks);
+    }
 
+    @Override
+    public void onLeaving(long handleId) {
+      JanusConnection connection = connections.remove(handleId);
+      if (connection == null)
+        return;
+      connection.releaseSinks(remoteVideoSinks);
+      if (connection.peerConnection != null)
+        connection.peerConnection.dispose();
+      if (connection.clearLocalMedia())
+        releaseLocalMedia();
+    }
+
+    @Override
+    public void onIceRestartNeeded(long handleId) {
+      JanusConnection connection = connections.get(handleId);
+      if (connection == null || connection.peerConnection == null || isError)
+        return;
+      Log.d(TAG, "PC Create OFFER with ICE restart");
+      connection.peerConnection.createOffer(connection.sdpObserver, iceRestartConstraints);
+    }
+
+    @Override
+    public void onMediaRecovered(long handleId, long elapsedMs, int restarts) {
+      Log.d(TAG, "Room " + roomId + ": media on handle " + handleId + " recovered in " + elapsedMs + " ms after " + restarts + " ICE restarts");
+    }
+
+    @Override
+    public void onReconnected(long elapsedMs, boolean sessionKept) {
+      Log.d(TAG, "Room " + roomId + ": reconnected to janus in " + elapsedMs + " ms, " + (sessionKept ? "session kept" : "new session"));
+    }
+
+    @Override
+    public void onSubscribersSettled(int feeds, long elapsedMs) {
+      Log.d(TAG, "Room " + roomId + ": time to subscribe " + feeds + " feeds: " + elapsedMs + " ms");
+    }
   }
+
   private VideoCapturer createCamera2Capturer(CapturerObserver capturerObserver) throws InvalidObjectException {
     if (Camera2Enumerator.isSupported(context)) {
       CameraEnumerator enumerator = new Camera2Enumerator(context);
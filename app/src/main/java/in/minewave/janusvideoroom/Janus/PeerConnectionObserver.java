@@ -3,30 +3,42 @@ package in.minewave.janusvideoroom.Janus;
 
 import android.util.Log;
 
+import org.webrtc.AudioTrack;
 import org.webrtc.DataChannel;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.RtpReceiver;
+import org.webrtc.RtpTransceiver;
 import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
-import java.math.BigInteger;
 import java.util.Arrays;
 
 // Implementation detail: observe ICE & stream changes and react accordingly.
 public class PeerConnectionObserver implements PeerConnection.Observer {
     static String TAG = "PeerConnectionObserver";
-    final private BigInteger handleId;
+    final private long handleId;
     final private VideoSink _renderer;
     final private WebSocketChannel _websocket_channel;
+    final private JanusConnection _connection;
+    final private RemoteVideoSinks _sinks;
 
     PeerConnectionObserver(VideoSink renderer, WebSocketChannel wsc,
-                           BigInteger handleId) {
+                           long handleId) {
+        this(renderer, wsc, handleId, null, null);
+    }
+
+    // Multistream subscriber: tracks are routed per mid through the connection instead.
+    PeerConnectionObserver(VideoSink renderer, WebSocketChannel wsc, long handleId,
+                           JanusConnection connection, RemoteVideoSinks sinks) {
         _renderer = renderer;
         this.handleId = handleId;
         _websocket_channel = wsc;
+        _connection = connection;
+        _sinks = sinks;
     }
 
     @Override
@@ -59,6 +71,7 @@ public class PeerConnectionObserver implements PeerConnection.Observer {
         } else if (newState == PeerConnection.IceConnectionState.FAILED) {
             Log.i(TAG, "Ice connection failed");
         }
+        _websocket_channel.onIceConnectionChange(handleId, newState);
     }
 
     @Override
@@ -101,4 +114,17 @@ public class PeerConnectionObserver implements PeerConnection.Observer {
     @Override
     public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
     }
+
+    @Override
+    public void onTrack(RtpTransceiver transceiver) {
+        if (_connection == null || _sinks == null)
+            return;
+        MediaStreamTrack track = transceiver.getReceiver().track();
+        if (track instanceof VideoTrack) {
+            Log.d(TAG, "Remote video track on mid " + transceiver.getMid());
+            _connection.onVideoTrack(transceiver.getMid(), (VideoTrack) track, _sinks);
+        } else if (track instanceof AudioTrack) {
+            _connection.onAudioTrack(transceiver.getMid(), track.id());
+        }
+    }
 }
@@ -2,8 +2,11 @@ package in.minewave.janusvideoroom.Janus.PeerConnectionParameters;
 
 import android.app.Activity;
 
+import java.io.File;
 import java.security.InvalidParameterException;
 
+import in.minewave.janusvideoroom.Janus.CapturePolicy;
+
 public class PeerConnectionParameters {
   public enum VideoCapturerType {
     CAMERA_FRONT,
@@ -20,6 +23,58 @@ public class PeerConnectionParameters {
   public final Activity activity;
   public final VideoCapturerType capturerType;
 
+  // Optional tuning, set after construction.
+  // Videoroom joined by PeerConnectionClient's constructor; more with joinRoom.
+  public long roomId = 1234;
+  // PeerConnectionClient.startAsync fails when the publisher has not joined by then.
+  public int startupTimeoutMs = 20000;
+  // ICE candidates gathered within this many milliseconds go to Janus in one trickle request.
+  // 0 sends every candidate on its own.
+  public int trickleBatchWindowMs = 50;
+  // Remote feeds negotiated at once when joining a busy room; as many more are attached ahead.
+  public int maxConcurrentSubscriptions = 3;
+  // Receive every remote feed over one Unified Plan connection using Janus multistream
+  // subscribe/unsubscribe. Needs Janus 1.x; maxConcurrentSubscriptions does not apply.
+  public boolean multistream = false;
+  // Publish these encodings instead of a single one (see SimulcastLayer.defaultLayers()).
+  // null publishes a single encoding.
+  public SimulcastLayer[] simulcastLayers = null;
+  // Ask Janus for the remote substream that fits the size each feed is drawn at, see
+  // PeerConnectionClient.setFeedRenderSize.
+  public boolean adaptiveSubstreams = true;
+  // Feeds rendered nowhere stop receiving video rather than dropping to the lowest substream.
+  public boolean pauseHiddenFeeds = true;
+  // Receive video only from the N feeds that spoke most recently, audio only from the rest.
+  // 0 receives video from every feed.
+  public int lastN = 0;
+  // How often remote audio levels are sampled to detect speakers. 0 turns detection off, and
+  // lastN then keeps the first N feeds subscribed.
+  public int audioLevelIntervalMs = 500;
+  // getStats rounds over every connection, see PeerConnectionClient.setStatsListener. Rounds
+  // only run while a listener is set, unless collectStats asks for them regardless.
+  public int statsIntervalMs = 2000;
+  public int statsHistorySize = 30;
+  public boolean collectStats = false;
+  // ICE servers and transport policies of every PeerConnection, see RtcProfile.compatible()
+  // for the plain webrtc defaults.
+  public RtcProfile rtcProfile = new RtcProfile();
+  // videoCodec and audioCodec go first in every local description; these also drop the other
+  // codecs and the unused RTP header extensions from offers. See SdpProcessor.
+  public boolean stripUnusedCodecs = false;
+  public boolean stripHeaderExtensions = false;
+  // Publish the first of H264, VP8 and VP9 with a hardware encoder on this device instead of
+  // videoCodec when videoCodec has none. See CodecProber.
+  public boolean preferHardwareVideoCodec = false;
+  // Remote feeds given a simulcast layer of 720 lines or more at once, the largest drawn first.
+  // 0 takes the limit from the device's decoders, less than 0 sets none.
+  public int maxHdDecodes = 0;
+  // Step the capture resolution and frame rate down while the encoder or the device cannot keep
+  // up, and back up once they can, as capturePolicy decides from each publisher stats sample.
+  // Runs stats rounds every statsIntervalMs. null uses a DefaultCapturePolicy.
+  public boolean adaptCapture = false;
+  public CapturePolicy capturePolicy = null;
+  // Record every signaling frame to this file, for SignalingReplayer. null records nothing.
+  public File signalingTrace = null;
 
   PeerConnectionParameters(
           String janus_web_socket_uri, Activity activity,
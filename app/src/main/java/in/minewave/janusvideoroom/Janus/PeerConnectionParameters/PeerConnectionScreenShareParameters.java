@@ -6,6 +6,10 @@ import android.content.Intent;
 public class PeerConnectionScreenShareParameters extends PeerConnectionParameters {
     final public Intent permission_data;
     final public int permission_result_code;
+    // Drop frames that show the same screen as the last one sent, still sending one at least
+    // every refreshIntervalMs. See StaticFrameFilter.
+    public boolean suppressStaticFrames = true;
+    public int refreshIntervalMs = 1000;
 
     public PeerConnectionScreenShareParameters(String janus_web_socket_uri, Activity activity,
                                           int videoWidth, int videoHeight, int videoFps,
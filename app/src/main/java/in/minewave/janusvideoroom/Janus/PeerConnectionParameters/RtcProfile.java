@@ -0,0 +1,57 @@
+package in.minewave.janusvideoroom.Janus.PeerConnectionParameters;
+
+import org.webrtc.PeerConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Transport settings for every PeerConnection of a client. The default is tuned for Janus,
+ * which bundles everything on one transport and always muxes RTCP: one set of candidates per
+ * connection instead of one per m-line, no TCP candidates Janus would only try last, and a
+ * candidate pool that starts gathering while the attach and join are still in flight.
+ */
+public class RtcProfile {
+  public static final String DEFAULT_STUN_SERVER = "stun:stun.l.google.com:19302";
+
+  // STUN and TURN servers; null uses DEFAULT_STUN_SERVER.
+  public List<PeerConnection.IceServer> iceServers = null;
+  public PeerConnection.BundlePolicy bundlePolicy = PeerConnection.BundlePolicy.MAXBUNDLE;
+  public PeerConnection.RtcpMuxPolicy rtcpMuxPolicy = PeerConnection.RtcpMuxPolicy.REQUIRE;
+  // Candidates gathered as soon as a connection exists, before its offer or answer. With
+  // max-bundle one is enough; 0 only gathers once the local description is set.
+  public int iceCandidatePoolSize = 1;
+  public PeerConnection.TcpCandidatePolicy tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.DISABLED;
+  // Keep gathering after the first round, so a new network interface gets candidates without
+  // waiting for the old path to fail.
+  public PeerConnection.ContinualGatheringPolicy continualGatheringPolicy =
+          PeerConnection.ContinualGatheringPolicy.GATHER_CONTINUALLY;
+
+  // The webrtc defaults the client used before there was a profile.
+  public static RtcProfile compatible() {
+    RtcProfile profile = new RtcProfile();
+    profile.bundlePolicy = PeerConnection.BundlePolicy.BALANCED;
+    profile.iceCandidatePoolSize = 0;
+    profile.tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.ENABLED;
+    profile.continualGatheringPolicy = PeerConnection.ContinualGatheringPolicy.GATHER_ONCE;
+    return profile;
+  }
+
+  public PeerConnection.RTCConfiguration toRtcConfiguration(PeerConnection.SdpSemantics sdpSemantics) {
+    List<PeerConnection.IceServer> servers = iceServers;
+    if (servers == null) {
+      servers = new ArrayList<>();
+      servers.add(PeerConnection.IceServer.builder(DEFAULT_STUN_SERVER).createIceServer());
+    }
+    PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(servers);
+    rtcConfig.iceTransportsType = PeerConnection.IceTransportsType.ALL;
+    rtcConfig.bundlePolicy = bundlePolicy;
+    rtcConfig.rtcpMuxPolicy = rtcpMuxPolicy;
+    rtcConfig.iceCandidatePoolSize = iceCandidatePoolSize;
+    rtcConfig.tcpCandidatePolicy = tcpCandidatePolicy;
+    rtcConfig.enableDtlsSrtp = true;
+    rtcConfig.continualGatheringPolicy = continualGatheringPolicy;
+    rtcConfig.sdpSemantics = sdpSemantics;
+    return rtcConfig;
+  }
+}
@@ -0,0 +1,23 @@
+package in.minewave.janusvideoroom.Janus.PeerConnectionParameters;
+
+// One simulcast encoding of the published video, identified to Janus by its rid.
+public class SimulcastLayer {
+  public final String rid;
+  public final double scaleResolutionDownBy;
+  public final int maxBitrateBps;
+
+  public SimulcastLayer(String rid, double scaleResolutionDownBy, int maxBitrateBps) {
+    this.rid = rid;
+    this.scaleResolutionDownBy = scaleResolutionDownBy;
+    this.maxBitrateBps = maxBitrateBps;
+  }
+
+  // Full, half and quarter resolution, highest first as Janus expects.
+  public static SimulcastLayer[] defaultLayers() {
+    return new SimulcastLayer[] {
+            new SimulcastLayer("h", 1, 900000),
+            new SimulcastLayer("m", 2, 300000),
+            new SimulcastLayer("l", 4, 100000)
+    };
+  }
+}
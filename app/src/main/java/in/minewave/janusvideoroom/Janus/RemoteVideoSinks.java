@@ -0,0 +1,12 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.VideoSink;
+
+/*
+ * Chooses where each remote feed's video is rendered. acquire() is called when a feed's track
+ * appears and release() when the feed goes away or its m-line is given to another feed.
+ */
+public interface RemoteVideoSinks {
+    VideoSink acquire(long feedId);
+    void release(long feedId, VideoSink sink);
+}
@@ -1,37 +1,40 @@
 package in.minewave.janusvideoroom.Janus;
 
-
 import android.util.Log;
 
 import org.webrtc.PeerConnection;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 
-import java.math.BigInteger;
-
 class SDPObserver implements SdpObserver {
     private static String TAG = "SDPObserver";
     private WebSocketChannel _webSocketChannel;
     private PeerConnection _peerConnection;
-    private BigInteger _handleId;
+    private long _handleId;
     private SessionDescription _localSdp;
+    // Set while our own description is being applied; renegotiations keep both descriptions set.
+    private volatile boolean _settingLocal;
     private JanusConnection.ConnectionType _type;
+    private SdpProcessor _sdpProcessor;
 
-    public SDPObserver(WebSocketChannel webSocketChannel, PeerConnection peerConnection, BigInteger handleId,
-                       JanusConnection.ConnectionType type) {
+    public SDPObserver(WebSocketChannel webSocketChannel, PeerConnection peerConnection, long handleId,
+                       JanusConnection.ConnectionType type, SdpProcessor sdpProcessor) {
         _webSocketChannel = webSocketChannel;
         _peerConnection = peerConnection;
         _handleId = handleId;
         _type = type;
+        _sdpProcessor = sdpProcessor;
     }
 
     @Override
     public void onCreateSuccess(final SessionDescription origSdp) {
         Log.e(TAG, "SDP on create success");
-        final SessionDescription sdp = new SessionDescription(origSdp.type, origSdp.description);
+        final SessionDescription sdp = new SessionDescription(origSdp.type,
+                _sdpProcessor.process(origSdp.description, origSdp.type == SessionDescription.Type.OFFER));
         _localSdp = sdp;
         if (_peerConnection != null) {
             Log.d(TAG, "Set local SDP from " + sdp.type);
+            _settingLocal = true;
             _peerConnection.setLocalDescription(this, sdp);
         }
     }
@@ -41,8 +44,10 @@ class SDPObserver implements SdpObserver {
         if (_peerConnection == null) {
             return;
         }
+        boolean local = _settingLocal;
+        _settingLocal = false;
         if (_type == JanusConnection.ConnectionType.LOCAL) {
-            if (_peerConnection.getRemoteDescription() == null) {
+            if (local) {
                 Log.d(TAG, "Local SDP set successfully");
                 Log.e(TAG, _localSdp.type.toString());
                 _webSocketChannel.publisherCreateOffer(_handleId, _localSdp);
@@ -50,7 +55,7 @@ class SDPObserver implements SdpObserver {
                 Log.d(TAG, "Remote SDP set successfully");
             }
         } else {
-            if (_peerConnection.getLocalDescription() != null) {
+            if (local) {
                 Log.d(TAG, "answer Local SDP set successfully");
                 Log.e(TAG, _localSdp.type.toString());
                 _webSocketChannel.subscriberCreateAnswer(_handleId, _localSdp);
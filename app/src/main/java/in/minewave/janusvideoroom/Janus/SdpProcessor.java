@@ -0,0 +1,251 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+/*
+ * Rewrites the SDP webrtc creates before it is set locally and sent to Janus:
+ *  - the configured audio and video codecs go first on their m-line, so they are what Janus
+ *    picks. Of several H264 payloads, constrained baseline with packetization-mode=1 leads, the
+ *    profile every hardware encoder handles;
+ *  - stripCodecs leaves offers with just that codec and its RTX, without the other codecs, RED,
+ *    ULPFEC and FlexFEC. Of H264 only the leading payload stays. Answers are only reordered;
+ *  - stripHeaderExtensions keeps only HEADER_EXTENSIONS;
+ *  - a non-zero audio start bitrate, in kbps, becomes maxaveragebitrate on the audio codec.
+ * A section that does not list the configured codec is left as it is, apart from its header
+ * extensions.
+ */
+class SdpProcessor {
+    private static final String[] HEADER_EXTENSIONS = {
+            "urn:ietf:params:rtp-hdrext:ssrc-audio-level",
+            "http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time",
+            "http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+            "urn:3gpp:video-orientation",
+            "urn:ietf:params:rtp-hdrext:sdes:mid",
+            "urn:ietf:params:rtp-hdrext:sdes:rtp-stream-id",
+            "urn:ietf:params:rtp-hdrext:sdes:repaired-rtp-stream-id",
+    };
+
+    private static final String RTPMAP = "a=rtpmap:";
+    private static final String FMTP = "a=fmtp:";
+    private static final String RTCP_FB = "a=rtcp-fb:";
+    private static final String EXTMAP = "a=extmap:";
+    private static final String MAX_AVERAGE_BITRATE = "maxaveragebitrate=";
+
+    private final String videoCodec;
+    private final String audioCodec;
+    private final int audioStartBitrateKbps;
+    private final boolean stripCodecs;
+    private final boolean stripHeaderExtensions;
+
+    // One m-line's payloads, as read from its rtpmap and fmtp lines.
+    private static class Section {
+        final String[] mLine;
+        final HashMap<String, String> codecs = new HashMap<>();
+        final HashMap<String, String> formats = new HashMap<>();
+
+        Section(String mLine) {
+            this.mLine = mLine.split(" ");
+        }
+
+        boolean isRtp() {
+            return mLine.length > 3 && (mLine[0].equals("m=audio") || mLine[0].equals("m=video"));
+        }
+    }
+
+    SdpProcessor(String videoCodec, String audioCodec, int audioStartBitrateKbps,
+                 boolean stripCodecs, boolean stripHeaderExtensions) {
+        this.videoCodec = videoCodec;
+        this.audioCodec = audioCodec;
+        this.audioStartBitrateKbps = audioStartBitrateKbps;
+        this.stripCodecs = stripCodecs;
+        this.stripHeaderExtensions = stripHeaderExtensions;
+    }
+
+    String process(String sdp, boolean offer) {
+        String[] lines = sdp.split("\r?\n");
+        StringBuilder out = new StringBuilder(sdp.length());
+        int start = 0;
+        while (start < lines.length && !lines[start].startsWith("m="))
+            start++;
+        for (int i = 0; i < start; i++)
+            appendLine(out, lines[i]);
+        while (start < lines.length) {
+            int end = start + 1;
+            while (end < lines.length && !lines[end].startsWith("m="))
+                end++;
+            processSection(lines, start, end, offer, out);
+            start = end;
+        }
+        return out.toString();
+    }
+
+    private void processSection(String[] lines, int start, int end, boolean offer, StringBuilder out) {
+        Section section = new Section(lines[start]);
+        if (!section.isRtp()) {
+            for (int i = start; i < end; i++)
+                appendLine(out, lines[i]);
+            return;
+        }
+        for (int i = start + 1; i < end; i++) {
+            String line = lines[i];
+            if (line.startsWith(RTPMAP)) {
+                int space = line.indexOf(' ');
+                int slash = line.indexOf('/', space);
+                if (space > 0)
+                    section.codecs.put(line.substring(RTPMAP.length(), space),
+                            line.substring(space + 1, slash < 0 ? line.length() : slash));
+            } else if (line.startsWith(FMTP)) {
+                int space = line.indexOf(' ');
+                if (space > 0)
+                    section.formats.put(line.substring(FMTP.length(), space), line.substring(space + 1));
+            }
+        }
+
+        boolean audio = section.mLine[0].equals("m=audio");
+        ArrayList<String> preferred = preferredPayloads(section, audio ? audioCodec : videoCodec);
+        HashSet<String> kept = null;
+        if (stripCodecs && offer && !preferred.isEmpty()) {
+            if (!audio && preferred.size() > 1 && "H264".equalsIgnoreCase(videoCodec))
+                preferred.subList(1, preferred.size()).clear();
+            kept = new HashSet<>(preferred);
+            for (int i = 3; i < section.mLine.length; i++) {
+                String payload = section.mLine[i];
+                if ("rtx".equalsIgnoreCase(section.codecs.get(payload))
+                        && kept.contains(parameter(section.formats.get(payload), "apt")))
+                    kept.add(payload);
+            }
+        }
+        HashSet<String> bitrate = audio && audioStartBitrateKbps > 0 ? new HashSet<>(preferred) : null;
+
+        appendMLine(out, section, preferred, kept);
+        for (int i = start + 1; i < end; i++) {
+            String line = lines[i];
+            String payload = payloadOf(line);
+            if (payload != null && kept != null && !kept.contains(payload))
+                continue;
+            if (stripHeaderExtensions && line.startsWith(EXTMAP) && !keepHeaderExtension(line))
+                continue;
+            if (bitrate != null && line.startsWith(FMTP) && bitrate.remove(payload)) {
+                appendLine(out, FMTP + payload + ' ' + withBitrate(section.formats.get(payload)));
+                continue;
+            }
+            appendLine(out, line);
+            // A codec without parameters gets an fmtp line of its own.
+            if (bitrate != null && line.startsWith(RTPMAP) && !section.formats.containsKey(payload)
+                    && bitrate.remove(payload))
+                appendLine(out, FMTP + payload + ' ' + MAX_AVERAGE_BITRATE + audioStartBitrateKbps * 1000);
+        }
+    }
+
+    // The section's payloads of the codec, the hardware-friendliest H264 first.
+    private static ArrayList<String> preferredPayloads(Section section, String codec) {
+        ArrayList<String> preferred = new ArrayList<>();
+        if (codec == null)
+            return preferred;
+        for (int i = 3; i < section.mLine.length; i++) {
+            if (codec.equalsIgnoreCase(section.codecs.get(section.mLine[i])))
+                preferred.add(section.mLine[i]);
+        }
+        if ("H264".equalsIgnoreCase(codec)) {
+            // A stable insertion sort; there are a handful at most.
+            for (int i = 1; i < preferred.size(); i++) {
+                String payload = preferred.get(i);
+                int rank = h264Rank(section.formats.get(payload));
+                int j = i;
+                while (j > 0 && h264Rank(section.formats.get(preferred.get(j - 1))) > rank) {
+                    preferred.set(j, preferred.get(j - 1));
+                    j--;
+                }
+                preferred.set(j, payload);
+            }
+        }
+        return preferred;
+    }
+
+    private static int h264Rank(String format) {
+        String profile = parameter(format, "profile-level-id");
+        profile = profile == null ? "" : profile.toLowerCase(Locale.US);
+        int rank = "1".equals(parameter(format, "packetization-mode")) ? 0 : 3;
+        if (profile.startsWith("42e0"))
+            return rank;
+        if (profile.startsWith("42"))
+            return rank + 1;
+        return rank + 2;
+    }
+
+    private static void appendMLine(StringBuilder out, Section section, ArrayList<String> preferred,
+                                    HashSet<String> kept) {
+        String[] mLine = section.mLine;
+        out.append(mLine[0]).append(' ').append(mLine[1]).append(' ').append(mLine[2]);
+        for (String payload : preferred)
+            out.append(' ').append(payload);
+        for (int i = 3; i < mLine.length; i++) {
+            if (!preferred.contains(mLine[i]) && (kept == null || kept.contains(mLine[i])))
+                out.append(' ').append(mLine[i]);
+        }
+        out.append("\r\n");
+    }
+
+    // The payload type an rtpmap, fmtp or rtcp-fb line is about; null for any other line.
+    private static String payloadOf(String line) {
+        int start;
+        if (line.startsWith(RTPMAP))
+            start = RTPMAP.length();
+        else if (line.startsWith(FMTP))
+            start = FMTP.length();
+        else if (line.startsWith(RTCP_FB))
+            start = RTCP_FB.length();
+        else
+            return null;
+        int space = line.indexOf(' ', start);
+        String payload = line.substring(start, space < 0 ? line.length() : space);
+        return payload.equals("*") ? null : payload;
+    }
+
+    private static boolean keepHeaderExtension(String line) {
+        int space = line.indexOf(' ');
+        if (space < 0)
+            return true;
+        int uriEnd = line.indexOf(' ', space + 1);
+        String uri = line.substring(space + 1, uriEnd < 0 ? line.length() : uriEnd);
+        for (String extension : HEADER_EXTENSIONS) {
+            if (extension.equals(uri))
+                return true;
+        }
+        return false;
+    }
+
+    private String withBitrate(String format) {
+        StringBuilder sb = new StringBuilder(format.length() + 32);
+        for (String parameter : format.split(";")) {
+            if (parameter.trim().startsWith(MAX_AVERAGE_BITRATE))
+                continue;
+            if (sb.length() > 0)
+                sb.append(';');
+            sb.append(parameter);
+        }
+        if (sb.length() > 0)
+            sb.append(';');
+        return sb.append(MAX_AVERAGE_BITRATE).append(audioStartBitrateKbps * 1000).toString();
+    }
+
+    // The value of one key=value parameter of an fmtp line; null when it is not there.
+    private static String parameter(String format, String key) {
+        if (format == null)
+            return null;
+        for (String parameter : format.split(";")) {
+            int eq = parameter.indexOf('=');
+            if (eq > 0 && parameter.substring(0, eq).trim().equalsIgnoreCase(key))
+                return parameter.substring(eq + 1).trim();
+        }
+        return null;
+    }
+
+    private static void appendLine(StringBuilder out, String line) {
+        if (!line.isEmpty())
+            out.append(line).append("\r\n");
+    }
+}
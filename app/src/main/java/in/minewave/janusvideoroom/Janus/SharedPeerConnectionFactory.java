@@ -0,0 +1,69 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.DefaultVideoEncoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.Logging;
+import org.webrtc.PeerConnectionFactory;
+
+/*
+ * One PeerConnectionFactory, with its audio device, codec factories and worker threads, for the
+ * whole process. Every client acquires it and releases it when done; the last release disposes
+ * it and the next acquire builds a new one. The native library is initialized once.
+ *
+ * The codec factories use the EGL context of the acquire that built the factory. Renderers
+ * sharing one root EglBase, as they should, are unaffected by who came first. H264 High
+ * profile is only offered when the device has a hardware encoder for it.
+ */
+public final class SharedPeerConnectionFactory {
+  private static final String TAG = "SharedPCFactory";
+
+  private static boolean initialized;
+  private static PeerConnectionFactory factory;
+  private static int references;
+
+  private SharedPeerConnectionFactory() {
+  }
+
+  public static synchronized PeerConnectionFactory acquire(Context context, EglBase.Context eglContext) {
+    if (!initialized) {
+      PeerConnectionFactory.initialize(PeerConnectionFactory.InitializationOptions
+              .builder(context.getApplicationContext())
+              .setInjectableLogger(((s, severity, s1) -> {
+                Log.d("internal", s1);
+              }), Logging.Severity.LS_INFO)
+              .createInitializationOptions());
+      initialized = true;
+    }
+    if (factory == null) {
+      Log.d(TAG, "Creating peer connection factory.");
+      CodecCapabilities capabilities = CodecProber.capabilities(context);
+      factory = PeerConnectionFactory
+              .builder()
+              .setVideoDecoderFactory(new DefaultVideoDecoderFactory(eglContext))
+              .setVideoEncoderFactory(new DefaultVideoEncoderFactory(eglContext, true,
+                      capabilities.hasHighProfileH264Encoder()))
+              .createPeerConnectionFactory();
+    }
+    references++;
+    return factory;
+  }
+
+  // Releasing a factory that was already disposed is ignored.
+  public static synchronized void release(PeerConnectionFactory released) {
+    if (released == null || released != factory || references == 0)
+      return;
+    if (--references == 0) {
+      Log.d(TAG, "Disposing peer connection factory.");
+      factory.dispose();
+      factory = null;
+    }
+  }
+
+  public static synchronized int references() {
+    return references;
+  }
+}
@@ -0,0 +1,185 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Threading model of the Janus signaling layer.
+ *
+ * Inbound frames are parsed and routed on a single signaling thread. Work that belongs to a
+ * handle (plugin events, remote jsep, detach) then runs on that handle's serial executor, so
+ * events of one handle keep their order while different handles proceed in parallel on a
+ * shared pool. Nothing here runs on the UI thread.
+ *
+ * A task that throws is logged and does not take its thread or, for repeating tasks that
+ * reschedule themselves in a finally, its schedule with it. Work handed over after shutdown
+ * is dropped.
+ */
+class SignalingDispatcher {
+    private static final String TAG = "SignalingDispatcher";
+    private static final int HANDLE_POOL_SIZE = 4;
+
+    private final ScheduledExecutorService signalingExecutor;
+    private final ExecutorService handlePool;
+    private final LongConcurrentMap<SerialExecutor> handleExecutors = new LongConcurrentMap<>();
+    private volatile Thread signalingThread;
+
+    SignalingDispatcher() {
+        final ThreadFactory signalingThreads = new NamedThreadFactory("JanusSignaling");
+        signalingExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = signalingThreads.newThread(r);
+            signalingThread = thread;
+            return thread;
+        });
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(HANDLE_POOL_SIZE, HANDLE_POOL_SIZE,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("JanusHandle"));
+        pool.allowCoreThreadTimeOut(true);
+        handlePool = pool;
+    }
+
+    void execute(Runnable runnable) {
+        try {
+            signalingExecutor.execute(guarded(runnable));
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Dropped a task after shutdown");
+        }
+    }
+
+    // null after shutdown.
+    ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+        try {
+            return signalingExecutor.schedule(guarded(runnable), delay, unit);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Dropped a scheduled task after shutdown");
+            return null;
+        }
+    }
+
+    /*
+     * Runs the task on the signaling thread and waits up to timeoutMs for it to finish. Runs it
+     * inline when called on the signaling thread itself, or after shutdown.
+     */
+    void runAndWait(Runnable runnable, long timeoutMs) {
+        if (Thread.currentThread() == signalingThread) {
+            guarded(runnable).run();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final Runnable task = guarded(runnable);
+        try {
+            signalingExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.run();
+            return;
+        }
+        try {
+            if (!done.await(timeoutMs, TimeUnit.MILLISECONDS))
+                Log.w(TAG, "Signaling thread busy for " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static Runnable guarded(final Runnable runnable) {
+        return () -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Signaling task failed", e);
+            }
+        };
+    }
+
+    Executor forHandle(long handleId) {
+        SerialExecutor executor = handleExecutors.get(handleId);
+        if (executor == null) {
+            SerialExecutor created = new SerialExecutor(handlePool);
+            executor = handleExecutors.putIfAbsent(handleId, created);
+            if (executor == null)
+                executor = created;
+        }
+        return executor;
+    }
+
+    void release(long handleId) {
+        handleExecutors.remove(handleId);
+    }
+
+    void shutdown() {
+        signalingExecutor.shutdownNow();
+        handlePool.shutdownNow();
+        handleExecutors.clear();
+    }
+
+    // Runs submitted tasks one at a time, in submission order, on the backing pool.
+    static class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor backing;
+        private Runnable active;
+
+        SerialExecutor(Executor backing) {
+            this.backing = backing;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable r) {
+            final Runnable task = guarded(r);
+            tasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null) {
+                try {
+                    backing.execute(active);
+                } catch (RejectedExecutionException e) {
+                    tasks.clear();
+                    active = null;
+                }
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
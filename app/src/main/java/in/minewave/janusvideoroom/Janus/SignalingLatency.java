@@ -0,0 +1,83 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.Locale;
+
+/*
+ * Round-trip latencies of completed Janus requests, one LatencyHistogram per request type and
+ * stage. A round trip is split at the moment the request reaches the websocket and the moment
+ * its reply is read back:
+ *   QUEUED    registered until sent, e.g. waiting in the outbox during a reconnect
+ *   SERVER    sent until the completing reply is read, network and Janus together
+ *   DISPATCH  read until the signaling thread processes it
+ *   TOTAL     registered until processed
+ * Failed and timed out requests are not recorded; JanusTransactions counts them.
+ */
+public class SignalingLatency {
+    public enum Stage {
+        QUEUED,
+        SERVER,
+        DISPATCH,
+        TOTAL
+    }
+
+    private static final JanusTransactions.RequestType[] TYPES = JanusTransactions.RequestType.values();
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[TYPES.length * STAGES.length];
+
+    public SignalingLatency() {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    void record(JanusTransactions.RequestType type, long queuedMs, long serverMs, long dispatchMs) {
+        histogram(type, Stage.QUEUED).record(queuedMs);
+        histogram(type, Stage.SERVER).record(serverMs);
+        histogram(type, Stage.DISPATCH).record(dispatchMs);
+        histogram(type, Stage.TOTAL).record(queuedMs + serverMs + dispatchMs);
+    }
+
+    public LatencyHistogram histogram(JanusTransactions.RequestType type, Stage stage) {
+        return histograms[type.ordinal() * STAGES.length + stage.ordinal()];
+    }
+
+    public LatencyHistogram.Snapshot snapshot(JanusTransactions.RequestType type, Stage stage) {
+        return histogram(type, stage).snapshot();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms)
+            histogram.reset();
+    }
+
+    /*
+     * Every request type with at least one sample, e.g.
+     * {"join":{"queued":{"count":3,"mean":0,"p50":0,"p90":1,"p99":1,"max":1},"server":{...},...},...}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append('{');
+        boolean firstType = true;
+        for (JanusTransactions.RequestType type : TYPES) {
+            if (histogram(type, Stage.TOTAL).count() == 0)
+                continue;
+            if (!firstType)
+                sb.append(',');
+            firstType = false;
+            sb.append('"').append(type.name().toLowerCase(Locale.US)).append("\":{");
+            for (Stage stage : STAGES) {
+                LatencyHistogram.Snapshot snapshot = snapshot(type, stage);
+                if (stage.ordinal() > 0)
+                    sb.append(',');
+                sb.append('"').append(stage.name().toLowerCase(Locale.US)).append("\":{\"count\":").append(snapshot.count)
+                        .append(",\"mean\":").append(snapshot.meanMs)
+                        .append(",\"p50\":").append(snapshot.p50Ms)
+                        .append(",\"p90\":").append(snapshot.p90Ms)
+                        .append(",\"p99\":").append(snapshot.p99Ms)
+                        .append(",\"max\":").append(snapshot.maxMs).append('}');
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
+    }
+}
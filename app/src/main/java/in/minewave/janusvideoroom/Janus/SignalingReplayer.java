@@ -0,0 +1,275 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.SessionDescription;
+
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
+
+/*
+ * Plays a SignalingTrace back through a WebSocketChannel that never connects. The channel runs
+ * its usual flow against the recorded server side: every inbound frame goes through onMessage
+ * and the dispatch path, and every request the channel sends is paired with the next recorded
+ * request of the same kind on the same handle, so the recorded reply comes back with the
+ * transaction id the channel is waiting for. Session, handle and feed ids all come from the
+ * recorded replies and need no mapping. params should match the ones recorded with, e.g.
+ * multistream and maxConcurrentSubscriptions.
+ *
+ * In real time inbound frames keep their recorded spacing; otherwise each goes in as soon as
+ * the request it answers has been sent. Jseps are answered with a placeholder SDP and nothing
+ * is trickled: recorded trickles are not paired and their acks are dropped as unknown.
+ */
+class SignalingReplayer {
+    private static final String PLACEHOLDER_SDP = "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n";
+
+    private final List<SignalingTrace.Frame> frames;
+    private final boolean realTime;
+    private final long pairTimeoutMs;
+    // Recorded requests waiting for the channel to send their like, by signature.
+    private final HashMap<String, ArrayDeque<Long>> unpaired = new HashMap<>();
+    private final HashSet<Long> recorded = new HashSet<>();
+    // Recorded transaction id to the one the channel used. Guarded by this.
+    private final HashMap<Long, Long> paired = new HashMap<>();
+    private int requestsMissed;
+    private int unknownRequests;
+    private volatile WebSocketChannel channel;
+
+    static class Result {
+        final int framesDispatched;
+        final int requestsPaired;
+        // Recorded replies whose request the channel did not send within pairTimeoutMs.
+        final int requestsMissed;
+        // Requests the channel sent that the recording has no counterpart for.
+        final int unknownRequests;
+        final long elapsedMs;
+        final SignalingLatency latency;
+
+        Result(int framesDispatched, int requestsPaired, int requestsMissed, int unknownRequests,
+               long elapsedMs, SignalingLatency latency) {
+            this.framesDispatched = framesDispatched;
+            this.requestsPaired = requestsPaired;
+            this.requestsMissed = requestsMissed;
+            this.unknownRequests = unknownRequests;
+            this.elapsedMs = elapsedMs;
+            this.latency = latency;
+        }
+
+        double framesPerSecond() {
+            return elapsedMs == 0 ? 0 : framesDispatched * 1000.0 / elapsedMs;
+        }
+    }
+
+    // The signature and transaction id of an outbound request.
+    private static class Request {
+        final String signature;
+        final long transaction;
+
+        Request(String signature, long transaction) {
+            this.signature = signature;
+            this.transaction = transaction;
+        }
+    }
+
+    SignalingReplayer(List<SignalingTrace.Frame> frames, boolean realTime, long pairTimeoutMs) {
+        this.frames = frames;
+        this.realTime = realTime;
+        this.pairTimeoutMs = pairTimeoutMs;
+        for (SignalingTrace.Frame frame : frames) {
+            if (!frame.outbound)
+                continue;
+            Request request = request(frame.text);
+            if (request == null)
+                continue;
+            ArrayDeque<Long> queue = unpaired.get(request.signature);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                unpaired.put(request.signature, queue);
+            }
+            queue.add(request.transaction);
+            recorded.add(request.transaction);
+        }
+    }
+
+    Result replay(PeerConnectionParameters params, long room) throws URISyntaxException, InterruptedException {
+        channel = WebSocketChannel.replayChannel(client, params, room, this::onSent);
+        try {
+            long startNs = System.nanoTime();
+            channel.onOpen(null);
+            int dispatched = 0;
+            for (SignalingTrace.Frame frame : frames) {
+                if (frame.outbound)
+                    continue;
+                if (realTime) {
+                    long waitMs = (startNs + frame.offsetUs * 1000 - System.nanoTime()) / 1000000;
+                    if (waitMs > 0)
+                        Thread.sleep(waitMs);
+                }
+                channel.onMessage(withPairedTransaction(frame.text));
+                dispatched++;
+            }
+            channel.awaitDispatched(pairTimeoutMs);
+            long elapsedMs = (System.nanoTime() - startNs) / 1000000;
+            synchronized (this) {
+                return new Result(dispatched, paired.size(), requestsMissed, unknownRequests,
+                        elapsedMs, channel.signalingLatency());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Outbound frames of the replayed channel, from whichever thread sent them.
+    private void onSent(String frame) {
+        Request request = request(frame);
+        if (request == null)
+            return;
+        synchronized (this) {
+            ArrayDeque<Long> queue = unpaired.get(request.signature);
+            Long transaction = queue == null ? null : queue.poll();
+            if (transaction == null) {
+                unknownRequests++;
+                return;
+            }
+            paired.put(transaction, request.transaction);
+            notifyAll();
+        }
+    }
+
+    // The frame with its recorded transaction id swapped for the channel's.
+    private String withPairedTransaction(String frame) throws InterruptedException {
+        JsonScanner scanner = new JsonScanner(frame);
+        int start = -1;
+        long transaction = 0;
+        try {
+            scanner.beginObject();
+            while (scanner.nextField()) {
+                if (scanner.isKey("transaction")) {
+                    scanner.peek();
+                    start = scanner.position();
+                    transaction = scanner.readTransaction();
+                    break;
+                }
+                scanner.skipValue();
+            }
+        } catch (IllegalArgumentException e) {
+            return frame;
+        }
+        if (transaction == 0 || !recorded.contains(transaction))
+            return frame;
+        Long live = awaitPaired(transaction);
+        if (live == null)
+            return frame;
+        return frame.substring(0, start) + '"' + TransactionIdGenerator.toString(live) + '"'
+                + frame.substring(scanner.position());
+    }
+
+    private synchronized Long awaitPaired(long transaction) throws InterruptedException {
+        long deadlineMs = JanusTransactions.SYSTEM_TIME.nowMs() + pairTimeoutMs;
+        Long live;
+        while ((live = paired.get(transaction)) == null) {
+            long remainingMs = deadlineMs - JanusTransactions.SYSTEM_TIME.nowMs();
+            if (remainingMs <= 0) {
+                requestsMissed++;
+                return null;
+            }
+            wait(remainingMs);
+        }
+        return live;
+    }
+
+    // null for trickles and for anything without a transaction id of ours.
+    private static Request request(String frame) {
+        String janus = null;
+        String body = null;
+        long transaction = 0;
+        long handleId = 0;
+        try {
+            JsonScanner scanner = new JsonScanner(frame);
+            scanner.beginObject();
+            while (scanner.nextField()) {
+                if (scanner.isKey("janus")) {
+                    janus = scanner.readString();
+                } else if (scanner.isKey("transaction")) {
+                    transaction = scanner.readTransaction();
+                } else if (scanner.isKey("handle_id")) {
+                    handleId = scanner.readLong();
+                } else if (scanner.isKey("body") && scanner.peek() == '{') {
+                    scanner.beginObject();
+                    while (scanner.nextField()) {
+                        if (scanner.isKey("request"))
+                            body = scanner.readString();
+                        else
+                            scanner.skipValue();
+                    }
+                } else {
+                    scanner.skipValue();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (transaction == 0 || janus == null || janus.equals("trickle"))
+            return null;
+        return new Request(janus + ' ' + body + ' ' + handleId, transaction);
+    }
+
+    // Stands in for PeerConnectionClient, answering every jsep right away.
+    private final JanusRTCInterface client = new JanusRTCInterface() {
+        @Override
+        public void onHandleAttached(long handleId, boolean publisher) {
+        }
+
+        @Override
+        public void onPublisherJoined(long handleId) {
+            channel.publisherCreateOffer(handleId,
+                    new SessionDescription(SessionDescription.Type.OFFER, PLACEHOLDER_SDP));
+        }
+
+        @Override
+        public void onPublisherRemoteJsep(long handleId, JanusEvent.Jsep jsep) {
+        }
+
+        @Override
+        public void subscriberHandleRemoteJsep(long handleId, JanusEvent.Jsep jsep) {
+            channel.subscriberCreateAnswer(handleId,
+                    new SessionDescription(SessionDescription.Type.ANSWER, PLACEHOLDER_SDP));
+        }
+
+        @Override
+        public void onLeaving(long handleId) {
+        }
+
+        @Override
+        public void onFeedDiscovered(long feedId) {
+        }
+
+        @Override
+        public void onFeedLeft(long feedId) {
+        }
+
+        @Override
+        public void onSubscriberStreams(long handleId, JanusEvent.Stream[] streams) {
+        }
+
+        @Override
+        public void onSubscribersSettled(int feeds, long elapsedMs) {
+        }
+
+        @Override
+        public void onReconnected(long elapsedMs, boolean sessionKept) {
+        }
+
+        @Override
+        public void onIceRestartNeeded(long handleId) {
+            onPublisherJoined(handleId);
+        }
+
+        @Override
+        public void onMediaRecovered(long handleId, long elapsedMs, int restarts) {
+        }
+    };
+}
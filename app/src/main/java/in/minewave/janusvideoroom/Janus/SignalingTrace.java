@@ -0,0 +1,133 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/*
+ * Every signaling frame of a channel, in the order the websocket saw them. The file is append
+ * only:
+ *   header   "JTRC", a version byte, and the wall clock at the start in ms for matching logs
+ *   record   a direction byte, the microseconds since the previous record and the frame
+ *            length as varints, then the frame in UTF-8
+ * Times come from System.nanoTime(), so they never go backwards. A record cut short by a crash
+ * ends the trace.
+ */
+final class SignalingTrace {
+    private static final int MAGIC = ('J' << 24) | ('T' << 16) | ('R' << 8) | 'C';
+    private static final int VERSION = 1;
+    private static final int INBOUND = 0;
+    private static final int OUTBOUND = 1;
+
+    static class Frame {
+        final boolean outbound;
+        // Since the first record.
+        final long offsetUs;
+        final String text;
+
+        Frame(boolean outbound, long offsetUs, String text) {
+            this.outbound = outbound;
+            this.offsetUs = offsetUs;
+            this.text = text;
+        }
+    }
+
+    static class Recorder implements Closeable {
+        private final DataOutputStream out;
+        private long lastNs = -1;
+
+        Recorder(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeLong(System.currentTimeMillis());
+        }
+
+        static Recorder open(File file) throws IOException {
+            return new Recorder(new FileOutputStream(file));
+        }
+
+        synchronized void record(boolean outbound, String frame) throws IOException {
+            long nowNs = System.nanoTime();
+            long deltaUs = lastNs < 0 ? 0 : Math.max(0, (nowNs - lastNs) / 1000);
+            lastNs = nowNs;
+            byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(outbound ? OUTBOUND : INBOUND);
+            writeVarint(out, deltaUs);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private SignalingTrace() {
+    }
+
+    static ArrayList<Frame> read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    static ArrayList<Frame> read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a signaling trace");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported signaling trace version " + version);
+        in.readLong();
+        ArrayList<Frame> frames = new ArrayList<>();
+        long offsetUs = 0;
+        try {
+            int direction;
+            while ((direction = in.read()) >= 0) {
+                offsetUs += readVarint(in);
+                byte[] bytes = new byte[(int) readVarint(in)];
+                in.readFully(bytes);
+                frames.add(new Frame(direction == OUTBOUND, offsetUs, new String(bytes, StandardCharsets.UTF_8)));
+            }
+        } catch (EOFException e) {
+            // Cut short while recording; keep what is complete.
+        }
+        return frames;
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
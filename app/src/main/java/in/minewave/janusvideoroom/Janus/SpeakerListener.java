@@ -0,0 +1,11 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * UI hooks for active speaker changes. Called on a background thread; post to the UI thread
+ * before touching views.
+ */
+public interface SpeakerListener {
+    void onDominantSpeakerChanged(long feedId);
+    // The feeds currently receiving video, most recent speaker first.
+    void onVideoFeedsChanged(long[] feedIds);
+}
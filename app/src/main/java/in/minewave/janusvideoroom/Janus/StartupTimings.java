@@ -0,0 +1,78 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Where the time to join a room went. Phases overlap: the factory and capture are warmed up
+ * while the websocket connects and Janus creates the session. Each phase keeps its first
+ * begin and end, so a reconnect later on does not overwrite the startup figures.
+ */
+public class StartupTimings {
+    public enum Phase {
+        FACTORY,
+        CAPTURE,
+        CONNECT,
+        SESSION,
+        ATTACH,
+        JOIN,
+        // From the start to the first offer, the whole startup.
+        READY
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final JanusTransactions.TimeSource time;
+    private final long originMs;
+    private final long[] beginMs = new long[PHASES.length];
+    private final long[] endMs = new long[PHASES.length];
+
+    StartupTimings() {
+        this(JanusTransactions.SYSTEM_TIME);
+    }
+
+    StartupTimings(JanusTransactions.TimeSource time) {
+        this.time = time;
+        originMs = time.nowMs();
+        for (int i = 0; i < PHASES.length; i++) {
+            beginMs[i] = -1;
+            endMs[i] = -1;
+        }
+        beginMs[Phase.READY.ordinal()] = originMs;
+    }
+
+    synchronized void begin(Phase phase) {
+        if (beginMs[phase.ordinal()] < 0)
+            beginMs[phase.ordinal()] = time.nowMs();
+    }
+
+    synchronized void end(Phase phase) {
+        int i = phase.ordinal();
+        if (beginMs[i] >= 0 && endMs[i] < 0)
+            endMs[i] = time.nowMs();
+    }
+
+    // -1 until the phase has ended.
+    public synchronized long durationMs(Phase phase) {
+        int i = phase.ordinal();
+        return endMs[i] < 0 ? -1 : endMs[i] - beginMs[i];
+    }
+
+    // When the phase began, relative to the start; -1 if it has not.
+    public synchronized long startOffsetMs(Phase phase) {
+        int i = phase.ordinal();
+        return beginMs[i] < 0 ? -1 : beginMs[i] - originMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder(160);
+        for (int i = 0; i < PHASES.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(PHASES[i].name().toLowerCase()).append(' ');
+            if (endMs[i] < 0)
+                sb.append('-');
+            else
+                sb.append(endMs[i] - beginMs[i]).append(" ms @+").append(beginMs[i] - originMs);
+        }
+        return sb.toString();
+    }
+}
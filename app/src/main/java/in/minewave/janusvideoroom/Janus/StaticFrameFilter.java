@@ -0,0 +1,90 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Sits between a screen capturer and the rest of the pipeline and drops frames that show the
+ * same screen as the last one passed on, so a static slide costs no encodes and no uplink. A
+ * frame is compared by a checksum of its luma scaled down to SAMPLE_WIDTH x SAMPLE_HEIGHT: on
+ * texture frames the scaling runs on the GPU and only the small sample is read back.
+ *
+ * Changes too small to survive the scaling, e.g. a blinking caret, are caught by the refresh:
+ * one frame at least every refreshIntervalMs is passed on regardless, which also lets the
+ * encoder recover from a lost keyframe.
+ */
+class StaticFrameFilter implements CapturerObserver {
+    private static final int SAMPLE_WIDTH = 128;
+    private static final int SAMPLE_HEIGHT = 72;
+
+    private final CapturerObserver delegate;
+    private final long refreshIntervalNs;
+    // Capture thread only.
+    private boolean passedAny;
+    private long lastChecksum;
+    private long lastPassedNs;
+    private long framesSuppressed;
+
+    StaticFrameFilter(CapturerObserver delegate, long refreshIntervalMs) {
+        this.delegate = delegate;
+        this.refreshIntervalNs = refreshIntervalMs * 1000000;
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        passedAny = false;
+        delegate.onCapturerStarted(success);
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        delegate.onCapturerStopped();
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        long checksum = checksum(frame);
+        long timestampNs = frame.getTimestampNs();
+        if (passedAny && checksum == lastChecksum && timestampNs - lastPassedNs < refreshIntervalNs) {
+            framesSuppressed++;
+            return;
+        }
+        passedAny = true;
+        lastChecksum = checksum;
+        lastPassedNs = timestampNs;
+        delegate.onFrameCaptured(frame);
+    }
+
+    long framesSuppressed() {
+        return framesSuppressed;
+    }
+
+    // FNV-1a over the frame size and the sampled luma.
+    private static long checksum(VideoFrame frame) {
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        hash = (hash ^ frame.getRotation()) * 0x100000001b3L;
+        VideoFrame.Buffer sample = buffer.cropAndScale(0, 0, width, height,
+                Math.min(width, SAMPLE_WIDTH), Math.min(height, SAMPLE_HEIGHT));
+        VideoFrame.I420Buffer i420 = sample.toI420();
+        sample.release();
+        try {
+            ByteBuffer y = i420.getDataY();
+            int stride = i420.getStrideY();
+            for (int row = 0; row < i420.getHeight(); row++) {
+                int offset = row * stride;
+                for (int column = 0; column < i420.getWidth(); column++)
+                    hash = (hash ^ (y.get(offset + column) & 0xff)) * 0x100000001b3L;
+            }
+        } finally {
+            i420.release();
+        }
+        return hash;
+    }
+}
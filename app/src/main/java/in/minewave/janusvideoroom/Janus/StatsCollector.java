@@ -0,0 +1,250 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.util.Log;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/*
+ * Polls getStats on every connection of a room and keeps a StatsHistory per connection, and per
+ * feed on the multistream subscription. The channel drives the rounds; each round hands the
+ * previous round's samples to the listener, then polls again. getStats is not free, so rounds
+ * only run while a listener or capture governor is set or collection was asked for up front.
+ */
+class StatsCollector {
+    private static final String TAG = "StatsCollector";
+    private static final StatsHistory[] NONE = new StatsHistory[0];
+    private static final String[] QUALITY_LIMITATIONS = {"cpu", "bandwidth", "other", "none"};
+
+    private final LongConcurrentMap<JanusConnection> connections;
+    private final WebSocketChannel channel;
+    private final int historySize;
+    private final boolean always;
+    private final LongConcurrentMap<StatsHistory[]> histories = new LongConcurrentMap<>();
+    private volatile StatsListener listener;
+    private volatile CaptureGovernor governor;
+
+    private final LongConcurrentMap.Visitor<JanusConnection> requestStats = (handleId, connection) -> {
+        if (connection.peerConnection != null)
+            connection.peerConnection.getStats(report -> collect(connection, report));
+    };
+    private final LongConcurrentMap.Visitor<StatsHistory[]> pruneClosed = (handleId, handleHistories) -> prune(handleId);
+
+    StatsCollector(LongConcurrentMap<JanusConnection> connections, WebSocketChannel channel,
+                   int historySize, boolean always) {
+        this.connections = connections;
+        this.channel = channel;
+        this.historySize = historySize;
+        this.always = always;
+    }
+
+    void setListener(StatsListener listener) {
+        this.listener = listener;
+    }
+
+    void setCaptureGovernor(CaptureGovernor governor) {
+        this.governor = governor;
+    }
+
+    boolean isActive() {
+        return always || listener != null || governor != null;
+    }
+
+    void publish() {
+        StatsListener current = listener;
+        CaptureGovernor currentGovernor = governor;
+        if (current == null && currentGovernor == null)
+            return;
+        ConnectionStats[] latest = snapshot();
+        // A throwing governor or listener must not cost the other its round, nor stop the rounds.
+        if (currentGovernor != null) {
+            try {
+                for (ConnectionStats stats : latest) {
+                    if (stats.publisher)
+                        currentGovernor.onPublisherStats(stats);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Capture governor failed", e);
+            }
+        }
+        if (current != null) {
+            try {
+                current.onStats(latest);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Stats listener failed", e);
+            }
+        }
+    }
+
+    void poll() {
+        histories.forEach(pruneClosed);
+        connections.forEach(requestStats);
+    }
+
+    // The newest sample of every connection and feed that has one.
+    ConnectionStats[] snapshot() {
+        ArrayList<ConnectionStats> latest = new ArrayList<>();
+        for (StatsHistory[] handleHistories : histories.values()) {
+            for (StatsHistory history : handleHistories) {
+                ConnectionStats stats = history.latest();
+                if (stats != null)
+                    latest.add(stats);
+            }
+        }
+        return latest.toArray(new ConnectionStats[0]);
+    }
+
+    // Oldest first; empty when nothing was collected for the connection and feed.
+    ConnectionStats[] history(long handleId, long feedId) {
+        StatsHistory[] handleHistories = histories.get(handleId);
+        if (handleHistories != null) {
+            for (StatsHistory history : handleHistories) {
+                if (history.feedId == feedId)
+                    return history.samples();
+            }
+        }
+        return new ConnectionStats[0];
+    }
+
+    private void prune(long handleId) {
+        if (!connections.containsKey(handleId))
+            histories.remove(handleId);
+    }
+
+    // Runs on the webrtc signaling thread, which all connections of the factory share.
+    private void collect(JanusConnection connection, RTCStatsReport report) {
+        long handleId = connection.handleId;
+        boolean publisher = connection.type == JanusConnection.ConnectionType.LOCAL;
+        // 0 on the multistream subscription, where each m-line names its own feed.
+        long handleFeed = channel.feedOfHandle(handleId);
+        StatsHistory[] handleHistories = histories.get(handleId);
+        if (handleHistories == null)
+            handleHistories = NONE;
+        for (StatsHistory history : handleHistories)
+            history.begin();
+
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        double rttSeconds = 0;
+        for (RTCStats stats : statsMap.values()) {
+            String type = stats.getType();
+            Map<String, Object> members = stats.getMembers();
+            if ("candidate-pair".equals(type)) {
+                if (Boolean.TRUE.equals(members.get("nominated")) && "succeeded".equals(members.get("state")))
+                    rttSeconds = decimal(members.get("currentRoundTripTime"));
+                continue;
+            }
+            boolean inbound = "inbound-rtp".equals(type);
+            boolean remoteInbound = "remote-inbound-rtp".equals(type);
+            if (!(publisher ? "outbound-rtp".equals(type) || remoteInbound : inbound))
+                continue;
+            RTCStats track = statsMap.get(members.get("trackId"));
+            long feedId = handleFeed;
+            if (feedId == 0 && !publisher && track != null) {
+                Object trackIdentifier = track.getMembers().get("trackIdentifier");
+                if (trackIdentifier instanceof String)
+                    feedId = connection.feedForTrack((String) trackIdentifier);
+            }
+            StatsHistory history = historyFor(handleId, feedId, publisher);
+            history.seen = true;
+            if (remoteInbound) {
+                // What the far end reports about our sending.
+                history.packetsLost += count(members.get("packetsLost"));
+                continue;
+            }
+            boolean video = "video".equals(members.get("kind")) || "video".equals(members.get("mediaType"));
+            long bytes = count(members.get(inbound ? "bytesReceived" : "bytesSent"));
+            if (video) {
+                history.videoBytes += bytes;
+                // Simulcast layers each count their frames; the busiest one stands for all.
+                history.frames = Math.max(history.frames,
+                        count(members.get(inbound ? "framesDecoded" : "framesEncoded")));
+                if (inbound && track != null)
+                    history.framesDropped += count(track.getMembers().get("framesDropped"));
+                if (!inbound) {
+                    // Encode time adds up over the layers; it is spread over the frames of the top one.
+                    history.encodeSeconds += decimal(members.get("totalEncodeTime"));
+                    history.qualityLimitation = worseLimitation(history.qualityLimitation,
+                            members.get("qualityLimitationReason"));
+                }
+            } else {
+                history.audioBytes += bytes;
+            }
+            if (inbound) {
+                history.packets += count(members.get("packetsReceived"));
+                history.packetsLost += count(members.get("packetsLost"));
+                history.jitterSeconds = Math.max(history.jitterSeconds, decimal(members.get("jitter")));
+            } else {
+                history.packets += count(members.get("packetsSent"));
+            }
+        }
+
+        handleHistories = histories.get(handleId);
+        if (handleHistories == null)
+            return;
+        long nowMs = (long) (report.getTimestampUs() / 1000);
+        int stale = 0;
+        for (StatsHistory history : handleHistories) {
+            if (!history.seen) {
+                stale++;
+                continue;
+            }
+            history.rttSeconds = rttSeconds;
+            history.end(nowMs);
+        }
+        if (stale > 0)
+            dropStale(handleId, handleHistories, stale);
+    }
+
+    private StatsHistory historyFor(long handleId, long feedId, boolean publisher) {
+        StatsHistory[] handleHistories = histories.get(handleId);
+        if (handleHistories == null)
+            handleHistories = NONE;
+        for (StatsHistory history : handleHistories) {
+            if (history.feedId == feedId)
+                return history;
+        }
+        StatsHistory history = new StatsHistory(handleId, feedId, publisher, historySize);
+        StatsHistory[] grown = new StatsHistory[handleHistories.length + 1];
+        System.arraycopy(handleHistories, 0, grown, 0, handleHistories.length);
+        grown[handleHistories.length] = history;
+        histories.put(handleId, grown);
+        return history;
+    }
+
+    // Feeds that left the multistream subscription no longer show up in its reports.
+    private void dropStale(long handleId, StatsHistory[] handleHistories, int stale) {
+        StatsHistory[] kept = new StatsHistory[handleHistories.length - stale];
+        int n = 0;
+        for (StatsHistory history : handleHistories) {
+            if (history.seen)
+                kept[n++] = history;
+        }
+        if (kept.length == 0)
+            histories.remove(handleId);
+        else
+            histories.put(handleId, kept);
+    }
+
+    // Counters come as Long, Integer or BigInteger depending on their width.
+    private static long count(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    // Of two quality limitations the one to act on: cpu, then bandwidth, then other.
+    private static String worseLimitation(String current, Object reason) {
+        if (!(reason instanceof String))
+            return current;
+        for (String limitation : QUALITY_LIMITATIONS) {
+            if (limitation.equals(current) || limitation.equals(reason))
+                return limitation;
+        }
+        return current;
+    }
+
+    private static double decimal(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
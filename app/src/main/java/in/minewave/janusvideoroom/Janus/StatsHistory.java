@@ -0,0 +1,166 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * The last samples of one connection, or of one feed on the multistream connection, in a ring
+ * of preallocated arrays. A stats round adds up the cumulative counters of the report, then
+ * end() turns them into rates against the previous round. A counter going backwards, as after
+ * an ICE restart with new SSRCs, starts over from a new baseline instead of producing a sample.
+ *
+ * Rounds run on the webrtc signaling thread; reads may come from any thread.
+ */
+class StatsHistory {
+    final long handleId;
+    final long feedId;
+    final boolean publisher;
+
+    // Counters of the round in progress.
+    long audioBytes;
+    long videoBytes;
+    long packets;
+    long packetsLost;
+    long frames;
+    long framesDropped;
+    double encodeSeconds;
+    String qualityLimitation;
+    double jitterSeconds;
+    double rttSeconds;
+    boolean seen;
+
+    // Counters of the previous round.
+    private boolean baseline;
+    private long lastMs;
+    private long lastAudioBytes;
+    private long lastVideoBytes;
+    private long lastPackets;
+    private long lastPacketsLost;
+    private long lastFrames;
+    private long lastFramesDropped;
+    private double lastEncodeSeconds;
+
+    private final long[] timestampMs;
+    private final long[] audioBitrateBps;
+    private final long[] videoBitrateBps;
+    private final long[] intervalLost;
+    private final double[] lossRate;
+    private final double[] rttMs;
+    private final double[] jitterMs;
+    private final double[] framesPerSecond;
+    private final long[] framesDecoded;
+    private final long[] intervalDropped;
+    private final double[] encodeMsPerFrame;
+    private final String[] qualityLimitations;
+    private int next;
+    private int size;
+
+    StatsHistory(long handleId, long feedId, boolean publisher, int capacity) {
+        this.handleId = handleId;
+        this.feedId = feedId;
+        this.publisher = publisher;
+        capacity = Math.max(1, capacity);
+        timestampMs = new long[capacity];
+        audioBitrateBps = new long[capacity];
+        videoBitrateBps = new long[capacity];
+        intervalLost = new long[capacity];
+        lossRate = new double[capacity];
+        rttMs = new double[capacity];
+        jitterMs = new double[capacity];
+        framesPerSecond = new double[capacity];
+        framesDecoded = new long[capacity];
+        intervalDropped = new long[capacity];
+        encodeMsPerFrame = new double[capacity];
+        qualityLimitations = new String[capacity];
+    }
+
+    void begin() {
+        audioBytes = 0;
+        videoBytes = 0;
+        packets = 0;
+        packetsLost = 0;
+        frames = 0;
+        framesDropped = 0;
+        encodeSeconds = 0;
+        qualityLimitation = "";
+        jitterSeconds = 0;
+        rttSeconds = 0;
+        seen = false;
+    }
+
+    synchronized void end(long nowMs) {
+        if (!seen)
+            return;
+        long elapsedMs = nowMs - lastMs;
+        boolean reset = audioBytes < lastAudioBytes || videoBytes < lastVideoBytes || packets < lastPackets
+                || packetsLost < lastPacketsLost || frames < lastFrames || framesDropped < lastFramesDropped;
+        if (baseline && !reset && elapsedMs > 0) {
+            int i = next;
+            long lost = packetsLost - lastPacketsLost;
+            long expected = packets - lastPackets + lost;
+            timestampMs[i] = nowMs;
+            audioBitrateBps[i] = (audioBytes - lastAudioBytes) * 8000 / elapsedMs;
+            videoBitrateBps[i] = (videoBytes - lastVideoBytes) * 8000 / elapsedMs;
+            intervalLost[i] = lost;
+            lossRate[i] = expected > 0 ? (double) lost / expected : 0;
+            rttMs[i] = rttSeconds * 1000;
+            jitterMs[i] = jitterSeconds * 1000;
+            framesPerSecond[i] = (frames - lastFrames) * 1000.0 / elapsedMs;
+            framesDecoded[i] = frames;
+            intervalDropped[i] = framesDropped - lastFramesDropped;
+            // What encoding one captured frame cost, summed over its simulcast layers.
+            long encoded = frames - lastFrames;
+            encodeMsPerFrame[i] = encoded > 0 ? (encodeSeconds - lastEncodeSeconds) * 1000 / encoded : 0;
+            qualityLimitations[i] = qualityLimitation;
+            next = (i + 1) % timestampMs.length;
+            if (size < timestampMs.length)
+                size++;
+        }
+        baseline = true;
+        lastMs = nowMs;
+        lastAudioBytes = audioBytes;
+        lastVideoBytes = videoBytes;
+        lastPackets = packets;
+        lastPacketsLost = packetsLost;
+        lastFrames = frames;
+        lastFramesDropped = framesDropped;
+        lastEncodeSeconds = encodeSeconds;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The newest sample, or null before the second round.
+    synchronized ConnectionStats latest() {
+        if (size == 0)
+            return null;
+        return sample((next - 1 + timestampMs.length) % timestampMs.length);
+    }
+
+    // Oldest first.
+    synchronized ConnectionStats[] samples() {
+        ConnectionStats[] samples = new ConnectionStats[size];
+        int first = (next - size + timestampMs.length) % timestampMs.length;
+        for (int i = 0; i < size; i++)
+            samples[i] = sample((first + i) % timestampMs.length);
+        return samples;
+    }
+
+    private ConnectionStats sample(int i) {
+        ConnectionStats stats = new ConnectionStats();
+        stats.handleId = handleId;
+        stats.feedId = feedId;
+        stats.publisher = publisher;
+        stats.timestampMs = timestampMs[i];
+        stats.audioBitrateBps = audioBitrateBps[i];
+        stats.videoBitrateBps = videoBitrateBps[i];
+        stats.packetsLost = intervalLost[i];
+        stats.lossRate = lossRate[i];
+        stats.rttMs = rttMs[i];
+        stats.jitterMs = jitterMs[i];
+        stats.framesPerSecond = framesPerSecond[i];
+        stats.framesDecoded = framesDecoded[i];
+        stats.framesDropped = intervalDropped[i];
+        stats.encodeMsPerFrame = encodeMsPerFrame[i];
+        stats.qualityLimitation = qualityLimitations[i];
+        return stats;
+    }
+}
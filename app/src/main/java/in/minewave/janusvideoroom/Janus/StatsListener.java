@@ -0,0 +1,9 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Receives the latest sample of every connection after each stats round. Called on a background
+ * thread; post to the UI thread before touching views.
+ */
+public interface StatsListener {
+    void onStats(ConnectionStats[] stats);
+}
@@ -0,0 +1,196 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayDeque;
+
+interface SubscriberSteps {
+    // Sends the attach; the result comes back through onAttached or onAttachFailed.
+    void attach(SubscriberPipeline.Feed feed);
+    // Sends the join; the chain ends with onStarted or onFailed.
+    void join(JanusHandle handle);
+    void detach(JanusHandle handle);
+    void onSubscribed(long feedId);
+    void onSettled(int feeds, long elapsedMs);
+}
+
+/*
+ * Subscribes to remote feeds with a bounded number of negotiations in flight. A negotiation
+ * runs from the join to the "started" reply for the subscriber's answer. Up to the same number
+ * of feeds are attached ahead of time, so a freed slot goes straight to a join. Every feed is
+ * tracked from the moment it is announced, which makes a feed repeated in a later publishers
+ * event a no-op.
+ *
+ * Not thread safe: WebSocketChannel calls it from the signaling thread only.
+ */
+class SubscriberPipeline {
+    enum State {
+        QUEUED,
+        ATTACHING,
+        ATTACHED,
+        NEGOTIATING,
+        SUBSCRIBED
+    }
+
+    static class Feed {
+        final long feedId;
+        final String display;
+        State state = State.QUEUED;
+        JanusHandle handle;
+
+        Feed(long feedId, String display) {
+            this.feedId = feedId;
+            this.display = display;
+        }
+    }
+
+    private final LongConcurrentMap<Feed> feeds = new LongConcurrentMap<>();
+    private final ArrayDeque<Feed> queued = new ArrayDeque<>();
+    private final ArrayDeque<Feed> attached = new ArrayDeque<>();
+    private final SubscriberSteps steps;
+    private final JanusTransactions.TimeSource time;
+    private final int maxInFlight;
+    private int attaching;
+    private int negotiating;
+    private int settledCount;
+    private long burstStartMs = -1;
+    private int burstFeeds;
+
+    SubscriberPipeline(SubscriberSteps steps, JanusTransactions.TimeSource time, int maxInFlight) {
+        this.steps = steps;
+        this.time = time;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    // Returns false when the feed is already known.
+    boolean offer(long feedId, String display) {
+        if (feeds.containsKey(feedId))
+            return false;
+        Feed feed = new Feed(feedId, display);
+        feeds.put(feedId, feed);
+        if (burstStartMs < 0) {
+            burstStartMs = time.nowMs();
+            burstFeeds = 0;
+        }
+        burstFeeds++;
+        queued.add(feed);
+        pump();
+        return true;
+    }
+
+    void onAttached(Feed feed, JanusHandle handle) {
+        attaching--;
+        if (feeds.get(feed.feedId) != feed) {
+            // The feed left while its attach was in flight.
+            steps.detach(handle);
+        } else {
+            feed.handle = handle;
+            feed.state = State.ATTACHED;
+            attached.add(feed);
+        }
+        pump();
+    }
+
+    void onAttachFailed(Feed feed) {
+        attaching--;
+        feeds.remove(feed.feedId, feed);
+        pump();
+    }
+
+    void onStarted(long feedId) {
+        Feed feed = feeds.get(feedId);
+        if (feed == null || feed.state != State.NEGOTIATING)
+            return;
+        negotiating--;
+        feed.state = State.SUBSCRIBED;
+        settledCount++;
+        steps.onSubscribed(feedId);
+        pump();
+    }
+
+    // A join or start failed. The feed is forgotten so that a later publishers event can try again.
+    void onFailed(long feedId) {
+        Feed feed = feeds.remove(feedId);
+        if (feed == null)
+            return;
+        release(feed);
+        if (feed.handle != null)
+            steps.detach(feed.handle);
+        pump();
+    }
+
+    // Returns the feed's handle when it has one, so the caller can detach it.
+    JanusHandle remove(long feedId) {
+        Feed feed = feeds.remove(feedId);
+        if (feed == null)
+            return null;
+        release(feed);
+        pump();
+        return feed.handle;
+    }
+
+    JanusHandle handleFor(long feedId) {
+        Feed feed = feeds.get(feedId);
+        return feed == null ? null : feed.handle;
+    }
+
+    State stateOf(long feedId) {
+        Feed feed = feeds.get(feedId);
+        return feed == null ? null : feed.state;
+    }
+
+    int inFlight() {
+        return negotiating;
+    }
+
+    int subscribedCount() {
+        return settledCount;
+    }
+
+    void clear() {
+        feeds.clear();
+        queued.clear();
+        attached.clear();
+        attaching = 0;
+        negotiating = 0;
+        burstStartMs = -1;
+    }
+
+    private void release(Feed feed) {
+        switch (feed.state) {
+            case QUEUED:
+                queued.remove(feed);
+                break;
+            case ATTACHING:
+                // Still counted until its reply arrives.
+                break;
+            case ATTACHED:
+                attached.remove(feed);
+                break;
+            case NEGOTIATING:
+                negotiating--;
+                break;
+            case SUBSCRIBED:
+                settledCount--;
+                break;
+        }
+    }
+
+    private void pump() {
+        while (negotiating < maxInFlight && !attached.isEmpty()) {
+            Feed feed = attached.poll();
+            feed.state = State.NEGOTIATING;
+            negotiating++;
+            steps.join(feed.handle);
+        }
+        while (attaching + attached.size() < maxInFlight && !queued.isEmpty()) {
+            Feed feed = queued.poll();
+            feed.state = State.ATTACHING;
+            attaching++;
+            steps.attach(feed);
+        }
+        if (burstStartMs >= 0 && queued.isEmpty() && attached.isEmpty() && attaching == 0 && negotiating == 0) {
+            long elapsed = time.nowMs() - burstStartMs;
+            burstStartMs = -1;
+            steps.onSettled(burstFeeds, elapsed);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.util.ArrayList;
+
+interface SubstreamSender {
+    void configure(long feedId, int substream, int temporal, boolean video);
+}
+
+/*
+ * Picks the simulcast substream of each remote feed from the size it is drawn at: the smallest
+ * layer that still covers the on-screen height, the lowest layer (or no video at all) for a
+ * feed drawn nowhere. Independently, video can be switched off for a feed, e.g. by the last-N
+ * manager. A choice is only sent when it changes, and only once the feed is subscribed; until
+ * then the latest one is kept and sent on subscription.
+ *
+ * Layer heights are estimated from referenceHeight and the scale factors of the remote
+ * encodings, lowest layer first as Janus numbers substreams.
+ *
+ * With a limit on HD decodes, only that many feeds get a layer of 720 lines or more, the ones
+ * drawn largest; the others get the largest layer below. A feed that shrinks or leaves hands
+ * its HD layer to the next in size.
+ */
+class SubstreamController implements VideoGate {
+    static final int TOP_TEMPORAL = 2;
+    // Allow a layer to be stretched this much before asking for the next one up.
+    private static final double UPSCALE_TOLERANCE = 1.15;
+
+    private final SubstreamSender sender;
+    private final int[] layerHeights;
+    private final boolean pauseHidden;
+    private final boolean adaptive;
+    private final LongConcurrentMap<Choice> feeds = new LongConcurrentMap<>();
+    private final int firstHdLayer;
+    private int maxHdFeeds;
+
+    private static class Choice {
+        // -1 until a render size is known; Janus keeps its own choice meanwhile.
+        int substream = -1;
+        int temporal;
+        // The layer the render size asks for, before the HD limit.
+        int wanted = -1;
+        int height;
+        boolean visible = true;
+        boolean videoAllowed = true;
+        boolean subscribed;
+        int sentSubstream = -1;
+        int sentTemporal;
+        boolean sentVideo = true;
+
+        boolean video(boolean pauseHidden) {
+            return videoAllowed && (visible || !pauseHidden);
+        }
+    }
+
+    // With adaptive false render sizes are ignored and only the video switch is applied.
+    SubstreamController(SubstreamSender sender, boolean adaptive, int referenceHeight,
+                        double[] scalesLowestFirst, boolean pauseHidden) {
+        this.sender = sender;
+        this.adaptive = adaptive;
+        this.pauseHidden = pauseHidden;
+        layerHeights = new int[scalesLowestFirst.length];
+        for (int i = 0; i < layerHeights.length; i++)
+            layerHeights[i] = (int) (referenceHeight / scalesLowestFirst[i]);
+        int first = 0;
+        while (first < layerHeights.length && layerHeights[first] < CodecCapabilities.HD_HEIGHT)
+            first++;
+        firstHdLayer = first;
+    }
+
+    // 0 or less does not limit HD layers.
+    synchronized void setMaxHdFeeds(int max) {
+        maxHdFeeds = max;
+        assignLayers();
+    }
+
+    // A height of 0 means the feed is not drawn anywhere.
+    synchronized void onRenderSize(long feedId, int width, int height) {
+        if (!adaptive)
+            return;
+        Choice choice = choiceFor(feedId);
+        if (height <= 0 || width <= 0) {
+            choice.wanted = 0;
+            choice.height = 0;
+            choice.temporal = 0;
+            choice.visible = false;
+        } else {
+            choice.wanted = layerFor(height);
+            choice.height = height;
+            choice.temporal = TOP_TEMPORAL;
+            choice.visible = true;
+        }
+        if (maxHdFeeds > 0 && (choice.wanted >= firstHdLayer || choice.substream >= firstHdLayer)) {
+            assignLayers();
+        } else {
+            choice.substream = choice.wanted;
+            send(feedId, choice);
+        }
+    }
+
+    @Override
+    public synchronized void setVideoAllowed(long feedId, boolean allowed) {
+        Choice choice = choiceFor(feedId);
+        choice.videoAllowed = allowed;
+        if (maxHdFeeds > 0 && choice.wanted >= firstHdLayer)
+            assignLayers();
+        else
+            send(feedId, choice);
+    }
+
+    synchronized void onSubscribed(long feedId) {
+        Choice choice = choiceFor(feedId);
+        choice.subscribed = true;
+        send(feedId, choice);
+    }
+
+    synchronized void remove(long feedId) {
+        Choice choice = feeds.remove(feedId);
+        if (maxHdFeeds > 0 && choice != null && choice.substream >= firstHdLayer)
+            assignLayers();
+    }
+
+    synchronized void clear() {
+        feeds.clear();
+    }
+
+    int layerFor(int height) {
+        for (int i = 0; i < layerHeights.length; i++) {
+            if (layerHeights[i] * UPSCALE_TOLERANCE >= height)
+                return i;
+        }
+        return layerHeights.length - 1;
+    }
+
+    private Choice choiceFor(long feedId) {
+        Choice choice = feeds.get(feedId);
+        if (choice == null) {
+            choice = new Choice();
+            feeds.put(feedId, choice);
+        }
+        return choice;
+    }
+
+    // Hands out the HD layers, largest feed first, and sends whatever changed.
+    private void assignLayers() {
+        final ArrayList<Long> ids = new ArrayList<>();
+        final ArrayList<Choice> choices = new ArrayList<>();
+        feeds.forEach((feedId, choice) -> {
+            int i = 0;
+            while (i < choices.size() && choices.get(i).height >= choice.height)
+                i++;
+            ids.add(i, feedId);
+            choices.add(i, choice);
+        });
+        int hd = 0;
+        for (int i = 0; i < choices.size(); i++) {
+            Choice choice = choices.get(i);
+            choice.substream = choice.wanted;
+            if (choice.wanted >= firstHdLayer && choice.video(pauseHidden)) {
+                if (maxHdFeeds > 0 && hd >= maxHdFeeds && firstHdLayer > 0)
+                    choice.substream = firstHdLayer - 1;
+                else
+                    hd++;
+            }
+        }
+        // Feeds stepping down go first, so HD decodes never exceed the limit in between.
+        for (int i = 0; i < choices.size(); i++) {
+            if (choices.get(i).substream < choices.get(i).sentSubstream)
+                send(ids.get(i), choices.get(i));
+        }
+        for (int i = 0; i < choices.size(); i++)
+            send(ids.get(i), choices.get(i));
+    }
+
+    private void send(long feedId, Choice choice) {
+        boolean video = choice.video(pauseHidden);
+        if (!choice.subscribed)
+            return;
+        if (choice.substream == choice.sentSubstream && choice.temporal == choice.sentTemporal
+                && video == choice.sentVideo)
+            return;
+        choice.sentSubstream = choice.substream;
+        choice.sentTemporal = choice.temporal;
+        choice.sentVideo = video;
+        sender.configure(feedId, choice.substream, choice.temporal, video);
+    }
+}
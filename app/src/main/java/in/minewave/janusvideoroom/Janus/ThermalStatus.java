@@ -0,0 +1,43 @@
+package in.minewave.janusvideoroom.Janus;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/*
+ * PowerManager.getCurrentThermalStatus, which arrived in Android 10. The app compiles against
+ * 28, so it is looked up by reflection; older devices and failures read as -1.
+ */
+class ThermalStatus implements CaptureGovernor.ThermalSource {
+    private static final String TAG = "ThermalStatus";
+
+    private final PowerManager powerManager;
+    private final Method getCurrentThermalStatus;
+
+    ThermalStatus(Context context) {
+        powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        Method method = null;
+        if (powerManager != null) {
+            try {
+                method = PowerManager.class.getMethod("getCurrentThermalStatus");
+            } catch (NoSuchMethodException e) {
+                method = null;
+            }
+        }
+        getCurrentThermalStatus = method;
+    }
+
+    @Override
+    public int thermalStatus() {
+        if (getCurrentThermalStatus == null)
+            return -1;
+        try {
+            return (Integer) getCurrentThermalStatus.invoke(powerManager);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "Thermal status not read: " + e.getMessage());
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package in.minewave.janusvideoroom.Janus;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Lock-free source of Janus transaction ids. An id is a long: a counter scrambled by an
+ * invertible multiply-xor mix and a per-generator random key, so ids are unique for the life
+ * of the generator, look random on the wire and differ between app runs. On the wire they are
+ * written as ID_LENGTH base-62 characters straight into the encoder's buffer, and the decoder
+ * parses them back without going through a String.
+ */
+public class TransactionIdGenerator {
+    public static final int ID_LENGTH = 11;
+    private static final char[] DIGITS =
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final AtomicLong counter = new AtomicLong();
+    private final long key;
+
+    public TransactionIdGenerator() {
+        this(new SecureRandom().nextLong());
+    }
+
+    public TransactionIdGenerator(long key) {
+        this.key = key;
+    }
+
+    /* Never returns 0, which the registries reserve. */
+    public long next() {
+        long id;
+        do {
+            id = scramble(counter.incrementAndGet()) ^ key;
+        } while (id == 0);
+        return id;
+    }
+
+    static void append(StringBuilder sb, long id) {
+        int start = sb.length();
+        sb.setLength(start + ID_LENGTH);
+        for (int i = start + ID_LENGTH - 1; i >= start; i--) {
+            long quotient = (id >>> 1) / 31;
+            sb.setCharAt(i, DIGITS[(int) (id - quotient * 62)]);
+            id = quotient;
+        }
+    }
+
+    /* Returns 0 when the text is not an id this class wrote. */
+    static long parse(CharSequence text, int start, int end) {
+        if (end - start != ID_LENGTH)
+            return 0;
+        long id = 0;
+        for (int i = start; i < end; i++) {
+            int digit = digit(text.charAt(i));
+            if (digit < 0)
+                return 0;
+            id = id * 62 + digit;
+        }
+        return id;
+    }
+
+    static String toString(long id) {
+        StringBuilder sb = new StringBuilder(ID_LENGTH);
+        append(sb, id);
+        return sb.toString();
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'z')
+            return c - 'a' + 10;
+        if (c >= 'A' && c <= 'Z')
+            return c - 'A' + 36;
+        return -1;
+    }
+
+    // Bijective on 64 bits (odd multipliers and xor-shifts invert), so distinct counters never collide.
+    private static long scramble(long x) {
+        x ^= x >>> 31;
+        x *= 0x7fb5d329728ea185L;
+        x ^= x >>> 27;
+        x *= 0x81dadef4bc2dd44dL;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,137 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.IceCandidate;
+
+import java.util.concurrent.TimeUnit;
+
+interface TrickleSender {
+    // False once the handle is detached or its session is gone.
+    boolean isAttached(long handleId);
+    void sendCandidate(long handleId, String candidate, String sdpMid, int sdpMLineIndex);
+    void sendCandidates(long handleId, String[] candidates, String[] sdpMids, int[] sdpMLineIndexes,
+                        int count, boolean completed);
+    void sendCompleted(long handleId);
+}
+
+/*
+ * Coalesces the ICE candidates a handle gathers within a short window into a single Janus
+ * trickle request carrying a "candidates" array. End-of-candidates flushes right away. A
+ * window of 0, or a batch holding a single candidate, goes out as a plain single-candidate
+ * trickle.
+ *
+ * Continual gathering keeps producing candidates until the connection is disposed, which can be
+ * after the handle is released; those are dropped, and a batch that raced a release is dropped
+ * with its entry when its flush finds the handle gone.
+ */
+class TrickleBatcher {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final LongConcurrentMap<Pending> pending = new LongConcurrentMap<>();
+    private final SignalingDispatcher dispatcher;
+    private final TrickleSender sender;
+    private final int windowMs;
+
+    TrickleBatcher(SignalingDispatcher dispatcher, TrickleSender sender, int windowMs) {
+        this.dispatcher = dispatcher;
+        this.sender = sender;
+        this.windowMs = windowMs;
+    }
+
+    void add(long handleId, IceCandidate candidate) {
+        if (!sender.isAttached(handleId))
+            return;
+        if (windowMs <= 0) {
+            sender.sendCandidate(handleId, candidate.sdp, candidate.sdpMid, candidate.sdpMLineIndex);
+            return;
+        }
+        Pending batch = pendingFor(handleId);
+        boolean first;
+        synchronized (batch) {
+            first = batch.count == 0;
+            batch.add(candidate);
+        }
+        if (first)
+            dispatcher.schedule(() -> flush(handleId, false), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    void complete(long handleId) {
+        if (sender.isAttached(handleId))
+            flush(handleId, true);
+    }
+
+    void release(long handleId) {
+        pending.remove(handleId);
+    }
+
+    private void flush(long handleId, boolean completed) {
+        if (!sender.isAttached(handleId)) {
+            pending.remove(handleId);
+            return;
+        }
+        Pending batch = pending.get(handleId);
+        if (batch == null) {
+            if (completed)
+                sender.sendCompleted(handleId);
+            return;
+        }
+        synchronized (batch) {
+            if (batch.count == 0 && !completed)
+                return;
+            if (batch.count == 0) {
+                sender.sendCompleted(handleId);
+            } else if (batch.count == 1 && !completed) {
+                sender.sendCandidate(handleId, batch.candidates[0], batch.sdpMids[0], batch.sdpMLineIndexes[0]);
+            } else {
+                sender.sendCandidates(handleId, batch.candidates, batch.sdpMids, batch.sdpMLineIndexes,
+                        batch.count, completed);
+            }
+            batch.clear();
+        }
+    }
+
+    private Pending pendingFor(long handleId) {
+        Pending batch = pending.get(handleId);
+        if (batch == null) {
+            Pending created = new Pending();
+            batch = pending.putIfAbsent(handleId, created);
+            if (batch == null)
+                batch = created;
+        }
+        return batch;
+    }
+
+    // Reused per handle; the arrays only grow.
+    private static class Pending {
+        String[] candidates = new String[INITIAL_CAPACITY];
+        String[] sdpMids = new String[INITIAL_CAPACITY];
+        int[] sdpMLineIndexes = new int[INITIAL_CAPACITY];
+        int count;
+
+        void add(IceCandidate candidate) {
+            if (count == candidates.length) {
+                int capacity = count * 2;
+                String[] grownCandidates = new String[capacity];
+                String[] grownMids = new String[capacity];
+                int[] grownIndexes = new int[capacity];
+                System.arraycopy(candidates, 0, grownCandidates, 0, count);
+                System.arraycopy(sdpMids, 0, grownMids, 0, count);
+                System.arraycopy(sdpMLineIndexes, 0, grownIndexes, 0, count);
+                candidates = grownCandidates;
+                sdpMids = grownMids;
+                sdpMLineIndexes = grownIndexes;
+            }
+            candidates[count] = candidate.sdp;
+            sdpMids[count] = candidate.sdpMid;
+            sdpMLineIndexes[count] = candidate.sdpMLineIndex;
+            count++;
+        }
+
+        void clear() {
+            for (int i = 0; i < count; i++) {
+                candidates[i] = null;
+                sdpMids[i] = null;
+            }
+            count = 0;
+        }
+    }
+}
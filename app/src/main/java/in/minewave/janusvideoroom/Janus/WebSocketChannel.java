@@ -1,355 +1,930 @@
 package in.minewave.janusvideoroom.Janus;
 
-import android.app.Activity;
-import android.os.Handler;
-import android.text.TextUtils;
 import android.util.Log;
 
 import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.protocols.IProtocol;
 import org.java_websocket.protocols.Protocol;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.webrtc.IceCandidate;
+import org.webrtc.PeerConnection;
 import org.webrtc.SessionDescription;
 
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.SimulcastLayer;
+
+import java.io.IOException;
 import java.io.InvalidObjectException;
-import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.java_websocket.client.WebSocketClient;
 
 public class WebSocketChannel extends WebSocketClient {
     private static final String TAG = "WebSocketChannel";
-    private JanusTransactions janusTransactions = new JanusTransactions();
-    private ConcurrentHashMap<BigInteger, JanusHandle> handles = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<BigInteger, JanusHandle> feeds = new ConcurrentHashMap<>();
-    private Handler keepaliveHandler;
-    private BigInteger mSessionId;
+    private static final String VIDEOROOM_PLUGIN = "janus.plugin.videoroom";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int SWEEP_INTERVAL_MS = 500;
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    private static final long RECONNECT_BASE_MS = 250;
+    private static final long RECONNECT_MAX_MS = 8000;
+    // Pings on an idle socket, so a dead network is noticed well before Janus drops the session.
+    private static final int CONNECTION_LOST_TIMEOUT_S = 10;
+    private final JanusTransactions janusTransactions = new JanusTransactions();
+    private final JanusMessageDecoder decoder = new JanusMessageDecoder();
+    private final JanusMessageEncoder encoder = new JanusMessageEncoder();
+    private final TransactionIdGenerator transactionIds = new TransactionIdGenerator();
+    private final LongConcurrentMap<JanusHandle> handles = new LongConcurrentMap<>();
+    private final SignalingDispatcher dispatcher = new SignalingDispatcher();
+    private final TrickleBatcher trickleBatcher;
+    private final SubscriberPipeline subscribers;
+    private final MultistreamSubscriber multistream;
+    private final SubstreamController substreams;
+    private final IceRestartController iceRestarts;
+    private final LastNManager lastN;
+    private final ActiveSpeakerDetector speakers;
+    private final int audioLevelIntervalMs;
+    private final long room;
+    private final StartupTimings timings;
+    private volatile AudioLevelMonitor audioLevels;
+    private final int statsIntervalMs;
+    private volatile StatsCollector stats;
+    private volatile SignalingTrace.Recorder trace;
+    // Set when a SignalingReplayer stands in for the websocket.
+    private final FrameSink replay;
+    private volatile long mSessionId;
     private JanusRTCInterface delegate;
-    private Activity _activity;
 
-    public static WebSocketChannel createWebSockeChannel(Activity activity, JanusRTCInterface delegate, String url) throws URISyntaxException, InterruptedException, InvalidObjectException {
-        Draft_6455 janus_draft = new Draft_6455(Collections.<IExtension>emptyList(),
+    // Requests made while the socket is down go out once the session is claimed again.
+    private final Object sendLock = new Object();
+    private final ArrayDeque<Outbound> outbox = new ArrayDeque<>();
+    private volatile boolean connected;
+    private volatile boolean closing;
+    // Signaling thread only.
+    private boolean keepAliveRunning;
+    private boolean reconnectScheduled;
+    private int reconnectAttempt;
+    private long reconnectStartMs = -1;
+
+    interface FrameSink {
+        void onFrame(String frame);
+    }
+
+    private static class Outbound {
+        final long transaction;
+        final String message;
+        // Untracked requests have no table entry to time out and are always sent.
+        final boolean tracked;
+
+        Outbound(long transaction, String message, boolean tracked) {
+            this.transaction = transaction;
+            this.message = message;
+            this.tracked = tracked;
+        }
+    }
+
+    public static WebSocketChannel createWebSockeChannel(JanusRTCInterface delegate, PeerConnectionParameters params, long room) throws URISyntaxException, InterruptedException, InvalidObjectException {
+        WebSocketChannel channel = new WebSocketChannel(delegate, params, room, new StartupTimings(), janusDraft(), null);
+        channel.timings.begin(StartupTimings.Phase.CONNECT);
+        if (!channel.connectBlocking(10, TimeUnit.SECONDS)) {
+            channel.close();
+            throw new InvalidObjectException("Could not connect to janus");
+        }
+        return channel;
+    }
+
+    // Returns right away; a failed connect is retried like a dropped connection.
+    static WebSocketChannel connectWebSocketChannel(JanusRTCInterface delegate, PeerConnectionParameters params,
+                                                    long room, StartupTimings timings) throws URISyntaxException {
+        WebSocketChannel channel = new WebSocketChannel(delegate, params, room, timings, janusDraft(), null);
+        timings.begin(StartupTimings.Phase.CONNECT);
+        channel.connect();
+        return channel;
+    }
+
+    // Never connects: outbound frames go to replay, and inbound ones come in through onMessage.
+    static WebSocketChannel replayChannel(JanusRTCInterface delegate, PeerConnectionParameters params,
+                                          long room, FrameSink replay) throws URISyntaxException {
+        return new WebSocketChannel(delegate, params, room, new StartupTimings(), janusDraft(), replay);
+    }
+
+    private static Draft_6455 janusDraft() {
+        return new Draft_6455(Collections.<IExtension>emptyList(),
                 Collections.<IProtocol>singletonList(new Protocol("janus-protocol")));
-        return new WebSocketChannel(activity, delegate, url, janus_draft);
     }
 
-    private WebSocketChannel(Activity activity, JanusRTCInterface delegate, String url, Draft_6455 janus_draft) throws URISyntaxException, InterruptedException, InvalidObjectException  {
-        super(new URI(url), janus_draft);
-        keepaliveHandler = new Handler();
+    private WebSocketChannel(JanusRTCInterface delegate, PeerConnectionParameters params, long room,
+                             StartupTimings timings, Draft_6455 janus_draft, FrameSink replay) throws URISyntaxException {
+        super(new URI(params.janusWebSocketURL), janus_draft);
         this.delegate = delegate;
-        _activity = activity;
-        if (!connectBlocking(10, TimeUnit.SECONDS))
-            throw new InvalidObjectException("Could not connect to janus");
+        this.room = room;
+        this.timings = timings;
+        this.replay = replay;
+        if (params.signalingTrace != null) {
+            try {
+                trace = SignalingTrace.Recorder.open(params.signalingTrace);
+            } catch (IOException e) {
+                Log.e(TAG, "signaling trace not recorded: " + e.getMessage());
+            }
+        }
+        trickleBatcher = new TrickleBatcher(dispatcher, trickleSender, params.trickleBatchWindowMs);
+        subscribers = new SubscriberPipeline(subscriberSteps, JanusTransactions.SYSTEM_TIME, params.maxConcurrentSubscriptions);
+        multistream = params.multistream ? new MultistreamSubscriber(multistreamSteps, JanusTransactions.SYSTEM_TIME) : null;
+        substreams = new SubstreamController(substreamSender, params.adaptiveSubstreams, params.videoHeight,
+                remoteLayerScales(params.simulcastLayers), params.pauseHiddenFeeds);
+        lastN = new LastNManager(params.lastN, substreams);
+        iceRestarts = new IceRestartController(iceRestartSteps, JanusTransactions.SYSTEM_TIME);
+        speakers = new ActiveSpeakerDetector(lastN);
+        audioLevelIntervalMs = params.audioLevelIntervalMs;
+        statsIntervalMs = params.statsIntervalMs;
+        dispatcher.schedule(sweepTransactions, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        setConnectionLostTimeout(CONNECTION_LOST_TIMEOUT_S);
     }
 
     @Override
     public void onOpen(ServerHandshake handshakedata) {
-        String transaction = randomString(12);
-        JanusTransactions.JanusTransaction jt = janusTransactions.new JanusTransaction();
-        jt.tid = transaction;
-        jt.success = jo -> {
-            mSessionId = new BigInteger(jo.optJSONObject("data").optString("id"));
-            keepaliveHandler.post(fireKeepAlive);
-            publisherCreateHandle();
-        };
-        jt.error = jo -> {};
-        janusTransactions.addTransaction(jt);
-        JSONObject msg = new JSONObject();
-        try {
-            msg.putOpt("janus", "create");
-            msg.putOpt("transaction", transaction);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        send(msg.toString());
+        timings.end(StartupTimings.Phase.CONNECT);
+        dispatcher.execute(() -> {
+            if (mSessionId == 0) {
+                flushOutbox();
+                createSession(1);
+            } else {
+                claimSession();
+            }
+        });
+    }
+
+    private void createSession(final int attempt) {
+        long transaction = transactionIds.next();
+        timings.begin(StartupTimings.Phase.SESSION);
+        sendRequest(JanusTransactions.RequestType.CREATE, transaction, encoder.create(transaction)).then(jo -> {
+            mSessionId = jo.event(JanusEvent.Success.class).dataId;
+            timings.end(StartupTimings.Phase.SESSION);
+            if (!keepAliveRunning) {
+                keepAliveRunning = true;
+                dispatcher.execute(fireKeepAlive);
+            }
+            if (reconnectStartMs >= 0)
+                reconnected(false);
+            publisherCreateHandle(1);
+        }, error -> {
+            Log.e(TAG, "create failed: " + error.reason);
+            if (shouldRetry(error, attempt))
+                createSession(attempt + 1);
+        });
     }
 
+    // Called on the websocket read thread; parsing and routing happen on the signaling thread.
     @Override
     public void onMessage(String message) {
-        _activity.runOnUiThread(() -> {
-            Log.e(TAG, "onMessage" + message);
-            try {
-                JSONObject jo = new JSONObject(message);
-                String janus = jo.optString("janus");
-                if (JanusTransactions.isTransaction(jo)) {
-                    janusTransactions.processTransaction(jo);
-                } else {
-                    JanusHandle handle = handles.get(new BigInteger(jo.optString("sender")));
-                    if (handle == null) {
-                        Log.e(TAG, "missing handle");
-                    } else if (janus.equals("event")) {
-                        JSONObject plugin = jo.optJSONObject("plugindata").optJSONObject("data");
-                        if (plugin.optString("videoroom").equals("joined")) {
-                            handle.onJoined.onJoined(handle);
-                        }
-
-                        JSONArray publishers = plugin.optJSONArray("publishers");
-                        if (publishers != null && publishers.length() > 0) {
-                            for (int i = 0, size = publishers.length(); i <= size - 1; i++) {
-                                JSONObject publisher = publishers.optJSONObject(i);
-                                BigInteger feed = new BigInteger(publisher.optString("id"));
-                                String display = publisher.optString("display");
-                                subscriberCreateHandle(feed, display);
-                            }
-                        }
-
-                        String leaving = plugin.optString("leaving");
-                        if (!TextUtils.isEmpty(leaving)) {
-                            JanusHandle jhandle = feeds.get(new BigInteger(leaving));
-                            jhandle.onLeaving.onJoined(jhandle);
-                        }
-
-                        JSONObject jsep = jo.optJSONObject("jsep");
-                        if (jsep != null) {
-                            handle.onRemoteJsep.onRemoteJsep(handle, jsep);
-                        }
-
-                    } else if (janus.equals("detached")) {
-                        handle.onLeaving.onJoined(handle);
+        long receivedMs = JanusTransactions.SYSTEM_TIME.nowMs();
+        traceFrame(false, message);
+        dispatcher.execute(() -> dispatchMessage(message, receivedMs));
+    }
+
+    private void dispatchMessage(String message, long receivedMs) {
+        Log.d(TAG, "onMessage" + message);
+        JanusMessage msg;
+        try {
+            msg = decoder.decode(message);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Malformed janus message: " + e.getMessage());
+            return;
+        }
+        if (janusTransactions.processTransaction(msg, receivedMs))
+            return;
+        JanusHandle handle = handles.get(msg.sender);
+        if (handle == null) {
+            Log.e(TAG, "missing handle");
+        } else if (msg.kind == JanusMessage.Kind.EVENT) {
+            dispatcher.forHandle(handle.handleId).execute(() -> onHandleEvent(handle, msg));
+        } else if (msg.kind == JanusMessage.Kind.DETACHED && handle.onLeaving != null) {
+            dispatcher.forHandle(handle.handleId).execute(() -> handle.onLeaving.onJoined(handle));
+        }
+    }
+
+    // Runs on the handle's serial executor.
+    private void onHandleEvent(JanusHandle handle, JanusMessage msg) {
+        for (int i = 0, size = msg.events.size(); i < size; i++) {
+            JanusEvent event = msg.events.get(i);
+            if (event instanceof JanusEvent.Joined) {
+                handle.onJoined.onJoined(handle);
+            } else if (event instanceof JanusEvent.Publishers) {
+                final JanusEvent.Publisher[] publishers = ((JanusEvent.Publishers) event).publishers;
+                dispatcher.execute(() -> {
+                    for (JanusEvent.Publisher publisher : publishers) {
+                        boolean added = multistream != null
+                                ? multistream.offer(publisher.feedId, publisher.display)
+                                : subscribers.offer(publisher.feedId, publisher.display);
+                        if (added)
+                            delegate.onFeedDiscovered(publisher.feedId);
                     }
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
+                });
+            } else if (event instanceof JanusEvent.Leaving) {
+                final long feedId = ((JanusEvent.Leaving) event).feedId;
+                dispatcher.execute(() -> subscriberLeft(feedId));
+            } else if (event instanceof JanusEvent.Streams && multistream != null) {
+                final JanusEvent.Stream[] streams = ((JanusEvent.Streams) event).streams;
+                dispatcher.execute(() -> multistream.updateStreams(streams));
+                delegate.onSubscriberStreams(handle.handleId, streams);
+            } else if (event instanceof JanusEvent.Jsep) {
+                handle.onRemoteJsep.onRemoteJsep(handle, (JanusEvent.Jsep) event);
             }
         }
-    );
     }
 
-    private void publisherCreateHandle() {
-        String transaction = randomString(12);
-        JanusTransactions.JanusTransaction jt = janusTransactions.new JanusTransaction();
-        jt.tid = transaction;
-        jt.success = jo -> {
+    private void publisherCreateHandle(final int attempt) {
+        long transaction = transactionIds.next();
+        timings.begin(StartupTimings.Phase.ATTACH);
+        sendRequest(JanusTransactions.RequestType.ATTACH, transaction,
+                encoder.attach(transaction, mSessionId, VIDEOROOM_PLUGIN)).then(jo -> {
+            timings.end(StartupTimings.Phase.ATTACH);
             JanusHandle janusHandle = new JanusHandle();
-            janusHandle.handleId = new BigInteger(jo.optJSONObject("data").optString("id"));
-            janusHandle.onJoined = jh -> delegate.onPublisherJoined(jh.handleId);
+            janusHandle.handleId = jo.event(JanusEvent.Success.class).dataId;
+            janusHandle.publisher = true;
+            janusHandle.onJoined = jh -> {
+                timings.end(StartupTimings.Phase.JOIN);
+                delegate.onPublisherJoined(jh.handleId);
+            };
             janusHandle.onRemoteJsep = (jh, jsep) -> delegate.onPublisherRemoteJsep(jh.handleId, jsep);
             handles.put(janusHandle.handleId, janusHandle);
+            handleAttached(janusHandle);
             publisherJoinRoom(janusHandle);
-        };
-        jt.error = jo -> {};
-        janusTransactions.addTransaction(jt);
-        JSONObject msg = new JSONObject();
-        try {
-            msg.putOpt("janus", "attach");
-            msg.putOpt("plugin", "janus.plugin.videoroom");
-            msg.putOpt("transaction", transaction);
-            msg.putOpt("session_id", mSessionId);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        send(msg.toString());
+        }, error -> {
+            Log.e(TAG, "publisher attach failed: " + error.reason);
+            if (shouldRetry(error, attempt))
+                publisherCreateHandle(attempt + 1);
+        });
+    }
+
+    // Lets the client start ICE gathering while the join is in flight. Queued on the handle's
+    // executor ahead of any jsep for it.
+    private void handleAttached(JanusHandle handle) {
+        dispatcher.forHandle(handle.handleId).execute(
+                () -> delegate.onHandleAttached(handle.handleId, handle.publisher));
     }
 
     private void publisherJoinRoom(JanusHandle handle) {
-        JSONObject msg = new JSONObject();
-        JSONObject body = new JSONObject();
-        try {
-            body.putOpt("request", "join");
-            body.putOpt("room", 1234);
-            body.putOpt("ptype", "publisher");
-            body.putOpt("display", "Android webrtc");
-
-            msg.putOpt("janus", "message");
-            msg.putOpt("body", body);
-            msg.putOpt("transaction", randomString(12));
-            msg.putOpt("session_id", mSessionId);
-            msg.putOpt("handle_id", handle.handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        send(msg.toString());
-    }
-
-    public void publisherCreateOffer(final BigInteger handleId, final SessionDescription sdp) {
-        JSONObject publish = new JSONObject();
-        JSONObject jsep = new JSONObject();
-        JSONObject message = new JSONObject();
-        try {
-            publish.putOpt("request", "configure");
-            publish.putOpt("audio", true);
-            publish.putOpt("video", true);
+        long transaction = transactionIds.next();
+        timings.begin(StartupTimings.Phase.JOIN);
+        sendRequest(JanusTransactions.RequestType.JOIN, transaction,
+                encoder.joinPublisher(transaction, mSessionId, handle.handleId,
+                        room, "Android webrtc"))
+                .then(null, error -> Log.e(TAG, "publisher join failed: " + error.reason));
+    }
 
-            jsep.putOpt("type", sdp.type);
-            jsep.putOpt("sdp", sdp.description);
+    public void publisherCreateOffer(final long handleId, final SessionDescription sdp) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.CONFIGURE, transaction,
+                encoder.configure(transaction, mSessionId, handleId,
+                        true, true, sdp.type.canonicalForm(), sdp.description))
+                .then(null, error -> Log.e(TAG, "publisher configure failed: " + error.reason));
+    }
 
-            message.putOpt("janus", "message");
-            message.putOpt("body", publish);
-            message.putOpt("jsep", jsep);
-            message.putOpt("transaction", randomString(12));
-            message.putOpt("session_id", mSessionId);
-            message.putOpt("handle_id", handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        send(message.toString());
+    public void subscriberCreateAnswer(final long handleId, final SessionDescription sdp) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.START, transaction,
+                encoder.start(transaction, mSessionId, handleId,
+                        room, sdp.type.canonicalForm(), sdp.description)).then(jo -> {
+            JanusHandle handle = handles.get(handleId);
+            if (handle == null)
+                return;
+            if (multistream != null)
+                dispatcher.execute(() -> multistream.onStarted(true));
+            else
+                dispatcher.execute(() -> subscribers.onStarted(handle.feedId));
+        }, error -> {
+            Log.e(TAG, "subscriber start failed: " + error.reason);
+            JanusHandle handle = handles.get(handleId);
+            if (handle == null)
+                return;
+            if (multistream != null) {
+                dispatcher.execute(() -> multistream.onStarted(false));
+            } else {
+                // Only a first start drops the feed. One after an ICE restart leaves a subscribed
+                // feed to IceRestartController, which restarts again.
+                dispatcher.execute(() -> {
+                    if (subscribers.stateOf(handle.feedId) == SubscriberPipeline.State.NEGOTIATING)
+                        subscribers.onFailed(handle.feedId);
+                });
+            }
+        });
     }
 
-    public void subscriberCreateAnswer(final BigInteger handleId, final SessionDescription sdp) {
-        JSONObject body = new JSONObject();
-        JSONObject jsep = new JSONObject();
-        JSONObject message = new JSONObject();
+    // Candidates are coalesced per handle, see TrickleBatcher.
+    public void trickleCandidate(final long handleId, final IceCandidate iceCandidate) {
+        trickleBatcher.add(handleId, iceCandidate);
+    }
 
-        try {
-            body.putOpt("request", "start");
-            body.putOpt("room", 1234);
+    public void trickleCandidateComplete(final long handleId) {
+        trickleBatcher.complete(handleId);
+    }
+
+    private final TrickleSender trickleSender = new TrickleSender() {
+        @Override
+        public boolean isAttached(long handleId) {
+            return handles.containsKey(handleId);
+        }
+
+        @Override
+        public void sendCandidate(long handleId, String candidate, String sdpMid, int sdpMLineIndex) {
+            long transaction = transactionIds.next();
+            sendRequest(JanusTransactions.RequestType.TRICKLE, transaction,
+                    encoder.trickle(transaction, mSessionId, handleId,
+                            candidate, sdpMid, sdpMLineIndex));
+        }
+
+        @Override
+        public void sendCandidates(long handleId, String[] candidates, String[] sdpMids,
+                                   int[] sdpMLineIndexes, int count, boolean completed) {
+            long transaction = transactionIds.next();
+            sendRequest(JanusTransactions.RequestType.TRICKLE, transaction,
+                    encoder.trickleCandidates(transaction, mSessionId, handleId,
+                            candidates, sdpMids, sdpMLineIndexes, count, completed));
+        }
+
+        @Override
+        public void sendCompleted(long handleId) {
+            long transaction = transactionIds.next();
+            sendRequest(JanusTransactions.RequestType.TRICKLE, transaction,
+                    encoder.trickleCompleted(transaction, mSessionId, handleId));
+        }
+    };
+
+    // Driven by the pipeline on the signaling thread.
+    private final SubscriberSteps subscriberSteps = new SubscriberSteps() {
+        @Override
+        public void attach(SubscriberPipeline.Feed feed) {
+            subscriberCreateHandle(feed, 1);
+        }
+
+        @Override
+        public void join(JanusHandle handle) {
+            subscriberJoinRoom(handle);
+        }
+
+        @Override
+        public void detach(JanusHandle handle) {
+            subscriberOnLeaving(handle);
+        }
 
-            jsep.putOpt("type", sdp.type);
-            jsep.putOpt("sdp", sdp.description);
-            message.putOpt("janus", "message");
-            message.putOpt("body", body);
-            message.putOpt("jsep", jsep);
-            message.putOpt("transaction", randomString(12));
-            message.putOpt("session_id", mSessionId);
-            message.putOpt("handle_id", handleId);
-            Log.e(TAG, "-------------"  + message.toString());
-        } catch (JSONException e) {
-            e.printStackTrace();
+        @Override
+        public void onSubscribed(long feedId) {
+            feedSubscribed(feedId);
+        }
+
+        @Override
+        public void onSettled(int feeds, long elapsedMs) {
+            delegate.onSubscribersSettled(feeds, elapsedMs);
         }
+    };
+
+    private void subscriberCreateHandle(final SubscriberPipeline.Feed feed, final int attempt) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.ATTACH, transaction,
+                encoder.attach(transaction, mSessionId, VIDEOROOM_PLUGIN)).then(jo -> {
+            JanusHandle janusHandle = new JanusHandle();
+            janusHandle.handleId = jo.event(JanusEvent.Success.class).dataId;
+            janusHandle.feedId = feed.feedId;
+            janusHandle.display = feed.display;
+            janusHandle.onRemoteJsep = (jh, jsep) -> delegate.subscriberHandleRemoteJsep(jh.handleId, jsep);
+            janusHandle.onLeaving = jh -> dispatcher.execute(() -> subscriberLeft(jh.feedId));
+            handles.put(janusHandle.handleId, janusHandle);
+            handleAttached(janusHandle);
+            subscribers.onAttached(feed, janusHandle);
+        }, error -> {
+            Log.e(TAG, "subscriber attach for feed " + feed.feedId + " failed: " + error.reason);
+            if (shouldRetry(error, attempt))
+                subscriberCreateHandle(feed, attempt + 1);
+            else
+                subscribers.onAttachFailed(feed);
+        });
+    }
 
-        send(message.toString());
+    private void subscriberJoinRoom(JanusHandle handle) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.JOIN, transaction,
+                encoder.joinSubscriber(transaction, mSessionId, handle.handleId,
+                        room, handle.feedId))
+                .then(null, error -> {
+                    Log.e(TAG, "subscriber join for feed " + handle.feedId + " failed: " + error.reason);
+                    subscribers.onFailed(handle.feedId);
+                });
     }
 
-    public void trickleCandidate(final BigInteger handleId, final IceCandidate iceCandidate) {
-        JSONObject candidate = new JSONObject();
-        JSONObject message = new JSONObject();
-        try {
-            candidate.putOpt("candidate", iceCandidate.sdp);
-            candidate.putOpt("sdpMid", iceCandidate.sdpMid);
-            candidate.putOpt("sdpMLineIndex", iceCandidate.sdpMLineIndex);
+    // Last-N first, so a feed left out of the video set is configured before its first frame.
+    private void feedSubscribed(long feedId) {
+        lastN.onFeedAdded(feedId);
+        substreams.onSubscribed(feedId);
+    }
 
-            message.putOpt("janus", "trickle");
-            message.putOpt("candidate", candidate);
-            message.putOpt("transaction", randomString(12));
-            message.putOpt("session_id", mSessionId);
-            message.putOpt("handle_id", handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    // Runs on the signaling thread.
+    private void subscriberLeft(long feedId) {
+        delegate.onFeedLeft(feedId);
+        speakers.remove(feedId);
+        lastN.onFeedRemoved(feedId);
+        substreams.remove(feedId);
+        if (multistream != null) {
+            multistream.remove(feedId);
+            return;
         }
-        send(message.toString());
+        JanusHandle handle = subscribers.remove(feedId);
+        if (handle != null)
+            subscriberOnLeaving(handle);
     }
 
-    public void trickleCandidateComplete(final BigInteger handleId) {
-        JSONObject candidate = new JSONObject();
-        JSONObject message = new JSONObject();
-        try {
-            candidate.putOpt("completed", true);
-            message.putOpt("janus", "trickle");
-            message.putOpt("candidate", candidate);
-            message.putOpt("transaction", randomString(12));
-            message.putOpt("session_id", mSessionId);
-            message.putOpt("handle_id", handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void subscriberCreateHandle(final BigInteger feed, final String display) {
-        String transaction = randomString(12);
-        JanusTransactions.JanusTransaction jt = janusTransactions.new JanusTransaction();
-        jt.tid = transaction;
-        jt.success = jo -> {
+    // Driven by the multistream subscriber on the signaling thread.
+    private final MultistreamSteps multistreamSteps = new MultistreamSteps() {
+        @Override
+        public void attach() {
+            multistreamCreateHandle(1);
+        }
+
+        @Override
+        public void join(JanusHandle handle, long[] feedIds, int count) {
+            long transaction = transactionIds.next();
+            sendStreamsRequest(JanusTransactions.RequestType.JOIN, transaction,
+                    encoder.joinSubscriberStreams(transaction, mSessionId, handle.handleId, room, feedIds, count));
+        }
+
+        @Override
+        public void subscribe(JanusHandle handle, long[] feedIds, int count) {
+            long transaction = transactionIds.next();
+            sendStreamsRequest(JanusTransactions.RequestType.SUBSCRIBE, transaction,
+                    encoder.subscribe(transaction, mSessionId, handle.handleId, feedIds, count));
+        }
+
+        @Override
+        public void unsubscribe(JanusHandle handle, long[] feedIds, int count) {
+            long transaction = transactionIds.next();
+            sendStreamsRequest(JanusTransactions.RequestType.UNSUBSCRIBE, transaction,
+                    encoder.unsubscribe(transaction, mSessionId, handle.handleId, feedIds, count));
+        }
+
+        @Override
+        public void onSubscribed(long feedId) {
+            feedSubscribed(feedId);
+        }
+
+        @Override
+        public void onSettled(int feeds, long elapsedMs) {
+            delegate.onSubscribersSettled(feeds, elapsedMs);
+        }
+    };
+
+    private void multistreamCreateHandle(final int attempt) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.ATTACH, transaction,
+                encoder.attach(transaction, mSessionId, VIDEOROOM_PLUGIN)).then(jo -> {
             JanusHandle janusHandle = new JanusHandle();
-            janusHandle.handleId = new BigInteger(jo.optJSONObject("data").optString("id"));
-            janusHandle.feedId = feed;
-            janusHandle.display = display;
+            janusHandle.handleId = jo.event(JanusEvent.Success.class).dataId;
             janusHandle.onRemoteJsep = (jh, jsep) -> delegate.subscriberHandleRemoteJsep(jh.handleId, jsep);
-            janusHandle.onLeaving = jh -> subscriberOnLeaving(jh);
             handles.put(janusHandle.handleId, janusHandle);
-            feeds.put(janusHandle.feedId, janusHandle);
-            subscriberJoinRoom(janusHandle);
-        };
-        jt.error = jo -> {};
-        janusTransactions.addTransaction(jt);
-        JSONObject msg = new JSONObject();
-        try {
-            msg.putOpt("janus", "attach");
-            msg.putOpt("plugin", "janus.plugin.videoroom");
-            msg.putOpt("transaction", transaction);
-            msg.putOpt("session_id", mSessionId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+            handleAttached(janusHandle);
+            multistream.onAttached(janusHandle);
+        }, error -> {
+            Log.e(TAG, "multistream attach failed: " + error.reason);
+            if (shouldRetry(error, attempt))
+                multistreamCreateHandle(attempt + 1);
+            else
+                multistream.onAttachFailed();
+        });
+    }
+
+    // The reply event carries the offer when the stream set changed; the jsep itself is routed
+    // to the handle like any other event.
+    private void sendStreamsRequest(JanusTransactions.RequestType type, long transaction, String message) {
+        sendRequest(type, transaction, message).then(
+                jo -> multistream.onRequestDone(jo.event(JanusEvent.Jsep.class) != null),
+                error -> {
+                    Log.e(TAG, "multistream " + type + " failed: " + error.reason);
+                    multistream.onRequestFailed();
+                });
+    }
+
+    private void subscriberOnLeaving(final JanusHandle handle) {
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.DETACH, transaction,
+                encoder.detach(transaction, mSessionId, handle.handleId)).then(jo -> {
+            dispatcher.forHandle(handle.handleId).execute(() -> {
+                delegate.onLeaving(handle.handleId);
+                dispatcher.release(handle.handleId);
+            });
+            handles.remove(handle.handleId);
+            trickleBatcher.release(handle.handleId);
+            iceRestarts.remove(handle.handleId);
+        }, error -> Log.e(TAG, "detach failed: " + error.reason));
+    }
+
+    // Called on the webrtc signaling thread.
+    public void onIceConnectionChange(final long handleId, final PeerConnection.IceConnectionState state) {
+        dispatcher.execute(() -> iceRestarts.onStateChange(handleId, state));
+    }
+
+    // Driven by the restart controller on the signaling thread.
+    private final IceRestartSteps iceRestartSteps = new IceRestartSteps() {
+        @Override
+        public void restart(long handleId) {
+            JanusHandle handle = handles.get(handleId);
+            if (handle == null)
+                return;
+            Log.i(TAG, "ICE restart on handle " + handleId);
+            if (handle.publisher) {
+                delegate.onIceRestartNeeded(handleId);
+                return;
+            }
+            // Janus answers with a new offer, which goes through the usual answer and start.
+            long transaction = transactionIds.next();
+            sendRequest(JanusTransactions.RequestType.CONFIGURE, transaction,
+                    encoder.configureRestart(transaction, mSessionId, handleId))
+                    .then(null, error -> Log.e(TAG, "subscriber restart failed: " + error.reason));
+        }
+
+        @Override
+        public void scheduleCheck(long handleId, long delayMs) {
+            dispatcher.schedule(() -> iceRestarts.check(handleId), delayMs, TimeUnit.MILLISECONDS);
         }
 
-        send(msg.toString());
+        @Override
+        public void onRecovered(long handleId, long elapsedMs, int restarts) {
+            delegate.onMediaRecovered(handleId, elapsedMs, restarts);
+        }
+    };
+
+    // Draw size of a remote feed, 0x0 when it is off-screen; picks the simulcast substream.
+    public void setFeedRenderSize(final long feedId, final int width, final int height) {
+        substreams.onRenderSize(feedId, width, height);
     }
 
-    private void subscriberJoinRoom(JanusHandle handle) {
+    // Remote feeds that may get an HD substream at once; 0 or less for no limit.
+    public void setMaxHdDecodes(int max) {
+        substreams.setMaxHdFeeds(max);
+    }
 
-        JSONObject msg = new JSONObject();
-        JSONObject body = new JSONObject();
-        try {
-            body.putOpt("request", "join");
-            body.putOpt("room", 1234);
-            body.putOpt("ptype", "listener");
-            body.putOpt("feed", handle.feedId);
+    public void setSpeakerListener(SpeakerListener listener) {
+        lastN.setListener(listener);
+    }
+
+    public SignalingLatency signalingLatency() {
+        return janusTransactions.latency();
+    }
+
+    // Samples remote audio levels every audioLevelIntervalMs; a no-op when detection is off.
+    void startSpeakerDetection(AudioLevelMonitor monitor) {
+        if (audioLevelIntervalMs <= 0 || audioLevels != null)
+            return;
+        audioLevels = monitor;
+        dispatcher.schedule(speakerRound, audioLevelIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs a stats round every statsIntervalMs while the collector has a reader.
+    void startStatsCollection(StatsCollector collector) {
+        if (statsIntervalMs <= 0 || stats != null)
+            return;
+        stats = collector;
+        dispatcher.schedule(statsRound, statsIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void onAudioLevel(long feedId, double level, long nowMs) {
+        speakers.onAudioLevel(feedId, level, nowMs);
+    }
 
-            msg.putOpt("janus", "message");
-            msg.putOpt("body", body);
-            msg.putOpt("transaction", randomString(12));
-            msg.putOpt("session_id", mSessionId);
-            msg.putOpt("handle_id", handle.handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    // 0 for the multistream handle, which carries every feed.
+    long feedOfHandle(long handleId) {
+        JanusHandle handle = handles.get(handleId);
+        return handle == null ? 0 : handle.feedId;
+    }
+
+    // Settles the dominant speaker on the levels of the previous round, then samples again.
+    private final Runnable speakerRound = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                speakers.evaluate(JanusTransactions.SYSTEM_TIME.nowMs());
+                audioLevels.poll();
+            } finally {
+                dispatcher.schedule(speakerRound, audioLevelIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    };
+
+    // Hands out the samples of the previous round, then polls again.
+    private final Runnable statsRound = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                if (stats.isActive()) {
+                    stats.publish();
+                    stats.poll();
+                }
+            } finally {
+                dispatcher.schedule(statsRound, statsIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    };
+
+    private final SubstreamSender substreamSender = new SubstreamSender() {
+        @Override
+        public void configure(long feedId, int substream, int temporal, boolean video) {
+            dispatcher.execute(() -> subscriberConfigure(feedId, substream, temporal, video));
         }
-        send(msg.toString());
+    };
+
+    // Runs on the signaling thread.
+    private void subscriberConfigure(long feedId, int substream, int temporal, boolean video) {
+        JanusHandle handle;
+        String mid = null;
+        if (multistream != null) {
+            handle = multistream.handle();
+            mid = multistream.videoMidOf(feedId);
+            if (mid == null)
+                return;
+        } else {
+            handle = subscribers.handleFor(feedId);
+        }
+        if (handle == null)
+            return;
+        long transaction = transactionIds.next();
+        sendRequest(JanusTransactions.RequestType.CONFIGURE, transaction,
+                encoder.configureSubstream(transaction, mSessionId, handle.handleId, mid, substream, temporal, video))
+                .then(null, error -> Log.e(TAG, "substream configure for feed " + feedId + " failed: " + error.reason));
     }
 
-    private void subscriberOnLeaving(final JanusHandle handle) {
-        String transaction = randomString(12);
-        JanusTransactions.JanusTransaction jt = janusTransactions.new JanusTransaction();
-        jt.tid = transaction;
-        jt.success = jo -> {
-            delegate.onLeaving(handle.handleId);
-            handles.remove(handle.handleId);
-            feeds.remove(handle.feedId);
-        };
-        jt.error = jo -> {};
+    // Remote publishers are assumed to use the same layers as we do; lowest layer first.
+    private static double[] remoteLayerScales(SimulcastLayer[] layers) {
+        if (layers == null || layers.length == 0)
+            layers = SimulcastLayer.defaultLayers();
+        double[] scales = new double[layers.length];
+        for (int i = 0; i < layers.length; i++)
+            scales[i] = layers[i].scaleResolutionDownBy;
+        Arrays.sort(scales);
+        for (int i = 0; i < scales.length / 2; i++) {
+            double swap = scales[i];
+            scales[i] = scales[scales.length - 1 - i];
+            scales[scales.length - 1 - i] = swap;
+        }
+        return scales;
+    }
 
-        janusTransactions.addTransaction(jt);
+    private JanusTransactions.TransactionFuture sendRequest(JanusTransactions.RequestType type,
+                                                            long transaction, String message) {
+        JanusTransactions.TransactionFuture future = janusTransactions.register(type, transaction);
+        if (!future.isDone()) {
+            transmit(transaction, message, true);
+        } else if (type == JanusTransactions.RequestType.TRICKLE) {
+            // Nothing waits for a trickle's ack, but ICE on the handle needs its candidates.
+            Log.w(TAG, "transaction table full, trickling untracked");
+            transmit(transaction, message, false);
+        }
+        return future;
+    }
 
-        JSONObject jo = new JSONObject();
+    private void transmit(long transaction, String message, boolean tracked) {
+        synchronized (sendLock) {
+            if (connected) {
+                try {
+                    janusTransactions.markSent(transaction);
+                    sendFrame(message);
+                    return;
+                } catch (WebsocketNotConnectedException e) {
+                    connected = false;
+                }
+            }
+            outbox.add(new Outbound(transaction, message, tracked));
+        }
+    }
+
+    private void sendFrame(String message) {
+        traceFrame(true, message);
+        if (replay != null)
+            replay.onFrame(message);
+        else
+            send(message);
+    }
+
+    private void traceFrame(boolean outbound, String frame) {
+        SignalingTrace.Recorder recorder = trace;
+        if (recorder == null)
+            return;
+        try {
+            recorder.record(outbound, frame);
+        } catch (IOException e) {
+            Log.e(TAG, "signaling trace stopped: " + e.getMessage());
+            trace = null;
+            closeTrace(recorder);
+        }
+    }
+
+    private static void closeTrace(SignalingTrace.Recorder recorder) {
         try {
-            jo.putOpt("janus", "detach");
-            jo.putOpt("transaction", transaction);
-            jo.putOpt("session_id", mSessionId);
-            jo.putOpt("handle_id", handle.handleId);
-        } catch (JSONException e) {
-            e.printStackTrace();
+            recorder.close();
+        } catch (IOException e) {
+            Log.e(TAG, "signaling trace not closed: " + e.getMessage());
+        }
+    }
+
+    // Replay only: returns once every frame handed to onMessage so far has been dispatched.
+    boolean awaitDispatched(long timeoutMs) throws InterruptedException {
+        CountDownLatch dispatched = new CountDownLatch(1);
+        dispatcher.execute(dispatched::countDown);
+        return dispatched.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Sends what queued up while disconnected, minus requests that timed out meanwhile.
+    private void flushOutbox() {
+        synchronized (sendLock) {
+            connected = true;
+            Outbound outbound;
+            while ((outbound = outbox.poll()) != null) {
+                if (outbound.tracked && !janusTransactions.isPending(outbound.transaction))
+                    continue;
+                try {
+                    janusTransactions.markSent(outbound.transaction);
+                    sendFrame(outbound.message);
+                } catch (WebsocketNotConnectedException e) {
+                    connected = false;
+                    outbox.addFirst(outbound);
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * Takes the existing session over on the new connection. Janus keeps its handles, and so
+     * every PeerConnection, as long as the session has not timed out; media keeps flowing and
+     * only signaling has to catch up. The claim bypasses the outbox, which is only flushed once
+     * the session is ours again.
+     */
+    private void claimSession() {
+        long transaction = transactionIds.next();
+        JanusTransactions.TransactionFuture future =
+                janusTransactions.register(JanusTransactions.RequestType.CLAIM, transaction);
+        if (!future.isDone()) {
+            try {
+                janusTransactions.markSent(transaction);
+                sendFrame(encoder.claim(transaction, mSessionId));
+            } catch (WebsocketNotConnectedException e) {
+                return;
+            }
+        }
+        future.then(jo -> {
+            flushOutbox();
+            reconnected(true);
+        }, error -> {
+            if (error.code == JanusTransactions.ERROR_CANCELLED)
+                return;
+            Log.e(TAG, "claim failed: " + error.reason);
+            if (error.code < 0)
+                closeConnection(CloseFrame.ABNORMAL_CLOSE, "claim failed");
+            else
+                startNewSession();
+        });
+    }
+
+    /*
+     * The server no longer knows our session, and with it every handle. Everything is released
+     * and the room is joined again from scratch.
+     */
+    private void startNewSession() {
+        synchronized (sendLock) {
+            connected = false;
+            outbox.clear();
+        }
+        // Failing a request can start the next one in the pipelines; drain until quiet.
+        while (janusTransactions.pendingCount() > 0)
+            janusTransactions.cancelAll("Janus session lost");
+        synchronized (sendLock) {
+            outbox.clear();
+        }
+        // Behind whatever the handle's executor is still running against the connection.
+        for (JanusHandle handle : handles.values()) {
+            long handleId = handle.handleId;
+            dispatcher.forHandle(handleId).execute(() -> {
+                delegate.onLeaving(handleId);
+                dispatcher.release(handleId);
+            });
+            trickleBatcher.release(handleId);
+        }
+        handles.clear();
+        iceRestarts.clear();
+        subscribers.clear();
+        if (multistream != null)
+            multistream.clear();
+        substreams.clear();
+        lastN.clear();
+        speakers.clear();
+        mSessionId = 0;
+        flushOutbox();
+        createSession(1);
+    }
+
+    // Runs on the signaling thread.
+    private void reconnected(boolean sessionKept) {
+        long elapsed = JanusTransactions.SYSTEM_TIME.nowMs() - reconnectStartMs;
+        reconnectStartMs = -1;
+        reconnectAttempt = 0;
+        delegate.onReconnected(elapsed, sessionKept);
+    }
+
+    // Runs on the signaling thread.
+    private void scheduleReconnect() {
+        if (closing || reconnectScheduled)
+            return;
+        if (reconnectStartMs < 0)
+            reconnectStartMs = JanusTransactions.SYSTEM_TIME.nowMs();
+        long delay = reconnectDelayMs(reconnectAttempt++);
+        Log.d(TAG, "Reconnecting in " + delay + " ms, attempt " + reconnectAttempt);
+        reconnectScheduled = true;
+        dispatcher.schedule(reconnectTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Exponential backoff with equal jitter, so clients dropped together do not return together.
+    static long reconnectDelayMs(int attempt) {
+        long ceiling = Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS << Math.min(attempt, 10));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    // reconnect() must not run on the websocket thread; the signaling thread is fine.
+    private final Runnable reconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            reconnectScheduled = false;
+            if (!closing)
+                reconnect();
         }
-        send(jo.toString());
+    };
+
+    private static boolean shouldRetry(JanusEvent.Error error, int attempt) {
+        return error.code == JanusTransactions.ERROR_TIMEOUT && attempt < MAX_ATTEMPTS;
     }
 
+    private final Runnable sweepTransactions = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                janusTransactions.sweep();
+            } finally {
+                dispatcher.schedule(sweepTransactions, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    };
+
     private Runnable fireKeepAlive = new Runnable() {
         @Override
         public void run() {
-            String transaction = randomString(12);
-            JSONObject msg = new JSONObject();
+            // A keepalive queued behind a dead socket is pointless; the claim refreshes the session.
             try {
-                msg.putOpt("janus", "keepalive");
-                msg.putOpt("session_id", mSessionId);
-                msg.putOpt("transaction", transaction);
-            } catch (JSONException e) {
-                e.printStackTrace();
+                if (connected && mSessionId != 0) {
+                    long transaction = transactionIds.next();
+                    sendRequest(JanusTransactions.RequestType.KEEPALIVE, transaction,
+                            encoder.keepAlive(transaction, mSessionId))
+                            .then(null, error -> Log.e(TAG, "keepalive failed: " + error.reason));
+                }
+            } finally {
+                dispatcher.schedule(fireKeepAlive, 30, TimeUnit.SECONDS);
             }
-            send(msg.toString());
-            keepaliveHandler.postDelayed(fireKeepAlive, 30000);
         }
     };
 
+    @Override
+    public void close() {
+        closing = true;
+        super.close();
+        // The error callbacks dispatch more work and touch state owned by the signaling thread,
+        // so they run there, before it goes away.
+        dispatcher.runAndWait(() -> janusTransactions.cancelAll("Channel closed"), CLOSE_TIMEOUT_MS);
+        dispatcher.shutdown();
+        SignalingTrace.Recorder recorder = trace;
+        trace = null;
+        if (recorder != null)
+            closeTrace(recorder);
+    }
+
     @Override
     public void onClose(int code, String reason, boolean remote) {
         Log.e(TAG, "Connection closed by " + ( remote ? "remote peer" : "us" ) + " Code: " + code + " Reason: " + reason );
+        connected = false;
+        // What led up to a drop is what the trace is for; get it on disk.
+        SignalingTrace.Recorder recorder = trace;
+        if (recorder != null) {
+            try {
+                recorder.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "signaling trace not flushed: " + e.getMessage());
+            }
+        }
+        if (!closing)
+            dispatcher.execute(this::scheduleReconnect);
     }
 
     @Override
@@ -357,14 +932,4 @@ public class WebSocketChannel extends WebSocketClient {
         Log.e(TAG, "onFailure " + ex.getMessage());
         ex.printStackTrace();
     }
-
-    private String randomString(Integer length) {
-        final String str = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        final Random rnd = new Random();
-        StringBuilder sb = new StringBuilder(length);
-        for (int i = 0; i < length; i++) {
-            sb.append(str.charAt(rnd.nextInt(str.length())));
-        }
-        return sb.toString();
-    }
 }
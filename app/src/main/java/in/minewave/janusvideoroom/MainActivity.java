@@ -11,16 +11,19 @@ import android.util.Log;
 
 import org.webrtc.EglBase;
 import org.webrtc.SurfaceViewRenderer;
+import in.minewave.janusvideoroom.Janus.ClientStartup;
 import in.minewave.janusvideoroom.Janus.PeerConnectionClient;
 import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionCameraParameters;
 import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
 import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionScreenShareParameters;
+import in.minewave.janusvideoroom.Janus.StartupTimings;
 
 public class MainActivity extends Activity {
     private static final String TAG = "MainActivity";
     private static final int CAPTURE_PERMISSION_REQUEST_CODE = 1;
 
-    private PeerConnectionClient peerConnectionClient;
+    private ClientStartup clientStartup;
+    private volatile PeerConnectionClient peerConnectionClient;
 
     private SurfaceViewRenderer localRender;
     private SurfaceViewRenderer remoteRender;
@@ -69,8 +72,21 @@ public class MainActivity extends Activity {
 //                    "H264", PeerConnectionParameters.VideoCapturerType.CAMERA_FRONT,
 //                    0, "opus", false);
 
-            peerConnectionClient = new PeerConnectionClient(this, rootEglBase.getEglBaseContext(),
+            clientStartup = PeerConnectionClient.startAsync(this, rootEglBase.getEglBaseContext(),
                     peerConnectionParameters,  localRender, remoteRender);
+            clientStartup.then(new ClientStartup.Callback() {
+                @Override
+                public void onReady(PeerConnectionClient client, StartupTimings timings) {
+                    Log.d(TAG, "Ready to publish: " + timings);
+                    peerConnectionClient = client;
+                }
+
+                @Override
+                public void onFailed(Exception e, StartupTimings timings) {
+                    Log.e(TAG, "Startup failed: " + timings);
+                    runOnUiThread(() -> alertBox(e.getMessage()));
+                }
+            });
         }
         catch (Exception e) {
             Log.e(TAG, e.getStackTrace().toString());
@@ -90,6 +106,10 @@ public class MainActivity extends Activity {
 
     @Override
     protected void onDestroy() {
+        if (clientStartup != null)
+            clientStartup.cancel();
+        if (peerConnectionClient != null)
+            peerConnectionClient.close();
         super.onDestroy();
     }
 }
@@ -0,0 +1,190 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureGovernorTest {
+    private static final long INTERVAL_MS = 2000;
+
+    private final List<String> formats = new ArrayList<>();
+    private int thermal = -1;
+    private long nowMs;
+    private long captured;
+    private long dropped;
+
+    private CaptureGovernor governor(CapturePolicy policy) {
+        return new CaptureGovernor(policy, (width, height, fps) -> formats.add(width + "x" + height + "@" + fps),
+                () -> thermal, null, 1280, 720, 30, INTERVAL_MS * 3 / 4);
+    }
+
+    private void sample(CaptureGovernor governor, double encodeMs, String limitation, long extraDrops) {
+        ConnectionStats stats = new ConnectionStats();
+        stats.publisher = true;
+        stats.framesPerSecond = governor.format().fps;
+        stats.encodeMsPerFrame = encodeMs;
+        stats.qualityLimitation = limitation;
+        sample(governor, stats, extraDrops);
+    }
+
+    // One stats interval of capturing at 30 fps, the source passing on the level's frame rate.
+    private void sample(CaptureGovernor governor, ConnectionStats stats, long extraDrops) {
+        nowMs += INTERVAL_MS;
+        long intervalFrames = 30 * INTERVAL_MS / 1000;
+        captured += intervalFrames;
+        dropped += intervalFrames - governor.format().fps * INTERVAL_MS / 1000 + extraDrops;
+        stats.timestampMs = nowMs;
+        governor.onSample(stats, captured, dropped);
+    }
+
+    @Test
+    public void ladderAlternatesResolutionAndFrameRate() {
+        CaptureGovernor.Level[] ladder = CaptureGovernor.ladder(1280, 720, 30);
+        List<String> steps = new ArrayList<>();
+        for (CaptureGovernor.Level level : ladder)
+            steps.add(level.toString());
+        assertEquals("[1280x720@30, 960x540@30, 960x540@20, 640x360@20, 640x360@15, 480x270@15]",
+                steps.toString());
+        // Nothing below 180 lines.
+        assertEquals(3, CaptureGovernor.ladder(320, 240, 30).length);
+    }
+
+    @Test
+    public void slowEncoderStepsDownAndRecovers() {
+        CaptureGovernor governor = governor(new DefaultCapturePolicy(2, 3));
+        sample(governor, 10, "none", 0);
+        // 30 ms a frame at 30 fps is 90% of the interval.
+        sample(governor, 30, "none", 0);
+        assertEquals(0, governor.level());
+        sample(governor, 30, "none", 0);
+        assertEquals(1, governor.level());
+        assertEquals("[960x540@30]", formats.toString());
+
+        // Skipped while the new format settles, then two more to step again.
+        sample(governor, 30, "none", 0);
+        sample(governor, 30, "none", 0);
+        assertEquals(1, governor.level());
+        sample(governor, 30, "none", 0);
+        assertEquals(2, governor.level());
+
+        sample(governor, 5, "none", 0);
+        for (int i = 0; i < 3; i++)
+            sample(governor, 5, "none", 0);
+        assertEquals(1, governor.level());
+        assertEquals("[960x540@30, 960x540@20, 960x540@30]", formats.toString());
+    }
+
+    @Test
+    public void inBetweenLoadHoldsTheLevel() {
+        CaptureGovernor governor = governor(new DefaultCapturePolicy(2, 2));
+        sample(governor, 10, "none", 0);
+        sample(governor, 30, "none", 0);
+        sample(governor, 30, "none", 0);
+        assertEquals(1, governor.level());
+        sample(governor, 20, "none", 0);
+        // 20 ms at 30 fps: neither overloaded nor healthy.
+        for (int i = 0; i < 10; i++) {
+            sample(governor, i % 2 == 0 ? 20 : 5, "none", 0);
+            assertEquals(1, governor.level());
+        }
+    }
+
+    @Test
+    public void cpuLimitationAndDropsCountAsOverload() {
+        CaptureGovernor governor = governor(new DefaultCapturePolicy(1, 10));
+        sample(governor, 5, "none", 0);
+        sample(governor, 5, "cpu", 0);
+        assertEquals(1, governor.level());
+        sample(governor, 5, "none", 0);
+        sample(governor, 5, "bandwidth", 0);
+        assertEquals(1, governor.level());
+        // 20 of 60 captured frames lost beyond those the level drops.
+        sample(governor, 5, "none", 20);
+        assertEquals(2, governor.level());
+        // At 20 fps the source drops a third of the frames by design.
+        sample(governor, 5, "none", 0);
+        sample(governor, 5, "none", 0);
+        assertEquals(2, governor.level());
+    }
+
+    @Test
+    public void thermalStatusOverridesTheEncoder() {
+        CaptureGovernor governor = governor(new DefaultCapturePolicy(2, 1));
+        sample(governor, 5, "none", 0);
+        thermal = DefaultCapturePolicy.THERMAL_SEVERE;
+        sample(governor, 5, "none", 0);
+        assertEquals(1, governor.level());
+        sample(governor, 5, "none", 0);
+        sample(governor, 5, "none", 0);
+        assertEquals(2, governor.level());
+
+        // Moderate keeps the level, light lets it recover.
+        thermal = 2;
+        for (int i = 0; i < 4; i++)
+            sample(governor, 5, "none", 0);
+        assertEquals(2, governor.level());
+        thermal = DefaultCapturePolicy.THERMAL_LIGHT;
+        sample(governor, 5, "none", 0);
+        assertEquals(1, governor.level());
+    }
+
+    @Test
+    public void simulcastEncodeTimeIsPerCapturedFrame() {
+        CaptureGovernor governor = governor(new DefaultCapturePolicy(2, 3));
+        StatsHistory history = new StatsHistory(1, 0, true, 4);
+        // Three layers encoding every captured frame at 4, 8 and 16 ms.
+        double[] layerMs = {4, 8, 16};
+        long[] layerFrames = new long[layerMs.length];
+        double[] layerSeconds = new double[layerMs.length];
+        for (int round = 0; round < 4; round++) {
+            // What StatsCollector.collect adds up from the three outbound-rtp entries.
+            history.begin();
+            history.seen = true;
+            for (int layer = 0; layer < layerMs.length; layer++) {
+                history.frames = Math.max(history.frames, layerFrames[layer]);
+                history.encodeSeconds += layerSeconds[layer];
+                layerFrames[layer] += 30 * INTERVAL_MS / 1000;
+                layerSeconds[layer] += layerMs[layer] * 30 * INTERVAL_MS / 1000 / 1000;
+            }
+            history.end(nowMs + INTERVAL_MS);
+            ConnectionStats stats = history.latest();
+            if (stats == null) {
+                nowMs += INTERVAL_MS;
+                continue;
+            }
+            // 28 ms for every captured frame, 84% of the interval at 30 fps, not 28 / 3.
+            assertEquals(28, stats.encodeMsPerFrame, 1e-6);
+            sample(governor, stats, 0);
+        }
+        assertEquals(1, governor.level());
+    }
+
+    @Test
+    public void policyIsPluggableAndClamped() {
+        List<CaptureLoad> loads = new ArrayList<>();
+        CaptureGovernor governor = governor(load -> {
+            loads.add(load);
+            return CapturePolicy.UP;
+        });
+        sample(governor, 5, "none", 0);
+        sample(governor, 5, "none", 0);
+        assertEquals(1, loads.size());
+        assertEquals(0, governor.level());
+        assertTrue(formats.isEmpty());
+
+        // A second room's sample of the same round counts once.
+        ConnectionStats stats = new ConnectionStats();
+        stats.publisher = true;
+        stats.timestampMs = nowMs + 100;
+        governor.onSample(stats, captured, dropped);
+        assertEquals(1, loads.size());
+
+        CaptureGovernor down = governor(load -> CapturePolicy.DOWN);
+        for (int i = 0; i < 20; i++)
+            sample(down, 5, "none", 0);
+        assertEquals(down.levels() - 1, down.level());
+    }
+}
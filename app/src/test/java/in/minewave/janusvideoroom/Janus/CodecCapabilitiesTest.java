@@ -0,0 +1,100 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CodecCapabilitiesTest {
+    private static final String AVC = "video/avc";
+    private static final String VP8 = "video/x-vnd.on2.vp8";
+
+    private static CodecCapabilities.Codec encoder(String name, String mimeType, boolean hardware) {
+        return new CodecCapabilities.Codec(name, mimeType, true, hardware, 1920, 1080, 60, 0, false);
+    }
+
+    private static CodecCapabilities.Codec decoder(String name, String mimeType, boolean hardware,
+                                                   int hdFps, int maxInstances) {
+        return new CodecCapabilities.Codec(name, mimeType, false, hardware, 1920, 1080, hdFps, maxInstances, false);
+    }
+
+    @Test
+    public void preferredCodecHasAHardwareEncoder() {
+        CodecCapabilities capabilities = new CodecCapabilities(Arrays.asList(
+                encoder("OMX.google.h264.encoder", AVC, false),
+                decoder("OMX.qcom.video.decoder.avc", AVC, true, 240, 16),
+                encoder("OMX.qcom.video.encoder.vp8", VP8, true)), 8);
+
+        // A hardware decoder alone does not make H264 the choice.
+        assertEquals("VP8", capabilities.preferredVideoCodec("H264"));
+        assertEquals("vp8", capabilities.preferredVideoCodec("vp8"));
+        assertEquals("VP8", capabilities.preferredVideoCodec("VP9"));
+        assertNull(capabilities.preferredVideoCodec(null));
+
+        CodecCapabilities software = new CodecCapabilities(Arrays.asList(
+                encoder("OMX.google.h264.encoder", AVC, false),
+                encoder("OMX.google.vp8.encoder", VP8, false)), 8);
+        assertEquals("H264", software.preferredVideoCodec("H264"));
+        assertEquals("AV1", software.preferredVideoCodec("AV1"));
+    }
+
+    @Test
+    public void hdDecodesFollowTheBestDecoder() {
+        // Hardware first, even where software claims more.
+        CodecCapabilities capabilities = new CodecCapabilities(Arrays.asList(
+                decoder("OMX.google.h264.decoder", AVC, false, 400, 0),
+                decoder("OMX.qcom.video.decoder.avc", AVC, true, 120, 0),
+                decoder("OMX.qcom.video.decoder.avc.low", AVC, true, 60, 0)), 8);
+        assertEquals(4, capabilities.maxConcurrentHdDecodes("H264"));
+        // No VP8 decoder at all, or one without 720p.
+        assertEquals(1, capabilities.maxConcurrentHdDecodes("VP8"));
+        assertEquals(1, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.qcom.video.decoder.vp8", VP8, true, 0, 4)), 8).maxConcurrentHdDecodes("VP8"));
+        assertEquals(1, capabilities.maxConcurrentHdDecodes("AV1"));
+    }
+
+    @Test
+    public void hdDecodesAreCappedByInstancesAndCores() {
+        assertEquals(3, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.qcom.video.decoder.avc", AVC, true, 240, 3)), 8).maxConcurrentHdDecodes("H264"));
+        // Software: half the cores.
+        assertEquals(2, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.google.h264.decoder", AVC, false, 240, 0)), 4).maxConcurrentHdDecodes("H264"));
+        assertEquals(1, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.google.h264.decoder", AVC, false, 240, 16)), 2).maxConcurrentHdDecodes("H264"));
+        // Hardware ignores the cores.
+        assertEquals(8, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.qcom.video.decoder.avc", AVC, true, 240, 0)), 2).maxConcurrentHdDecodes("H264"));
+        // Below 30 fps at 720p still allows one.
+        assertEquals(1, new CodecCapabilities(Arrays.asList(
+                decoder("OMX.qcom.video.decoder.avc", AVC, true, 24, 0)), 8).maxConcurrentHdDecodes("H264"));
+    }
+
+    @Test
+    public void jsonRoundTrips() {
+        CodecCapabilities capabilities = new CodecCapabilities(Arrays.asList(
+                new CodecCapabilities.Codec("OMX.qcom.video.encoder.avc", AVC, true, true, 4096, 2160, 120, 16, true),
+                decoder("OMX.google.vp8.decoder", VP8, false, 90, 0)), 6);
+
+        CodecCapabilities restored = CodecCapabilities.fromJson(capabilities.toJson());
+        assertNotNull(restored);
+        assertEquals(capabilities.toJson(), restored.toJson());
+        assertEquals(capabilities.toString(), restored.toString());
+        CodecCapabilities.Codec codec = restored.codecs.get(0);
+        assertEquals("OMX.qcom.video.encoder.avc", codec.name);
+        assertTrue(codec.encoder);
+        assertTrue(codec.hardware);
+        assertEquals(4096, codec.maxWidth);
+        assertEquals(2160, codec.maxHeight);
+        assertEquals(16, codec.maxInstances);
+        assertTrue(codec.highProfile);
+        assertTrue(restored.hasHighProfileH264Encoder());
+        // The core count survives too: 90 / 30 capped at 6 / 2.
+        assertEquals(3, restored.maxConcurrentHdDecodes("VP8"));
+
+        assertNull(CodecCapabilities.fromJson("not json"));
+        assertNull(CodecCapabilities.fromJson("{\"cores\":4}"));
+        assertNull(CodecCapabilities.fromJson("{\"cores\":4,\"codecs\":[{\"name\":\"x\"}]}"));
+    }
+}
@@ -0,0 +1,125 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JanusMessageDecoderTest {
+    private final JanusMessageDecoder decoder = new JanusMessageDecoder();
+
+    private JanusMessage decode(String json) {
+        return decoder.decode(json.replace('\'', '"'));
+    }
+
+    @Test
+    public void jsepIsUnescapedOnDemand() {
+        long tid = new TransactionIdGenerator().next();
+        JanusMessage message = decode("{'janus':'event','session_id':1,'sender':2,'transaction':'"
+                + TransactionIdGenerator.toString(tid) + "','plugindata':{'plugin':'janus.plugin.videoroom',"
+                + "'data':{'videoroom':'event','room':1234,'configured':'ok'}},"
+                + "'jsep':{'type':'answer','sdp':'v=0\\r\\no=- 1 2 IN IP4 \\\"x\\\"\\r\\ns=\\u00e9\\/\\\\'}}");
+
+        assertEquals(JanusMessage.Kind.EVENT, message.kind);
+        assertEquals(tid, message.transaction);
+        assertEquals(1, message.sessionId);
+        assertEquals(2, message.sender);
+        JanusEvent.Jsep jsep = message.event(JanusEvent.Jsep.class);
+        assertEquals("answer", jsep.type());
+        assertEquals("v=0\r\no=- 1 2 IN IP4 \"x\"\r\ns=\u00e9/\\", jsep.sdp());
+        assertEquals(1, message.events.size());
+    }
+
+    @Test
+    public void unknownAndNestedFieldsAreSkippedInAnyOrder() {
+        JanusMessage message = decode("{'plugindata':{'data':{'extra':{'a':[1,{'b':'}]'}]},"
+                + "'private_id':5,'id':77,'publishers':[{'display':'Bob','audio_codec':'opus','id':8},"
+                + "{'streams':[{'mid':'0'}]}],'room':1234,'videoroom':'joined'},'plugin':'janus.plugin.videoroom'},"
+                + "'unknown':[true,false,null,-1.5e3],'sender':2,'janus':'event'}");
+
+        assertEquals(JanusMessage.Kind.EVENT, message.kind);
+        assertEquals(0, message.transaction);
+        assertEquals(2, message.sender);
+        JanusEvent.Joined joined = message.event(JanusEvent.Joined.class);
+        assertEquals(1234, joined.room);
+        assertEquals(77, joined.feedId);
+        assertEquals(5, joined.privateId);
+        // The entry without an id is dropped.
+        JanusEvent.Publisher[] publishers = message.event(JanusEvent.Publishers.class).publishers;
+        assertEquals(1, publishers.length);
+        assertEquals(8, publishers[0].feedId);
+        assertEquals("Bob", publishers[0].display);
+        assertNull(message.event(JanusEvent.Jsep.class));
+
+        assertEquals(JanusMessage.Kind.UNKNOWN, decode("{'janus':'trickle','candidate':{'completed':true}}").kind);
+    }
+
+    @Test
+    public void missingOrNullJsepCarriesNoDescription() {
+        assertNull(decode("{'janus':'event','sender':2,'plugindata':{'data':{'videoroom':'event'}}}")
+                .event(JanusEvent.Jsep.class));
+        JanusMessage message = decode("{'janus':'event','jsep':null,'sender':2}");
+        assertNull(message.event(JanusEvent.Jsep.class));
+        assertEquals(2, message.sender);
+    }
+
+    @Test
+    public void leavingOkIsNotAFeed() {
+        assertNull(decode("{'janus':'event','plugindata':{'data':{'videoroom':'event','leaving':'ok'}}}")
+                .event(JanusEvent.Leaving.class));
+        assertEquals(42, decode("{'janus':'event','plugindata':{'data':{'videoroom':'event','leaving':42}}}")
+                .event(JanusEvent.Leaving.class).feedId);
+        // String ids, as Janus sends them with string_ids enabled.
+        assertEquals(42, decode("{'janus':'event','plugindata':{'data':{'videoroom':'event','leaving':'42'}}}")
+                .event(JanusEvent.Leaving.class).feedId);
+    }
+
+    @Test
+    public void idsAboveLongMaxKeepTheirBits() {
+        JanusMessage message = decode("{'janus':'success','session_id':18446744073709551615,"
+                + "'sender':9223372036854775808,'data':{'id':'12345678901234567890'}}");
+        assertEquals(-1L, message.sessionId);
+        assertEquals(Long.MIN_VALUE, message.sender);
+        assertEquals("12345678901234567890",
+                Long.toUnsignedString(message.event(JanusEvent.Success.class).dataId));
+    }
+
+    @Test
+    public void errorsAreDecoded() {
+        JanusMessage janusError = decode("{'janus':'error','transaction':'x','error':{'code':458,'reason':'No such session'}}");
+        JanusEvent.Error error = janusError.event(JanusEvent.Error.class);
+        assertEquals(458, error.code);
+        assertEquals("No such session", error.reason);
+        // Not one of ours.
+        assertEquals(0, janusError.transaction);
+
+        JanusMessage pluginError = decode("{'janus':'event','sender':2,'plugindata':{'plugin':'janus.plugin.videoroom',"
+                + "'data':{'videoroom':'event','error_code':426,'error':'No such room'}}}");
+        error = pluginError.event(JanusEvent.Error.class);
+        assertEquals(426, error.code);
+        assertEquals("No such room", error.reason);
+        assertNull(decode("{'janus':'event','plugindata':{'data':{'videoroom':'event','error_code':0}}}")
+                .event(JanusEvent.Error.class));
+    }
+
+    @Test
+    public void malformedFramesThrowIllegalArgument() {
+        String[] frames = {
+                "",
+                "[]",
+                "{'janus':'event'",
+                "{'janus' 'event'}",
+                "{'janus':'eve",
+                "{'jsep':{'type':'offer'}",
+                "{'plugindata':{'data':{'videoroom':'event','error':'No such\\u00'}}}",
+                "{'plugindata':{'data':{'publishers':[{'id':1}{'id':2}]}}}",
+        };
+        for (String frame : frames) {
+            try {
+                decode(frame);
+                fail("Decoded " + frame);
+            } catch (IllegalArgumentException e) {
+                // What WebSocketChannel.dispatchMessage catches.
+            }
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * In-process stand-in for Janus with the VideoRoom plugin, speaking janus-protocol on a local
+ * port. It covers what WebSocketChannel sends: create, attach, claim, keepalive, trickle and
+ * detach, and the join (publisher, listener and multistream subscriber), configure, start,
+ * subscribe and unsubscribe messages. Rooms are created on first join, jseps are answered with
+ * canned SDP, and publishers are announced once they configure, as Janus does.
+ *
+ * Every reply and notification is sent serverDelayMs after its request, in order, standing in
+ * for the network and Janus together. Requests are handled one at a time.
+ */
+class JanusStandIn extends WebSocketServer {
+    private static final String VIDEOROOM_PLUGIN = "janus.plugin.videoroom";
+
+    // Janus core errors.
+    private static final int ERROR_UNKNOWN_REQUEST = 453;
+    private static final int ERROR_INVALID_JSON = 454;
+    private static final int ERROR_SESSION_NOT_FOUND = 458;
+    private static final int ERROR_HANDLE_NOT_FOUND = 459;
+    private static final int ERROR_PLUGIN_NOT_FOUND = 460;
+    // VideoRoom plugin errors.
+    private static final int VIDEOROOM_INVALID_REQUEST = 423;
+    private static final int VIDEOROOM_JOIN_FIRST = 424;
+    private static final int VIDEOROOM_ALREADY_JOINED = 425;
+    private static final int VIDEOROOM_NO_SUCH_FEED = 428;
+
+    static final String OFFER_SDP = "v=0\r\n"
+            + "o=- 1582146282733211 1 IN IP4 127.0.0.1\r\n"
+            + "s=VideoRoom 1234\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE 0 1\r\n"
+            + "a=msid-semantic: WMS janus\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111\r\n"
+            + "c=IN IP4 127.0.0.1\r\n"
+            + "a=sendonly\r\n"
+            + "a=mid:0\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=ice-ufrag:Xk3J\r\n"
+            + "a=ice-pwd:h2FdXx9cYq0lN7kzGd1sUe\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 D2:B9:31:8F:DF:24:D8:0E:ED:D2:EF:25:9E:AF:6F:B8:34:AE:53:9C:E6:F3:8F:F2:64:15:FA:E8:7F:53:2D:38\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=ssrc:3181528281 cname:janus\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97\r\n"
+            + "c=IN IP4 127.0.0.1\r\n"
+            + "a=sendonly\r\n"
+            + "a=mid:1\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=ice-ufrag:Xk3J\r\n"
+            + "a=ice-pwd:h2FdXx9cYq0lN7kzGd1sUe\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 D2:B9:31:8F:DF:24:D8:0E:ED:D2:EF:25:9E:AF:6F:B8:34:AE:53:9C:E6:F3:8F:F2:64:15:FA:E8:7F:53:2D:38\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 ccm fir\r\n"
+            + "a=rtcp-fb:96 nack\r\n"
+            + "a=rtcp-fb:96 nack pli\r\n"
+            + "a=rtcp-fb:96 goog-remb\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + "a=ssrc-group:FID 2350318434 1467902511\r\n"
+            + "a=ssrc:2350318434 cname:janus\r\n"
+            + "a=ssrc:1467902511 cname:janus\r\n"
+            + "a=candidate:1 1 udp 2015363327 127.0.0.1 40000 typ host\r\n"
+            + "a=end-of-candidates\r\n";
+
+    static final String ANSWER_SDP = OFFER_SDP
+            .replace("a=sendonly", "a=recvonly")
+            .replace("a=setup:actpass", "a=setup:active");
+
+    private final long serverDelayMs;
+    private final long sessionTimeoutMs;
+    private final ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Map<Long, Session> sessions = new HashMap<>();
+    private final Map<Long, Room> rooms = new HashMap<>();
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong messagesOut = new AtomicLong();
+    private final AtomicLong publishersConfigured = new AtomicLong();
+    private final AtomicLong subscribersStarted = new AtomicLong();
+
+    private static class Session {
+        final long id;
+        final Map<Long, Handle> handles = new HashMap<>();
+        WebSocket conn;
+
+        Session(long id, WebSocket conn) {
+            this.id = id;
+            this.conn = conn;
+        }
+    }
+
+    private static class Handle {
+        final long id;
+        final Session session;
+        Room room;
+        // Publisher side.
+        long feedId;
+        String display;
+        boolean publishing;
+        // Subscriber side: subscribed feed to its first mid, audio then video.
+        boolean subscriber;
+        final LinkedHashMap<Long, Integer> feeds = new LinkedHashMap<>();
+        int nextMid;
+
+        Handle(long id, Session session) {
+            this.id = id;
+            this.session = session;
+        }
+    }
+
+    private static class Room {
+        final long id;
+        final LinkedHashMap<Long, Handle> participants = new LinkedHashMap<>();
+
+        Room(long id) {
+            this.id = id;
+        }
+    }
+
+    // sessionTimeoutMs is how long a session outlives its websocket and can still be claimed.
+    JanusStandIn(long serverDelayMs, long sessionTimeoutMs) {
+        super(new InetSocketAddress("127.0.0.1", 0), Collections.<Draft>singletonList(
+                new Draft_6455(Collections.<IExtension>emptyList(),
+                        Collections.<IProtocol>singletonList(new Protocol("janus-protocol")))));
+        this.serverDelayMs = serverDelayMs;
+        this.sessionTimeoutMs = sessionTimeoutMs;
+        setReuseAddr(true);
+    }
+
+    void startBlocking() throws InterruptedException {
+        start();
+        if (!started.await(5, TimeUnit.SECONDS))
+            throw new IllegalStateException("Janus stand-in did not start");
+    }
+
+    void shutdown() throws InterruptedException {
+        stop(1000);
+        synchronized (this) {
+            replies.shutdownNow();
+        }
+    }
+
+    String url() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    long messagesIn() {
+        return messagesIn.get();
+    }
+
+    long messagesOut() {
+        return messagesOut.get();
+    }
+
+    long publishersConfigured() {
+        return publishersConfigured.get();
+    }
+
+    long subscribersStarted() {
+        return subscribersStarted.get();
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        messagesIn.incrementAndGet();
+        synchronized (this) {
+            try {
+                handleRequest(conn, new JSONObject(message));
+            } catch (JSONException e) {
+                try {
+                    sendError(conn, null, ERROR_INVALID_JSON, "JSON error: " + e.getMessage());
+                } catch (JSONException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        synchronized (this) {
+            if (replies.isShutdown())
+                return;
+            for (final Session session : sessions.values()) {
+                if (session.conn != conn)
+                    continue;
+                session.conn = null;
+                replies.schedule(() -> {
+                    synchronized (JanusStandIn.this) {
+                        if (session.conn == null && sessions.get(session.id) == session)
+                            destroySession(session);
+                    }
+                }, sessionTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        ex.printStackTrace();
+    }
+
+    private void handleRequest(WebSocket conn, JSONObject request) throws JSONException {
+        String janus = request.optString("janus");
+        String transaction = request.optString("transaction", null);
+        if ("create".equals(janus)) {
+            long id = newId();
+            sessions.put(id, new Session(id, conn));
+            sendSuccess(conn, transaction, 0, id);
+            return;
+        }
+        Session session = sessions.get(request.optLong("session_id"));
+        if (session == null) {
+            sendError(conn, transaction, ERROR_SESSION_NOT_FOUND, "No such session " + request.optLong("session_id"));
+            return;
+        }
+        if ("claim".equals(janus)) {
+            session.conn = conn;
+            sendSuccess(conn, transaction, session.id, 0);
+            return;
+        }
+        if ("keepalive".equals(janus)) {
+            sendAck(conn, session, transaction);
+            return;
+        }
+        if ("attach".equals(janus)) {
+            if (!VIDEOROOM_PLUGIN.equals(request.optString("plugin"))) {
+                sendError(conn, transaction, ERROR_PLUGIN_NOT_FOUND, "No such plugin " + request.optString("plugin"));
+                return;
+            }
+            long id = newId();
+            session.handles.put(id, new Handle(id, session));
+            sendSuccess(conn, transaction, session.id, id);
+            return;
+        }
+        Handle handle = session.handles.get(request.optLong("handle_id"));
+        if (handle == null) {
+            sendError(conn, transaction, ERROR_HANDLE_NOT_FOUND, "No such handle " + request.optLong("handle_id"));
+            return;
+        }
+        switch (janus) {
+            case "trickle":
+                sendAck(conn, session, transaction);
+                break;
+            case "detach":
+                session.handles.remove(handle.id);
+                leave(handle);
+                sendSuccess(conn, transaction, session.id, 0);
+                break;
+            case "message":
+                sendAck(conn, session, transaction);
+                handleMessage(handle, transaction, request.optJSONObject("body"), request.optJSONObject("jsep"));
+                break;
+            default:
+                sendError(conn, transaction, ERROR_UNKNOWN_REQUEST, "Unknown request '" + janus + "'");
+                break;
+        }
+    }
+
+    private void handleMessage(Handle handle, String transaction, JSONObject body, JSONObject jsep) throws JSONException {
+        String request = body == null ? "" : body.optString("request");
+        switch (request) {
+            case "join":
+                if (handle.room != null)
+                    sendPluginError(handle, transaction, VIDEOROOM_ALREADY_JOINED, "Already in as a participant");
+                else if ("publisher".equals(body.optString("ptype")))
+                    joinPublisher(handle, transaction, body);
+                else
+                    joinSubscriber(handle, transaction, body);
+                break;
+            case "configure":
+                if (handle.room == null)
+                    sendPluginError(handle, transaction, VIDEOROOM_JOIN_FIRST, "Join first");
+                else if (handle.subscriber)
+                    configureSubscriber(handle, transaction, body);
+                else
+                    configurePublisher(handle, transaction, jsep);
+                break;
+            case "start":
+                if (!handle.subscriber) {
+                    sendPluginError(handle, transaction, VIDEOROOM_JOIN_FIRST, "Join first");
+                } else {
+                    subscribersStarted.incrementAndGet();
+                    sendEvent(handle, transaction, videoroom("event", handle.room).put("started", "ok"), null, null);
+                }
+                break;
+            case "subscribe":
+            case "unsubscribe":
+                if (!handle.subscriber) {
+                    sendPluginError(handle, transaction, VIDEOROOM_JOIN_FIRST, "Join first");
+                    break;
+                }
+                if (!subscribe(handle, transaction, body.optJSONArray("streams"), "subscribe".equals(request)))
+                    break;
+                sendEvent(handle, transaction, videoroom("updated", handle.room).put("streams", streams(handle)),
+                        "offer", OFFER_SDP);
+                break;
+            default:
+                sendPluginError(handle, transaction, VIDEOROOM_INVALID_REQUEST, "Unknown request '" + request + "'");
+                break;
+        }
+    }
+
+    private void joinPublisher(Handle handle, String transaction, JSONObject body) throws JSONException {
+        Room room = room(body.optLong("room"));
+        handle.room = room;
+        handle.feedId = newId();
+        handle.display = body.optString("display");
+        room.participants.put(handle.feedId, handle);
+        sendEvent(handle, transaction, videoroom("joined", room)
+                .put("id", handle.feedId)
+                .put("private_id", newId())
+                .put("publishers", publishers(room, handle)), null, null);
+    }
+
+    private void joinSubscriber(Handle handle, String transaction, JSONObject body) throws JSONException {
+        Room room = room(body.optLong("room"));
+        JSONArray streams = body.optJSONArray("streams");
+        JSONObject data;
+        handle.room = room;
+        handle.subscriber = true;
+        if (streams != null) {
+            if (!subscribe(handle, transaction, streams, true)) {
+                handle.room = null;
+                handle.subscriber = false;
+                return;
+            }
+            data = videoroom("attached", room).put("streams", streams(handle));
+        } else {
+            long feedId = body.optLong("feed");
+            Handle feed = room.participants.get(feedId);
+            if (feed == null || !feed.publishing) {
+                handle.room = null;
+                handle.subscriber = false;
+                sendPluginError(handle, transaction, VIDEOROOM_NO_SUCH_FEED, "No such feed (" + feedId + ")");
+                return;
+            }
+            addFeed(handle, feedId);
+            data = videoroom("attached", room).put("id", feedId).put("display", feed.display);
+        }
+        sendEvent(handle, transaction, data, "offer", OFFER_SDP);
+    }
+
+    // Multistream subscribe and unsubscribe; false once an error has been sent.
+    private boolean subscribe(Handle handle, String transaction, JSONArray streams, boolean add) throws JSONException {
+        if (streams == null) {
+            sendPluginError(handle, transaction, VIDEOROOM_INVALID_REQUEST, "Missing element (streams)");
+            return false;
+        }
+        for (int i = 0; i < streams.length(); i++) {
+            long feedId = streams.getJSONObject(i).optLong("feed");
+            if (!add) {
+                handle.feeds.remove(feedId);
+                continue;
+            }
+            Handle feed = handle.room.participants.get(feedId);
+            if (feed == null || !feed.publishing) {
+                sendPluginError(handle, transaction, VIDEOROOM_NO_SUCH_FEED, "No such feed (" + feedId + ")");
+                return false;
+            }
+            addFeed(handle, feedId);
+        }
+        return true;
+    }
+
+    private void configurePublisher(Handle handle, String transaction, JSONObject jsep) throws JSONException {
+        JSONObject data = videoroom("event", handle.room).put("configured", "ok");
+        if (jsep == null) {
+            sendEvent(handle, transaction, data, null, null);
+            return;
+        }
+        sendEvent(handle, transaction, data, "answer", ANSWER_SDP);
+        if (handle.publishing)
+            return;
+        handle.publishing = true;
+        publishersConfigured.incrementAndGet();
+        JSONArray publisher = new JSONArray().put(new JSONObject()
+                .put("id", handle.feedId)
+                .put("display", handle.display));
+        for (Handle other : handle.room.participants.values()) {
+            if (other != handle)
+                sendEvent(other, null, videoroom("event", handle.room).put("publishers", publisher), null, null);
+        }
+    }
+
+    // Substream changes are acknowledged as is; an ICE restart gets a fresh offer.
+    private void configureSubscriber(Handle handle, String transaction, JSONObject body) throws JSONException {
+        JSONObject data = videoroom("event", handle.room).put("configured", "ok");
+        if (body.optBoolean("restart"))
+            sendEvent(handle, transaction, data, "offer", OFFER_SDP);
+        else
+            sendEvent(handle, transaction, data, null, null);
+    }
+
+    private void leave(Handle handle) throws JSONException {
+        Room room = handle.room;
+        handle.room = null;
+        if (room == null || handle.subscriber || room.participants.remove(handle.feedId) == null)
+            return;
+        if (handle.publishing) {
+            for (Handle other : room.participants.values())
+                sendEvent(other, null, videoroom("event", room).put("leaving", handle.feedId), null, null);
+        }
+        if (room.participants.isEmpty())
+            rooms.remove(room.id);
+    }
+
+    private void destroySession(Session session) {
+        sessions.remove(session.id);
+        for (Iterator<Handle> it = session.handles.values().iterator(); it.hasNext(); ) {
+            Handle handle = it.next();
+            it.remove();
+            try {
+                leave(handle);
+            } catch (JSONException ignored) {
+            }
+        }
+    }
+
+    private Room room(long id) {
+        Room room = rooms.get(id);
+        if (room == null) {
+            room = new Room(id);
+            rooms.put(id, room);
+        }
+        return room;
+    }
+
+    private void addFeed(Handle handle, long feedId) {
+        if (handle.feeds.containsKey(feedId))
+            return;
+        handle.feeds.put(feedId, handle.nextMid);
+        handle.nextMid += 2;
+    }
+
+    private static JSONArray publishers(Room room, Handle except) throws JSONException {
+        JSONArray publishers = new JSONArray();
+        for (Handle participant : room.participants.values()) {
+            if (participant != except && participant.publishing)
+                publishers.put(new JSONObject()
+                        .put("id", participant.feedId)
+                        .put("display", participant.display));
+        }
+        return publishers;
+    }
+
+    private static JSONArray streams(Handle handle) throws JSONException {
+        JSONArray streams = new JSONArray();
+        for (Map.Entry<Long, Integer> feed : handle.feeds.entrySet()) {
+            int mid = feed.getValue();
+            streams.put(stream(mid, "audio", feed.getKey()));
+            streams.put(stream(mid + 1, "video", feed.getKey()));
+        }
+        return streams;
+    }
+
+    private static JSONObject stream(int mid, String type, long feedId) throws JSONException {
+        return new JSONObject()
+                .put("mid", String.valueOf(mid))
+                .put("type", type)
+                .put("feed_id", feedId)
+                .put("active", true);
+    }
+
+    private static JSONObject videoroom(String videoroom, Room room) throws JSONException {
+        return new JSONObject().put("videoroom", videoroom).put("room", room.id);
+    }
+
+    // Janus ids are random and fit in 53 bits, so they survive a JavaScript number.
+    private static long newId() {
+        return ThreadLocalRandom.current().nextLong(1, 1L << 53);
+    }
+
+    private void sendSuccess(WebSocket conn, String transaction, long sessionId, long dataId) throws JSONException {
+        JSONObject reply = new JSONObject().put("janus", "success").put("transaction", transaction);
+        if (sessionId != 0)
+            reply.put("session_id", sessionId);
+        if (dataId != 0)
+            reply.put("data", new JSONObject().put("id", dataId));
+        send(conn, reply);
+    }
+
+    private void sendAck(WebSocket conn, Session session, String transaction) throws JSONException {
+        send(conn, new JSONObject()
+                .put("janus", "ack")
+                .put("session_id", session.id)
+                .put("transaction", transaction));
+    }
+
+    private void sendError(WebSocket conn, String transaction, int code, String reason) throws JSONException {
+        send(conn, new JSONObject()
+                .put("janus", "error")
+                .put("transaction", transaction)
+                .put("error", new JSONObject().put("code", code).put("reason", reason)));
+    }
+
+    private void sendPluginError(Handle handle, String transaction, int code, String reason) throws JSONException {
+        sendEvent(handle, transaction, new JSONObject()
+                .put("videoroom", "event")
+                .put("error_code", code)
+                .put("error", reason), null, null);
+    }
+
+    // A videoroom event to the handle's session, a reply when transaction is set.
+    private void sendEvent(Handle handle, String transaction, JSONObject data, String jsepType, String sdp)
+            throws JSONException {
+        JSONObject event = new JSONObject()
+                .put("janus", "event")
+                .put("session_id", handle.session.id)
+                .put("sender", handle.id)
+                .put("plugindata", new JSONObject().put("plugin", VIDEOROOM_PLUGIN).put("data", data));
+        if (transaction != null)
+            event.put("transaction", transaction);
+        if (sdp != null)
+            event.put("jsep", new JSONObject().put("type", jsepType).put("sdp", sdp));
+        send(handle.session.conn, event);
+    }
+
+    private void send(final WebSocket conn, JSONObject message) {
+        if (conn == null || replies.isShutdown())
+            return;
+        final String frame = message.toString();
+        replies.schedule(() -> {
+            try {
+                conn.send(frame);
+                messagesOut.incrementAndGet();
+            } catch (WebsocketNotConnectedException ignored) {
+                // Closed in the meantime, as a dropped reply would be.
+            }
+        }, serverDelayMs, TimeUnit.MILLISECONDS);
+    }
+}
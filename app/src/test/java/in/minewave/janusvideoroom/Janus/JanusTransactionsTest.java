@@ -0,0 +1,156 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JanusTransactionsTest {
+    private final JanusMessageDecoder decoder = new JanusMessageDecoder();
+    private final TransactionIdGenerator ids = new TransactionIdGenerator();
+    private long nowMs;
+    private final JanusTransactions transactions = new JanusTransactions(() -> nowMs, 4);
+
+    private final List<JanusMessage> completed = new ArrayList<>();
+    private final List<JanusEvent.Error> failed = new ArrayList<>();
+
+    private JanusTransactions.TransactionFuture register(JanusTransactions.RequestType type, long tid) {
+        return transactions.register(type, tid).then(completed::add, failed::add);
+    }
+
+    private JanusMessage message(String json, long tid) {
+        return decoder.decode(json.replace("TID", TransactionIdGenerator.toString(tid)));
+    }
+
+    private JanusMessage ack(long tid) {
+        return message("{\"janus\":\"ack\",\"session_id\":1,\"transaction\":\"TID\"}", tid);
+    }
+
+    @Test
+    public void ackTypesCompleteOnAck() {
+        long tid = ids.next();
+        JanusTransactions.TransactionFuture future = register(JanusTransactions.RequestType.TRICKLE, tid);
+        assertTrue(transactions.processTransaction(ack(tid)));
+
+        assertTrue(future.isDone());
+        assertFalse(future.isFailed());
+        assertEquals(1, completed.size());
+        assertEquals(JanusMessage.Kind.ACK, completed.get(0).kind);
+        assertEquals(0, transactions.pendingCount());
+        assertEquals(1, transactions.completedCount(JanusTransactions.RequestType.TRICKLE));
+    }
+
+    @Test
+    public void eventTypesWaitForThePluginEvent() {
+        long join = ids.next();
+        JanusTransactions.TransactionFuture future = register(JanusTransactions.RequestType.JOIN, join);
+        nowMs = 10000;
+        assertTrue(transactions.processTransaction(ack(join)));
+        assertFalse(future.isDone());
+
+        // The ack moved the deadline to 25 s.
+        nowMs = 20000;
+        assertEquals(0, transactions.sweep(nowMs));
+        JanusMessage joined = message("{\"janus\":\"event\",\"session_id\":1,\"sender\":2,\"transaction\":\"TID\","
+                + "\"plugindata\":{\"plugin\":\"janus.plugin.videoroom\",\"data\":{\"videoroom\":\"joined\","
+                + "\"room\":1234,\"id\":77,\"private_id\":5}}}", join);
+        // Still routed, so the joined event reaches the handle.
+        assertFalse(transactions.processTransaction(joined));
+        assertTrue(future.isDone());
+        assertSame(joined, completed.get(0));
+
+        long configure = ids.next();
+        future = register(JanusTransactions.RequestType.CONFIGURE, configure);
+        transactions.processTransaction(ack(configure));
+        assertFalse(transactions.processTransaction(message("{\"janus\":\"event\",\"sender\":2,\"transaction\":\"TID\","
+                + "\"plugindata\":{\"data\":{\"videoroom\":\"event\",\"error_code\":428,"
+                + "\"error\":\"No such feed\"}}}", configure)));
+        assertTrue(future.isFailed());
+        assertEquals(428, failed.get(0).code);
+        assertEquals("No such feed", failed.get(0).reason);
+        assertEquals(0, transactions.pendingCount());
+    }
+
+    @Test
+    public void sweepExpiresOnlyWhatIsDue() {
+        long trickle = ids.next();
+        long join = ids.next();
+        register(JanusTransactions.RequestType.TRICKLE, trickle);
+        register(JanusTransactions.RequestType.JOIN, join);
+        nowMs = 5000;
+        long late = ids.next();
+        register(JanusTransactions.RequestType.TRICKLE, late);
+
+        assertEquals(0, transactions.sweep(9999));
+        assertEquals(1, transactions.sweep(10000));
+        assertFalse(transactions.isPending(trickle));
+        assertTrue(transactions.isPending(join));
+        assertTrue(transactions.isPending(late));
+        assertEquals(JanusTransactions.ERROR_TIMEOUT, failed.get(0).code);
+
+        assertEquals(2, transactions.sweep(15000));
+        assertEquals(3, failed.size());
+        assertEquals(0, transactions.pendingCount());
+        assertEquals(0, transactions.sweep(60000));
+    }
+
+    @Test
+    public void fullTableRejectsUntilSomethingExpires() {
+        for (int i = 0; i < 4; i++)
+            register(JanusTransactions.RequestType.TRICKLE, ids.next());
+        JanusTransactions.TransactionFuture rejected = register(JanusTransactions.RequestType.JOIN, ids.next());
+        assertTrue(rejected.isFailed());
+        assertEquals(JanusTransactions.ERROR_TABLE_FULL, failed.get(0).code);
+        assertEquals(4, transactions.pendingCount());
+
+        // Registering sweeps the expired entries first.
+        nowMs = 10000;
+        long tid = ids.next();
+        JanusTransactions.TransactionFuture admitted = register(JanusTransactions.RequestType.JOIN, tid);
+        assertFalse(admitted.isDone());
+        assertTrue(transactions.isPending(tid));
+        assertEquals(1, transactions.pendingCount());
+    }
+
+    @Test
+    public void cancelAllFailsEverything() {
+        register(JanusTransactions.RequestType.CREATE, ids.next());
+        register(JanusTransactions.RequestType.JOIN, ids.next());
+        transactions.cancelAll("Channel closed");
+
+        assertEquals(2, failed.size());
+        for (JanusEvent.Error error : failed) {
+            assertEquals(JanusTransactions.ERROR_CANCELLED, error.code);
+            assertEquals("Channel closed", error.reason);
+        }
+        assertEquals(0, transactions.pendingCount());
+        transactions.cancelAll("again");
+        assertEquals(2, failed.size());
+    }
+
+    @Test
+    public void callbacksRunExactlyOnce() {
+        long tid = ids.next();
+        JanusTransactions.TransactionFuture before = register(JanusTransactions.RequestType.CREATE, tid);
+        JanusMessage success = message("{\"janus\":\"success\",\"transaction\":\"TID\",\"data\":{\"id\":9}}", tid);
+        transactions.processTransaction(success);
+        transactions.processTransaction(success);
+        transactions.sweep(60000);
+        transactions.cancelAll("closed");
+        assertEquals(1, completed.size());
+        assertEquals(9, completed.get(0).event(JanusEvent.Success.class).dataId);
+
+        // Registered after completion: delivered right away, and not again.
+        List<JanusMessage> late = new ArrayList<>();
+        before.then(late::add, failed::add);
+        assertEquals(1, late.size());
+        assertSame(success, late.get(0));
+        transactions.processTransaction(success);
+        transactions.cancelAll("closed");
+        assertEquals(1, late.size());
+        assertEquals(1, completed.size());
+        assertTrue(failed.isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/*
+ * Against offers shaped like the ones webrtc 1.0.30039 creates on Android: offer-plan-b.sdp from a
+ * publisher with the hardware H264 factories, offer-simulcast.sdp from a Unified Plan publisher
+ * with three simulcast layers.
+ */
+public class SdpProcessorTest {
+    @Test
+    public void configuredCodecsGoFirst() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        String sdp = new SdpProcessor("H264", "opus", 0, false, false).process(offer, true);
+
+        // Constrained baseline ahead of High, everything else kept in its order.
+        assertEquals("m=video 9 UDP/TLS/RTP/SAVPF 127 100 96 97 98 99 101 123 125 122 124", line(sdp, "m=video"));
+        assertEquals(line(offer, "m=audio"), line(sdp, "m=audio"));
+        List<String> before = new ArrayList<>(Arrays.asList(offer.split("\r\n")));
+        List<String> after = new ArrayList<>(Arrays.asList(sdp.split("\r\n")));
+        before.remove(line(offer, "m=video"));
+        after.remove(line(sdp, "m=video"));
+        assertEquals(before, after);
+    }
+
+    @Test
+    public void strippedOfferKeepsTheCodecAndItsRtx() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        String sdp = new SdpProcessor("H264", "opus", 0, true, false).process(offer, true);
+
+        assertEquals("m=audio 9 UDP/TLS/RTP/SAVPF 111", line(sdp, "m=audio"));
+        assertEquals("m=video 9 UDP/TLS/RTP/SAVPF 127 123", line(sdp, "m=video"));
+        for (String payload : new String[]{"96", "97", "98", "99", "100", "101", "125", "122", "124", "103", "0", "126"}) {
+            assertFalse(payload, sdp.contains("a=rtpmap:" + payload + " "));
+            assertFalse(payload, sdp.contains("a=fmtp:" + payload + " "));
+            assertFalse(payload, sdp.contains("a=rtcp-fb:" + payload + " "));
+        }
+        assertTrue(sdp.contains("a=fmtp:127 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\r\n"));
+        assertTrue(sdp.contains("a=fmtp:123 apt=127\r\n"));
+        assertTrue(sdp.contains("a=rtcp-fb:127 nack pli\r\n"));
+        assertTrue(sdp.contains("a=ssrc-group:FID 1617846127 3923340925\r\n"));
+        assertTrue(sdp.length() < offer.length() * 3 / 4);
+    }
+
+    @Test
+    public void answersAreOnlyReordered() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        String sdp = new SdpProcessor("VP9", "opus", 0, true, true).process(offer, false);
+
+        assertEquals("m=video 9 UDP/TLS/RTP/SAVPF 98 96 97 99 100 101 127 123 125 122 124", line(sdp, "m=video"));
+        assertTrue(sdp.contains("a=rtpmap:124 ulpfec/90000\r\n"));
+    }
+
+    @Test
+    public void unusedHeaderExtensionsAreStripped() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        String sdp = new SdpProcessor("H264", "opus", 0, false, true).process(offer, true);
+
+        assertEquals(Arrays.asList(
+                "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level",
+                "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time",
+                "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+                "a=extmap:9 urn:ietf:params:rtp-hdrext:sdes:mid",
+                "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time",
+                "a=extmap:13 urn:3gpp:video-orientation",
+                "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+                "a=extmap:9 urn:ietf:params:rtp-hdrext:sdes:mid"), lines(sdp, "a=extmap:"));
+    }
+
+    @Test
+    public void simulcastSurvivesStripping() throws Exception {
+        String offer = offer("offer-simulcast.sdp");
+        String sdp = new SdpProcessor("VP8", "opus", 0, true, true).process(offer, true);
+
+        assertEquals("m=video 9 UDP/TLS/RTP/SAVPF 96 97", line(sdp, "m=video"));
+        assertEquals(Arrays.asList("a=rid:h send", "a=rid:m send", "a=rid:l send"), lines(sdp, "a=rid:"));
+        assertTrue(sdp.contains("a=simulcast:send h;m;l\r\n"));
+        assertTrue(sdp.contains("a=extmap:5 urn:ietf:params:rtp-hdrext:sdes:rtp-stream-id\r\n"));
+        assertTrue(sdp.contains("a=extmap:6 urn:ietf:params:rtp-hdrext:sdes:repaired-rtp-stream-id\r\n"));
+        assertTrue(sdp.contains("a=extmap-allow-mixed\r\n"));
+        assertTrue(sdp.endsWith("m=application 9 UDP/DTLS/SCTP webrtc-datachannel\r\n"
+                + offer.substring(offer.indexOf("c=IN IP4 0.0.0.0", offer.indexOf("m=application")))));
+    }
+
+    @Test
+    public void audioStartBitrateBecomesMaxAverageBitrate() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        SdpProcessor processor = new SdpProcessor("H264", "opus", 32, false, false);
+        String sdp = processor.process(offer, true);
+
+        assertEquals(Arrays.asList("a=fmtp:111 minptime=10;useinbandfec=1;maxaveragebitrate=32000"),
+                lines(sdp, "a=fmtp:111 "));
+        assertEquals(sdp, processor.process(sdp, true));
+    }
+
+    @Test
+    public void audioStartBitrateAddsAnFmtpLine() throws Exception {
+        String offer = offer("offer-plan-b.sdp");
+        String sdp = new SdpProcessor("H264", "ISAC", 24, true, false).process(offer, true);
+
+        assertEquals("m=audio 9 UDP/TLS/RTP/SAVPF 103 104", line(sdp, "m=audio"));
+        assertTrue(sdp.contains("a=rtpmap:103 ISAC/16000\r\na=fmtp:103 maxaveragebitrate=24000\r\n"));
+        assertTrue(sdp.contains("a=rtpmap:104 ISAC/32000\r\na=fmtp:104 maxaveragebitrate=24000\r\n"));
+    }
+
+    @Test
+    public void sectionWithoutTheCodecIsLeftAlone() throws Exception {
+        String offer = offer("offer-simulcast.sdp");
+        String sdp = new SdpProcessor("AV1X", "opus", 0, true, false).process(offer, true);
+
+        assertEquals(line(offer, "m=video"), line(sdp, "m=video"));
+        assertTrue(sdp.contains("a=rtpmap:125 ulpfec/90000\r\n"));
+        assertEquals("m=audio 9 UDP/TLS/RTP/SAVPF 111", line(sdp, "m=audio"));
+    }
+
+    private String offer(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            // webrtc ends every line with CRLF.
+            return new String(out.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n").replace("\n", "\r\n");
+        }
+    }
+
+    private static String line(String sdp, String prefix) {
+        List<String> lines = lines(sdp, prefix);
+        assertEquals(prefix, 1, lines.size());
+        return lines.get(0);
+    }
+
+    private static List<String> lines(String sdp, String prefix) {
+        List<String> lines = new ArrayList<>();
+        for (String line : sdp.split("\r\n")) {
+            if (line.startsWith(prefix))
+                lines.add(line);
+        }
+        return lines;
+    }
+}
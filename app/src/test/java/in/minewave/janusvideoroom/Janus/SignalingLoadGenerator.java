@@ -0,0 +1,260 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.webrtc.IceCandidate;
+import org.webrtc.SessionDescription;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionCameraParameters;
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
+
+/*
+ * Drives simulated clients through WebSocketChannel against a JanusStandIn, with WebRTC stubbed
+ * out: each client publishes a canned offer and trickles a few candidates once joined, and
+ * answers every subscriber offer right away. Clients fill rooms of roomSize in turn, so a room
+ * of k clients ends up with k * (k - 1) subscriptions.
+ *
+ * Reported per client, from connecting: join, until the publisher's joined event, and publish,
+ * until Janus answered its offer. Message rates count both directions at the stand-in.
+ */
+class SignalingLoadGenerator {
+    private static final long FIRST_ROOM = 1000;
+    private static final int CANDIDATES = 4;
+
+    private final JanusStandIn server;
+    private final int clientCount;
+    private final int roomSize;
+    private final LatencyHistogram join = new LatencyHistogram();
+    private final LatencyHistogram publish = new LatencyHistogram();
+    private final CountDownLatch published;
+    private File traceDirectory;
+
+    static class Report {
+        final int clients;
+        final long published;
+        final long subscriptions;
+        final long expectedSubscriptions;
+        final LatencyHistogram.Snapshot join;
+        final LatencyHistogram.Snapshot publish;
+        final long elapsedMs;
+        final long messages;
+
+        Report(int clients, long published, long subscriptions, long expectedSubscriptions,
+               LatencyHistogram.Snapshot join, LatencyHistogram.Snapshot publish, long elapsedMs, long messages) {
+            this.clients = clients;
+            this.published = published;
+            this.subscriptions = subscriptions;
+            this.expectedSubscriptions = expectedSubscriptions;
+            this.join = join;
+            this.publish = publish;
+            this.elapsedMs = elapsedMs;
+            this.messages = messages;
+        }
+
+        double messagesPerSecond() {
+            return elapsedMs == 0 ? 0 : messages * 1000.0 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return clients + " clients: " + published + " published, "
+                    + subscriptions + "/" + expectedSubscriptions + " subscriptions in " + elapsedMs + " ms"
+                    + "\n  join    p50 " + join.p50Ms + " p90 " + join.p90Ms + " p99 " + join.p99Ms
+                    + " max " + join.maxMs + " ms"
+                    + "\n  publish p50 " + publish.p50Ms + " p90 " + publish.p90Ms + " p99 " + publish.p99Ms
+                    + " max " + publish.maxMs + " ms"
+                    + "\n  " + messages + " messages, " + Math.round(messagesPerSecond()) + "/s";
+        }
+    }
+
+    SignalingLoadGenerator(JanusStandIn server, int clientCount, int roomSize) {
+        this.server = server;
+        this.clientCount = clientCount;
+        this.roomSize = roomSize;
+        published = new CountDownLatch(clientCount);
+    }
+
+    // Each client records a SignalingTrace there, client-<n>.trace.
+    void recordTraces(File directory) {
+        traceDirectory = directory;
+    }
+
+    long expectedSubscriptions() {
+        long total = 0;
+        for (int first = 0; first < clientCount; first += roomSize) {
+            long k = Math.min(roomSize, clientCount - first);
+            total += k * (k - 1);
+        }
+        return total;
+    }
+
+    // Runs until every client published and every subscription started, or timeoutMs passed.
+    Report run(long timeoutMs) throws URISyntaxException, InterruptedException {
+        long expected = expectedSubscriptions();
+        long messagesBefore = server.messagesIn() + server.messagesOut();
+        long startedBefore = server.subscribersStarted();
+        long startMs = JanusTransactions.SYSTEM_TIME.nowMs();
+        long deadlineMs = startMs + timeoutMs;
+        ArrayList<SimulatedClient> clients = new ArrayList<>(clientCount);
+        try {
+            for (int i = 0; i < clientCount; i++) {
+                SimulatedClient client = new SimulatedClient();
+                clients.add(client);
+                client.connect(i, FIRST_ROOM + i / roomSize);
+            }
+            while (JanusTransactions.SYSTEM_TIME.nowMs() < deadlineMs) {
+                // The server counts a start before its reply goes out; closing then would cut the
+                // clients', and their traces', last "started" events.
+                if (published.getCount() == 0 && server.subscribersStarted() - startedBefore >= expected
+                        && subscriptionsStarted(clients) >= expected)
+                    break;
+                Thread.sleep(10);
+            }
+            long elapsedMs = JanusTransactions.SYSTEM_TIME.nowMs() - startMs;
+            return new Report(clientCount, clientCount - published.getCount(),
+                    server.subscribersStarted() - startedBefore, expected, join.snapshot(), publish.snapshot(),
+                    elapsedMs, server.messagesIn() + server.messagesOut() - messagesBefore);
+        } finally {
+            for (SimulatedClient client : clients)
+                client.close();
+        }
+    }
+
+    // Starts the clients saw completed.
+    private static long subscriptionsStarted(ArrayList<SimulatedClient> clients) {
+        long started = 0;
+        for (SimulatedClient client : clients)
+            started += client.channel.signalingLatency()
+                    .snapshot(JanusTransactions.RequestType.START, SignalingLatency.Stage.TOTAL).count;
+        return started;
+    }
+
+    private PeerConnectionParameters parameters(int client) {
+        PeerConnectionParameters params = new PeerConnectionCameraParameters(server.url(), null,
+                640, 480, 30, "VP8", PeerConnectionParameters.VideoCapturerType.CAMERA_FRONT,
+                32, "OPUS", false);
+        params.audioLevelIntervalMs = 0;
+        if (traceDirectory != null)
+            params.signalingTrace = new File(traceDirectory, "client-" + client + ".trace");
+        return params;
+    }
+
+    private static String candidate(int index) {
+        return "candidate:" + (842163049 + index) + " 1 udp 1677729535 192.0.2." + (index + 1) + " "
+                + (46154 + index) + " typ srflx raddr 10.0.2.15 rport " + (46154 + index) + " generation 0";
+    }
+
+    // Stands in for PeerConnectionClient: jseps are answered with canned SDP instead of webrtc.
+    private class SimulatedClient implements JanusRTCInterface {
+        private final CountDownLatch connecting = new CountDownLatch(1);
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private long startMs;
+        private volatile WebSocketChannel channel;
+
+        void connect(int index, long room) throws URISyntaxException {
+            startMs = JanusTransactions.SYSTEM_TIME.nowMs();
+            channel = WebSocketChannel.connectWebSocketChannel(this, parameters(index), room, new StartupTimings());
+            connecting.countDown();
+        }
+
+        void close() {
+            if (channel != null)
+                channel.close();
+        }
+
+        // Callbacks can beat connectWebSocketChannel's return.
+        private WebSocketChannel channel() {
+            try {
+                connecting.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return channel;
+        }
+
+        private void trickle(WebSocketChannel channel, long handleId, int count) {
+            for (int i = 0; i < count; i++)
+                channel.trickleCandidate(handleId, new IceCandidate(String.valueOf(i % 2), i % 2, candidate(i)));
+            channel.trickleCandidateComplete(handleId);
+        }
+
+        @Override
+        public void onHandleAttached(long handleId, boolean publisher) {
+        }
+
+        @Override
+        public void onPublisherJoined(long handleId) {
+            join.record(JanusTransactions.SYSTEM_TIME.nowMs() - startMs);
+            WebSocketChannel channel = channel();
+            channel.publisherCreateOffer(handleId,
+                    new SessionDescription(SessionDescription.Type.OFFER, JanusStandIn.OFFER_SDP));
+            trickle(channel, handleId, CANDIDATES);
+        }
+
+        @Override
+        public void onPublisherRemoteJsep(long handleId, JanusEvent.Jsep jsep) {
+            if (!answered.compareAndSet(false, true))
+                return;
+            publish.record(JanusTransactions.SYSTEM_TIME.nowMs() - startMs);
+            published.countDown();
+        }
+
+        @Override
+        public void subscriberHandleRemoteJsep(long handleId, JanusEvent.Jsep jsep) {
+            WebSocketChannel channel = channel();
+            channel.subscriberCreateAnswer(handleId,
+                    new SessionDescription(SessionDescription.Type.ANSWER, JanusStandIn.ANSWER_SDP));
+            trickle(channel, handleId, 1);
+        }
+
+        @Override
+        public void onLeaving(long handleId) {
+        }
+
+        @Override
+        public void onFeedDiscovered(long feedId) {
+        }
+
+        @Override
+        public void onFeedLeft(long feedId) {
+        }
+
+        @Override
+        public void onSubscriberStreams(long handleId, JanusEvent.Stream[] streams) {
+        }
+
+        @Override
+        public void onSubscribersSettled(int feeds, long elapsedMs) {
+        }
+
+        @Override
+        public void onReconnected(long elapsedMs, boolean sessionKept) {
+        }
+
+        @Override
+        public void onIceRestartNeeded(long handleId) {
+        }
+
+        @Override
+        public void onMediaRecovered(long handleId, long elapsedMs, int restarts) {
+        }
+    }
+
+    // e.g. SignalingLoadGenerator 500 10 20: 500 clients in rooms of 10, Janus answering in 20 ms.
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int roomSize = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        long delayMs = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        JanusStandIn server = new JanusStandIn(delayMs, 0);
+        server.startBlocking();
+        try {
+            System.out.println(new SignalingLoadGenerator(server, clients, roomSize).run(120000));
+        } finally {
+            server.shutdown();
+        }
+    }
+}
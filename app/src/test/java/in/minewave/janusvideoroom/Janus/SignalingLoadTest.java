@@ -0,0 +1,38 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * A small run of SignalingLoadGenerator. Scale it up with -Dloadtest.clients, -Dloadtest.roomSize
+ * and -Dloadtest.delayMs.
+ */
+public class SignalingLoadTest {
+    private JanusStandIn server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new JanusStandIn(Long.getLong("loadtest.delayMs", 5), 0);
+        server.startBlocking();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void everyClientPublishesAndSubscribes() throws Exception {
+        int clients = Integer.getInteger("loadtest.clients", 40);
+        SignalingLoadGenerator generator = new SignalingLoadGenerator(server, clients,
+                Integer.getInteger("loadtest.roomSize", 5));
+        SignalingLoadGenerator.Report report = generator.run(60000);
+        System.out.println(report);
+        assertEquals(clients, report.published);
+        assertEquals(report.expectedSubscriptions, report.subscriptions);
+        assertEquals(clients, report.join.count);
+    }
+}
@@ -0,0 +1,85 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionCameraParameters;
+import in.minewave.janusvideoroom.Janus.PeerConnectionParameters.PeerConnectionParameters;
+
+import static org.junit.Assert.*;
+
+public class SignalingTraceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SignalingTrace.Recorder recorder = new SignalingTrace.Recorder(out);
+        recorder.record(true, "{\"janus\":\"create\"}");
+        recorder.record(false, "{\"display\":\"Zo\u00eb\"}");
+        recorder.record(false, "");
+        recorder.close();
+
+        List<SignalingTrace.Frame> frames = SignalingTrace.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, frames.size());
+        assertTrue(frames.get(0).outbound);
+        assertEquals("{\"janus\":\"create\"}", frames.get(0).text);
+        assertEquals(0, frames.get(0).offsetUs);
+        assertFalse(frames.get(1).outbound);
+        assertEquals("{\"display\":\"Zo\u00eb\"}", frames.get(1).text);
+        assertTrue(frames.get(2).offsetUs >= frames.get(1).offsetUs);
+        assertEquals("", frames.get(2).text);
+    }
+
+    @Test
+    public void truncatedRecordEndsTheTrace() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SignalingTrace.Recorder recorder = new SignalingTrace.Recorder(out);
+        recorder.record(true, "{\"janus\":\"create\"}");
+        recorder.record(false, "{\"janus\":\"success\"}");
+        recorder.close();
+        byte[] bytes = out.toByteArray();
+
+        List<SignalingTrace.Frame> frames =
+                SignalingTrace.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertEquals(1, frames.size());
+        assertEquals("{\"janus\":\"create\"}", frames.get(0).text);
+    }
+
+    // A join into a room of six, recorded against the stand-in and replayed without it.
+    @Test
+    public void recordedJoinReplays() throws Exception {
+        JanusStandIn server = new JanusStandIn(5, 0);
+        server.startBlocking();
+        try {
+            SignalingLoadGenerator generator = new SignalingLoadGenerator(server, 6, 6);
+            generator.recordTraces(folder.getRoot());
+            SignalingLoadGenerator.Report report = generator.run(30000);
+            assertEquals(report.expectedSubscriptions, report.subscriptions);
+        } finally {
+            server.shutdown();
+        }
+
+        List<SignalingTrace.Frame> frames = SignalingTrace.read(new File(folder.getRoot(), "client-0.trace"));
+        PeerConnectionParameters params = new PeerConnectionCameraParameters("ws://127.0.0.1:1", null,
+                640, 480, 30, "VP8", PeerConnectionParameters.VideoCapturerType.CAMERA_FRONT,
+                32, "OPUS", false);
+        params.audioLevelIntervalMs = 0;
+        SignalingReplayer.Result result = new SignalingReplayer(frames, false, 5000).replay(params, 1000);
+
+        assertEquals(0, result.requestsMissed);
+        SignalingLatency latency = result.latency;
+        // The publisher's join and one subscriber join per other participant.
+        assertEquals(6, latency.snapshot(JanusTransactions.RequestType.JOIN, SignalingLatency.Stage.TOTAL).count);
+        assertEquals(5, latency.snapshot(JanusTransactions.RequestType.START, SignalingLatency.Stage.TOTAL).count);
+        assertEquals(1, latency.snapshot(JanusTransactions.RequestType.CONFIGURE, SignalingLatency.Stage.TOTAL).count);
+    }
+}
@@ -0,0 +1,75 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SubstreamControllerTest {
+    private final List<String> sent = new ArrayList<>();
+
+    // Layers of 270, 540 and 1080 lines; only the top one is HD.
+    private SubstreamController controller(int maxHdFeeds, long... feeds) {
+        SubstreamController controller = new SubstreamController(
+                (feedId, substream, temporal, video) -> sent.add(feedId + ":" + substream + (video ? "" : " off")),
+                true, 1080, new double[]{4, 2, 1}, true);
+        controller.setMaxHdFeeds(maxHdFeeds);
+        for (long feedId : feeds)
+            controller.onSubscribed(feedId);
+        return controller;
+    }
+
+    @Test
+    public void onlyTheLargestFeedsGetHd() {
+        SubstreamController controller = controller(2, 1, 2, 3);
+        controller.onRenderSize(1, 1280, 720);
+        controller.onRenderSize(2, 1920, 1080);
+        controller.onRenderSize(3, 1120, 630);
+        assertEquals("[1:2, 2:2, 3:1]", sent.toString());
+
+        // Hidden feeds pause and hold no HD layer.
+        sent.clear();
+        controller.onRenderSize(2, 0, 0);
+        assertEquals("[2:0 off, 3:2]", sent.toString());
+
+        // Without a limit everyone gets what the size asks for.
+        SubstreamController unlimited = controller(0, 4, 5, 6);
+        sent.clear();
+        unlimited.onRenderSize(4, 1280, 720);
+        unlimited.onRenderSize(5, 1920, 1080);
+        unlimited.onRenderSize(6, 1120, 630);
+        assertEquals("[4:2, 5:2, 6:2]", sent.toString());
+    }
+
+    @Test
+    public void stepDownsGoFirst() {
+        SubstreamController controller = controller(1, 1, 2);
+        controller.onRenderSize(1, 1280, 720);
+        controller.onRenderSize(2, 640, 360);
+        assertEquals("[1:2, 2:1]", sent.toString());
+
+        // Feed 2 grows past feed 1: feed 1 gives up HD before feed 2 takes it.
+        sent.clear();
+        controller.onRenderSize(2, 1920, 1080);
+        assertEquals("[1:1, 2:2]", sent.toString());
+
+        // Feed 2 leaving hands HD back.
+        sent.clear();
+        controller.remove(2);
+        assertEquals("[1:2]", sent.toString());
+
+        // A feed not subscribed yet holds its HD layer too.
+        sent.clear();
+        controller.onRenderSize(3, 1920, 1080);
+        assertEquals("[1:1]", sent.toString());
+        controller.onSubscribed(3);
+        assertEquals("[1:1, 3:2]", sent.toString());
+
+        // Raising the limit takes effect at once.
+        sent.clear();
+        controller.setMaxHdFeeds(2);
+        assertEquals("[1:2]", sent.toString());
+    }
+}
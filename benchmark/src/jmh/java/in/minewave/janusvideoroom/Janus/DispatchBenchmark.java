@@ -0,0 +1,97 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The signaling thread's share of an inbound frame, as in WebSocketChannel.dispatchMessage:
+ * decode, let the transaction table take replies, then route events by sender. Scores are per
+ * frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DispatchBenchmark {
+    // Candidates a publisher typically trickles right after setting its offer.
+    private static final int BURST = 20;
+
+    private final JanusMessageDecoder decoder = new JanusMessageDecoder();
+    private final JanusTransactions transactions = new JanusTransactions();
+    private final LongConcurrentMap<Object> handles = new LongConcurrentMap<>();
+    private final LongConcurrentMap<Object> feeds = new LongConcurrentMap<>();
+    private final long[] trickleIds = new long[BURST];
+    private final String[] ackFrames = new String[BURST];
+    private final String[] serverTrickleFrames = new String[BURST];
+    private long offerId;
+    private String offerFrame;
+    private String publishersFrame;
+
+    @Setup
+    public void setup() {
+        TransactionIdGenerator ids = new TransactionIdGenerator(42);
+        for (int i = 0; i < BURST; i++) {
+            trickleIds[i] = ids.next();
+            ackFrames[i] = Payloads.ack(trickleIds[i]);
+            serverTrickleFrames[i] = Payloads.serverTrickle(i);
+        }
+        offerId = ids.next();
+        offerFrame = Payloads.offerEvent(offerId);
+        publishersFrame = Payloads.publishersEvent(100);
+        handles.put(Payloads.HANDLE_ID, "publisher");
+        for (int i = 0; i < 100; i++)
+            feeds.put(1000000 + i, "feed");
+    }
+
+    // Our trickle requests go out, their acks come back and complete them.
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void trickleAckBurst(Blackhole bh) {
+        for (int i = 0; i < BURST; i++)
+            transactions.register(JanusTransactions.RequestType.TRICKLE, trickleIds[i]);
+        for (int i = 0; i < BURST; i++)
+            bh.consume(transactions.processTransaction(decoder.decode(ackFrames[i])));
+    }
+
+    // Janus trickling its own candidates: no transaction, routed to the handle.
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void serverTrickleBurst(Blackhole bh) {
+        for (int i = 0; i < BURST; i++) {
+            JanusMessage message = decoder.decode(serverTrickleFrames[i]);
+            if (!transactions.processTransaction(message))
+                bh.consume(handles.get(message.sender));
+        }
+    }
+
+    // The subscriber's offer completes its join and goes to the handle.
+    @Benchmark
+    public void offer(Blackhole bh) {
+        transactions.register(JanusTransactions.RequestType.JOIN, offerId);
+        JanusMessage message = decoder.decode(offerFrame);
+        if (!transactions.processTransaction(message)) {
+            bh.consume(handles.get(message.sender));
+            bh.consume(message.event(JanusEvent.Jsep.class).sdp());
+        }
+    }
+
+    // A repeated publishers event for a room of 100: every feed is already known.
+    @Benchmark
+    public void publishers100(Blackhole bh) {
+        JanusMessage message = decoder.decode(publishersFrame);
+        if (transactions.processTransaction(message))
+            return;
+        bh.consume(handles.get(message.sender));
+        JanusEvent.Publishers event = message.event(JanusEvent.Publishers.class);
+        for (JanusEvent.Publisher publisher : event.publishers)
+            bh.consume(feeds.containsKey(publisher.feedId));
+    }
+}
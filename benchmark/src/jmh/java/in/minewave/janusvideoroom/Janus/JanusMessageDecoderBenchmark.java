@@ -0,0 +1,83 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Inbound frame decoding: the org.json DOM walk WebSocketChannel used to do per frame against
+ * JanusMessageDecoder. Run with the gc profiler to compare allocation per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JanusMessageDecoderBenchmark {
+    private String offerFrame;
+    private String publishersFrame;
+    private JanusMessageDecoder decoder;
+
+    // The publishers list a subscriber gets on joining a full room.
+    @Param({"30", "100"})
+    public int publisherCount;
+
+    @Setup
+    public void setup() {
+        decoder = new JanusMessageDecoder();
+        offerFrame = Payloads.offerEvent(new TransactionIdGenerator(42).next());
+        publishersFrame = Payloads.publishersEvent(publisherCount);
+    }
+
+    @Benchmark
+    public void offerJsonObject(Blackhole bh) throws Exception {
+        JSONObject jo = new JSONObject(offerFrame);
+        bh.consume(jo.optString("janus"));
+        bh.consume(jo.optString("sender"));
+        JSONObject plugin = jo.optJSONObject("plugindata").optJSONObject("data");
+        bh.consume(plugin.optString("videoroom"));
+        bh.consume(plugin.optJSONArray("publishers"));
+        bh.consume(plugin.optString("leaving"));
+        JSONObject jsep = jo.optJSONObject("jsep");
+        bh.consume(jsep.optString("sdp"));
+    }
+
+    @Benchmark
+    public void offerDecoder(Blackhole bh) {
+        JanusMessage message = decoder.decode(offerFrame);
+        bh.consume(message.event(JanusEvent.Jsep.class).sdp());
+    }
+
+    @Benchmark
+    public void offerDecoderRoutingOnly(Blackhole bh) {
+        bh.consume(decoder.decode(offerFrame));
+    }
+
+    @Benchmark
+    public void publishersJsonObject(Blackhole bh) throws Exception {
+        JSONObject jo = new JSONObject(publishersFrame);
+        bh.consume(jo.optString("janus"));
+        bh.consume(jo.optString("sender"));
+        JSONObject plugin = jo.optJSONObject("plugindata").optJSONObject("data");
+        bh.consume(plugin.optString("videoroom"));
+        JSONArray publishers = plugin.optJSONArray("publishers");
+        for (int i = 0; i < publishers.length(); i++) {
+            JSONObject publisher = publishers.optJSONObject(i);
+            bh.consume(publisher.optString("id"));
+            bh.consume(publisher.optString("display"));
+        }
+    }
+
+    @Benchmark
+    public void publishersDecoder(Blackhole bh) {
+        bh.consume(decoder.decode(publishersFrame));
+    }
+}
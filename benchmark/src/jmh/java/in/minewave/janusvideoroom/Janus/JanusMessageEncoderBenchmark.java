@@ -0,0 +1,131 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Outbound request encoding: nested JSONObjects as WebSocketChannel used to build them
+ * against JanusMessageEncoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JanusMessageEncoderBenchmark {
+    private static final String CANDIDATE =
+            "candidate:842163049 1 udp 1677729535 93.184.216.34 46154 typ srflx raddr 10.0.2.15 rport 46154 generation 0";
+    private static final long SESSION_ID = 6813245934565476L;
+    private static final long HANDLE_ID = 3428374623874623L;
+    private static final long TRANSACTION = new TransactionIdGenerator(42).next();
+
+    private static final int BURST = 20;
+
+    private JanusMessageEncoder encoder;
+    private String sdp;
+    private final String[] candidates = new String[BURST];
+    private final String[] sdpMids = new String[BURST];
+    private final int[] sdpMLineIndexes = new int[BURST];
+    private final long[] feedIds = new long[100];
+
+    @Setup
+    public void setup() {
+        encoder = new JanusMessageEncoder();
+        sdp = Payloads.offerSdp(false);
+        for (int i = 0; i < BURST; i++) {
+            candidates[i] = Payloads.candidate(i);
+            sdpMids[i] = "0";
+        }
+        for (int i = 0; i < feedIds.length; i++)
+            feedIds[i] = 1000000 + i;
+    }
+
+    @Benchmark
+    public String trickleJsonObject() throws Exception {
+        JSONObject candidate = new JSONObject();
+        JSONObject message = new JSONObject();
+        candidate.putOpt("candidate", CANDIDATE);
+        candidate.putOpt("sdpMid", "0");
+        candidate.putOpt("sdpMLineIndex", 0);
+        message.putOpt("janus", "trickle");
+        message.putOpt("candidate", candidate);
+        message.putOpt("transaction", "Xk2ZqW8nLp0a");
+        message.putOpt("session_id", BigInteger.valueOf(SESSION_ID));
+        message.putOpt("handle_id", BigInteger.valueOf(HANDLE_ID));
+        return message.toString();
+    }
+
+    @Benchmark
+    public String trickleEncoder() {
+        return encoder.trickle(TRANSACTION, SESSION_ID, HANDLE_ID, CANDIDATE, "0", 0);
+    }
+
+    // A burst of candidates as one request per candidate, scored per candidate.
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void trickleBurstSingle(Blackhole bh) {
+        for (int i = 0; i < BURST; i++)
+            bh.consume(encoder.trickle(TRANSACTION, SESSION_ID, HANDLE_ID, candidates[i], sdpMids[i], sdpMLineIndexes[i]));
+    }
+
+    // The same burst as TrickleBatcher sends it, scored per candidate.
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public String trickleBurstBatched() {
+        return encoder.trickleCandidates(TRANSACTION, SESSION_ID, HANDLE_ID, candidates, sdpMids, sdpMLineIndexes,
+                BURST, true);
+    }
+
+    // A multistream subscribe to every feed of a 100 publisher room.
+    @Benchmark
+    public String subscribe100() {
+        return encoder.subscribe(TRANSACTION, SESSION_ID, HANDLE_ID, feedIds, feedIds.length);
+    }
+
+    @Benchmark
+    public String keepAliveJsonObject() throws Exception {
+        JSONObject message = new JSONObject();
+        message.putOpt("janus", "keepalive");
+        message.putOpt("session_id", BigInteger.valueOf(SESSION_ID));
+        message.putOpt("transaction", "Xk2ZqW8nLp0a");
+        return message.toString();
+    }
+
+    @Benchmark
+    public String keepAliveEncoder() {
+        return encoder.keepAlive(TRANSACTION, SESSION_ID);
+    }
+
+    @Benchmark
+    public String configureJsonObject() throws Exception {
+        JSONObject publish = new JSONObject();
+        JSONObject jsep = new JSONObject();
+        JSONObject message = new JSONObject();
+        publish.putOpt("request", "configure");
+        publish.putOpt("audio", true);
+        publish.putOpt("video", true);
+        jsep.putOpt("type", "offer");
+        jsep.putOpt("sdp", sdp);
+        message.putOpt("janus", "message");
+        message.putOpt("body", publish);
+        message.putOpt("jsep", jsep);
+        message.putOpt("transaction", "Xk2ZqW8nLp0a");
+        message.putOpt("session_id", BigInteger.valueOf(SESSION_ID));
+        message.putOpt("handle_id", BigInteger.valueOf(HANDLE_ID));
+        return message.toString();
+    }
+
+    @Benchmark
+    public String configureEncoder() {
+        return encoder.configure(TRANSACTION, SESSION_ID, HANDLE_ID, true, true, "offer", sdp);
+    }
+}
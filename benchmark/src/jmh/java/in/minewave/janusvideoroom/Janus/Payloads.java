@@ -0,0 +1,110 @@
+package in.minewave.janusvideoroom.Janus;
+
+/*
+ * Janus frames shaped like the ones a busy room produces: a Chrome-sized offer with simulcast,
+ * publishers lists, and the acks that answer a burst of trickled candidates.
+ */
+final class Payloads {
+    static final long SESSION_ID = 6813245934565476L;
+    static final long HANDLE_ID = 3428374623874623L;
+
+    private Payloads() {
+    }
+
+    // About 6 KB once escaped: audio, video with three simulcast layers, and a data channel.
+    static String offerSdp(boolean escaped) {
+        String nl = escaped ? "\\r\\n" : "\r\n";
+        StringBuilder sdp = new StringBuilder(8192);
+        sdp.append("v=0").append(nl)
+                .append("o=- 4611731400430051336 2 IN IP4 127.0.0.1").append(nl)
+                .append("s=-").append(nl).append("t=0 0").append(nl)
+                .append("a=group:BUNDLE 0 1 2").append(nl)
+                .append("a=msid-semantic: WMS ARDAMS").append(nl);
+        sdp.append("m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 0 8 106 105 13 110 112 113 126").append(nl)
+                .append("c=IN IP4 0.0.0.0").append(nl).append("a=rtcp:9 IN IP4 0.0.0.0").append(nl);
+        mediaSection(sdp, nl, "0");
+        sdp.append("a=rtpmap:111 opus/48000/2").append(nl)
+                .append("a=rtcp-fb:111 transport-cc").append(nl)
+                .append("a=fmtp:111 minptime=10;useinbandfec=1").append(nl);
+        int[] audio = {103, 104, 9, 0, 8, 106, 105, 13, 110, 112, 113, 126};
+        for (int pt : audio)
+            sdp.append("a=rtpmap:").append(pt).append(" ISAC/16000").append(nl);
+        sdp.append("a=ssrc:1001 cname:kF8a3bHq1zT0vXyW").append(nl)
+                .append("a=ssrc:1001 msid:ARDAMS ARDAMSa0").append(nl);
+        sdp.append("m=video 9 UDP/TLS/RTP/SAVPF");
+        for (int pt = 96; pt <= 127; pt++)
+            sdp.append(' ').append(pt);
+        sdp.append(nl).append("c=IN IP4 0.0.0.0").append(nl).append("a=rtcp:9 IN IP4 0.0.0.0").append(nl);
+        mediaSection(sdp, nl, "1");
+        String[] codecs = {"VP8", "VP9", "H264", "AV1X"};
+        for (int pt = 96; pt <= 127; pt += 2) {
+            sdp.append("a=rtpmap:").append(pt).append(' ').append(codecs[(pt / 2) % codecs.length]).append("/90000").append(nl)
+                    .append("a=rtcp-fb:").append(pt).append(" goog-remb").append(nl)
+                    .append("a=rtcp-fb:").append(pt).append(" transport-cc").append(nl)
+                    .append("a=rtcp-fb:").append(pt).append(" ccm fir").append(nl)
+                    .append("a=rtcp-fb:").append(pt).append(" nack").append(nl)
+                    .append("a=rtcp-fb:").append(pt).append(" nack pli").append(nl)
+                    .append("a=fmtp:").append(pt).append(" level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f").append(nl)
+                    .append("a=rtpmap:").append(pt + 1).append(" rtx/90000").append(nl)
+                    .append("a=fmtp:").append(pt + 1).append(" apt=").append(pt).append(nl);
+        }
+        sdp.append("a=rid:h send").append(nl).append("a=rid:m send").append(nl).append("a=rid:l send").append(nl)
+                .append("a=simulcast:send h;m;l").append(nl);
+        sdp.append("m=application 9 UDP/DTLS/SCTP webrtc-datachannel").append(nl)
+                .append("c=IN IP4 0.0.0.0").append(nl);
+        mediaSection(sdp, nl, "2");
+        sdp.append("a=sctp-port:5000").append(nl);
+        return sdp.toString();
+    }
+
+    private static void mediaSection(StringBuilder sdp, String nl, String mid) {
+        sdp.append("a=ice-ufrag:Yq7d").append(nl)
+                .append("a=ice-pwd:Hk9mcLp2u0v3aPq1xR8tWz6b").append(nl)
+                .append("a=ice-options:trickle").append(nl)
+                .append("a=fingerprint:sha-256 4A:AD:B9:B1:3F:82:18:3B:54:02:12:DF:3E:5D:49:6B:19:E5:7C:AB:4A:AD:B9:B1:3F:82:18:3B:54:02:12:DF").append(nl)
+                .append("a=setup:actpass").append(nl)
+                .append("a=mid:").append(mid).append(nl)
+                .append("a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level").append(nl)
+                .append("a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time").append(nl)
+                .append("a=extmap:4 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01").append(nl)
+                .append("a=sendrecv").append(nl).append("a=rtcp-mux").append(nl);
+    }
+
+    static String offerEvent(long transaction) {
+        return "{\"janus\":\"event\",\"session_id\":" + SESSION_ID + ",\"transaction\":\""
+                + TransactionIdGenerator.toString(transaction) + "\",\"sender\":" + HANDLE_ID
+                + ",\"plugindata\":{\"plugin\":\"janus.plugin.videoroom\","
+                + "\"data\":{\"videoroom\":\"attached\",\"room\":1234,\"id\":981237123}},"
+                + "\"jsep\":{\"type\":\"offer\",\"sdp\":\"" + offerSdp(true) + "\"}}";
+    }
+
+    static String publishersEvent(int count) {
+        StringBuilder publishers = new StringBuilder(count * 128);
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                publishers.append(',');
+            publishers.append("{\"id\":").append(1000000 + i).append(",\"display\":\"Participant ").append(i)
+                    .append("\",\"audio_codec\":\"opus\",\"video_codec\":\"vp8\",\"simulcast\":true,\"talking\":false}");
+        }
+        return "{\"janus\":\"event\",\"session_id\":" + SESSION_ID + ",\"sender\":" + HANDLE_ID
+                + ",\"plugindata\":{\"plugin\":\"janus.plugin.videoroom\",\"data\":{\"videoroom\":\"event\","
+                + "\"room\":1234,\"publishers\":[" + publishers + "]}}}";
+    }
+
+    static String ack(long transaction) {
+        return "{\"janus\":\"ack\",\"session_id\":" + SESSION_ID + ",\"transaction\":\""
+                + TransactionIdGenerator.toString(transaction) + "\"}";
+    }
+
+    // Janus trickling its own candidates; routed by sender, nothing to complete.
+    static String serverTrickle(int index) {
+        return "{\"janus\":\"trickle\",\"session_id\":" + SESSION_ID + ",\"sender\":" + HANDLE_ID
+                + ",\"candidate\":{\"sdpMid\":\"0\",\"sdpMLineIndex\":0,\"candidate\":\"candidate:" + index
+                + " 1 udp 2015363327 10.0.0." + (index % 250 + 1) + " " + (40000 + index) + " typ host\"}}";
+    }
+
+    static String candidate(int index) {
+        return "candidate:" + (842163049 + index) + " 1 udp 1677729535 93.184.216." + (index % 250 + 1) + " "
+                + (46154 + index) + " typ srflx raddr 10.0.2.15 rport " + (46154 + index) + " generation 0";
+    }
+}
@@ -0,0 +1,130 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Id bookkeeping on the message path: the BigInteger-keyed maps and per-request random strings
+ * WebSocketChannel used to have against LongConcurrentMap and TransactionIdGenerator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RegistryBenchmark {
+    private static final int HANDLES = 32;
+
+    private final ConcurrentHashMap<BigInteger, Object> boxedHandles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Object> longHandles = new ConcurrentHashMap<>();
+    private final LongConcurrentMap<Object> handles = new LongConcurrentMap<>();
+    private final TransactionIdGenerator transactionIds = new TransactionIdGenerator();
+    private final JanusTransactions transactions = new JanusTransactions();
+    private final JanusMessage ack = new JanusMessage();
+    private final StringBuilder sb = new StringBuilder();
+    private long[] ids;
+    private String[] wireIds;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        ids = new long[HANDLES];
+        wireIds = new String[HANDLES];
+        for (int i = 0; i < HANDLES; i++) {
+            ids[i] = random.nextLong() >>> 11;
+            wireIds[i] = Long.toString(ids[i]);
+            boxedHandles.put(new BigInteger(wireIds[i]), wireIds[i]);
+            handles.put(ids[i], wireIds[i]);
+            longHandles.put(ids[i], wireIds[i]);
+        }
+        ack.kind = JanusMessage.Kind.ACK;
+    }
+
+    // The old lookup: the sender id arrived as a JSON number and was boxed into a BigInteger.
+    @Benchmark
+    public Object lookupBigInteger() {
+        return boxedHandles.get(new BigInteger(wireIds[next++ & (HANDLES - 1)]));
+    }
+
+    @Benchmark
+    public Object lookupLong() {
+        return handles.get(ids[next++ & (HANDLES - 1)]);
+    }
+
+    // Lookups from three threads while a fourth attaches and detaches handles, as the
+    // subscriber pipeline does while a room fills up. LongConcurrentMap copies on write.
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        long churnKey = 1;
+    }
+
+    @Benchmark
+    @Group("churnLong")
+    @GroupThreads(3)
+    public Object churnLookupLong(Cursor cursor) {
+        return handles.get(ids[cursor.next++ & (HANDLES - 1)]);
+    }
+
+    @Benchmark
+    @Group("churnLong")
+    @GroupThreads(1)
+    public Object churnWriteLong(Cursor cursor) {
+        long key = cursor.churnKey++ | 1L << 62;
+        handles.put(key, this);
+        return handles.remove(key);
+    }
+
+    @Benchmark
+    @Group("churnBoxed")
+    @GroupThreads(3)
+    public Object churnLookupBoxed(Cursor cursor) {
+        return longHandles.get(ids[cursor.next++ & (HANDLES - 1)]);
+    }
+
+    @Benchmark
+    @Group("churnBoxed")
+    @GroupThreads(1)
+    public Object churnWriteBoxed(Cursor cursor) {
+        long key = cursor.churnKey++ | 1L << 62;
+        longHandles.put(key, this);
+        return longHandles.remove(key);
+    }
+
+    @Benchmark
+    public String transactionIdRandomString() {
+        final String str = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        final Random rnd = new Random();
+        StringBuilder sb = new StringBuilder(12);
+        for (int i = 0; i < 12; i++)
+            sb.append(str.charAt(rnd.nextInt(str.length())));
+        return sb.toString();
+    }
+
+    @Benchmark
+    public int transactionIdGenerator() {
+        sb.setLength(0);
+        TransactionIdGenerator.append(sb, transactionIds.next());
+        return sb.length();
+    }
+
+    // One full request lifetime in the table: register, then the reply removes it.
+    @Benchmark
+    public boolean registerAndComplete() {
+        long tid = transactionIds.next();
+        transactions.register(JanusTransactions.RequestType.TRICKLE, tid);
+        ack.transaction = tid;
+        return transactions.processTransaction(ack);
+    }
+}
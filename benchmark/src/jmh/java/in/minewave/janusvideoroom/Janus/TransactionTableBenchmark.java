@@ -0,0 +1,77 @@
+package in.minewave.janusvideoroom.Janus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * JanusTransactions shared between threads, as it is between the per-handle executors that
+ * send requests and the signaling thread that completes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransactionTableBenchmark {
+    // Each thread keeps IN_FLIGHT requests pending and completes the oldest as it sends anew.
+    private static final int IN_FLIGHT = 16;
+
+    private final TransactionIdGenerator transactionIds = new TransactionIdGenerator(42);
+    private JanusTransactions transactions;
+
+    @State(Scope.Thread)
+    public static class Reply {
+        final JanusMessage ack = new JanusMessage();
+        final long[] pending = new long[IN_FLIGHT];
+        int next;
+
+        @Setup
+        public void setup() {
+            ack.kind = JanusMessage.Kind.ACK;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        transactions = new JanusTransactions(JanusTransactions.SYSTEM_TIME, 1 << 12);
+    }
+
+    // Register and complete from four threads at once.
+    @Benchmark
+    @Threads(4)
+    public boolean registerAndComplete(Reply reply) {
+        int slot = reply.next++ & (IN_FLIGHT - 1);
+        boolean done = false;
+        if (reply.pending[slot] != 0) {
+            reply.ack.transaction = reply.pending[slot];
+            done = transactions.processTransaction(reply.ack);
+        }
+        long tid = transactionIds.next();
+        transactions.register(JanusTransactions.RequestType.TRICKLE, tid);
+        reply.pending[slot] = tid;
+        return done;
+    }
+
+    // Requests completing while the signaling thread sweeps for timeouts.
+    @Benchmark
+    @Group("sweep")
+    @GroupThreads(3)
+    public boolean sweepRegisterAndComplete(Reply reply) {
+        return registerAndComplete(reply);
+    }
+
+    @Benchmark
+    @Group("sweep")
+    @GroupThreads(1)
+    public int sweeper() {
+        return transactions.sweep();
+    }
+}